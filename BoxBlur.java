@@ -0,0 +1,126 @@
+package model;
+
+/**
+ * Blurs images with a box filter in constant time per pixel, whatever the radius. The sum of any
+ * box of pixels is four lookups in the image's summed-area table, and moving down a row only
+ * needs two rows of that table: the one at the bottom of the box and the one just above its top.
+ * Rather than storing the whole table (8 bytes per channel for every pixel), each band of rows
+ * keeps the running sum of every column over the box's rows, whose prefix sums are exactly the
+ * difference of those two rows. Sums are held in longs, so no radius can overflow them. Near the
+ * edges, the box only covers the pixels inside the image, and each pixel is the rounded average
+ * of those.
+ */
+final class BoxBlur {
+
+  private BoxBlur() {
+    // static helpers only
+  }
+
+  /**
+   * Blurs packed pixels, keeping each pixel's alpha.
+   *
+   * @param src the array holding the packed 0xAARRGGBB pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @param radius how far the box reaches from each pixel
+   * @return the blurred pixels, row by row in a new array
+   */
+  static int[] blur(int[] src, int offset, int stride, int cols, int rows, int radius) {
+    int[] dst = new int[cols * rows];
+    RowBands.forEach(rows, cols * 4, (from, to) -> {
+      long[] columns = new long[cols * 3];
+      long[] prefix = new long[(cols + 1) * 3];
+      // start with the box of the row above the band, so the first slide lands on the band
+      for (int i = Math.max(0, from - radius - 1); i < Math.min(rows, from + radius); i++) {
+        addRow(src, offset + i * stride, cols, columns, 1);
+      }
+      for (int y = from; y < to; y++) {
+        // slide the box down: add the row entering at the bottom, drop the one leaving at the top
+        if (y + radius < rows) {
+          addRow(src, offset + (y + radius) * stride, cols, columns, 1);
+        }
+        if (y - radius - 1 >= 0) {
+          addRow(src, offset + (y - radius - 1) * stride, cols, columns, -1);
+        }
+        for (int x = 0, c = 0; x < cols; x++, c += 3) {
+          prefix[c + 3] = prefix[c] + columns[c];
+          prefix[c + 4] = prefix[c + 1] + columns[c + 1];
+          prefix[c + 5] = prefix[c + 2] + columns[c + 2];
+        }
+        long height = Math.min(rows - 1, y + radius) - Math.max(0, y - radius) + 1;
+        for (int x = 0, o = y * cols, s = offset + y * stride; x < cols; x++, o++, s++) {
+          int left = Math.max(0, x - radius) * 3;
+          int right = (Math.min(cols - 1, x + radius) + 1) * 3;
+          long n = height * ((right - left) / 3);
+          int r = (int) ((prefix[right] - prefix[left] + n / 2) / n);
+          int g = (int) ((prefix[right + 1] - prefix[left + 1] + n / 2) / n);
+          int b = (int) ((prefix[right + 2] - prefix[left + 2] + n / 2) / n);
+          dst[o] = (src[s] & 0xFF000000) | (r << 16) | (g << 8) | b;
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Blurs one channel, as used for images whose channels do not fit in 8 bits.
+   *
+   * @param src the values of the channel, row by row
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @param radius how far the box reaches from each pixel
+   * @return the blurred values, in a new array
+   */
+  static int[] blurPlane(int[] src, int cols, int rows, int radius) {
+    int[] dst = new int[src.length];
+    RowBands.forEach(rows, cols * 2, (from, to) -> {
+      long[] columns = new long[cols];
+      long[] prefix = new long[cols + 1];
+      for (int i = Math.max(0, from - radius - 1); i < Math.min(rows, from + radius); i++) {
+        addPlaneRow(src, cols, i, columns, 1);
+      }
+      for (int y = from; y < to; y++) {
+        if (y + radius < rows) {
+          addPlaneRow(src, cols, y + radius, columns, 1);
+        }
+        if (y - radius - 1 >= 0) {
+          addPlaneRow(src, cols, y - radius - 1, columns, -1);
+        }
+        for (int x = 0; x < cols; x++) {
+          prefix[x + 1] = prefix[x] + columns[x];
+        }
+        long height = Math.min(rows - 1, y + radius) - Math.max(0, y - radius) + 1;
+        for (int x = 0, o = y * cols; x < cols; x++, o++) {
+          int left = Math.max(0, x - radius);
+          int right = Math.min(cols - 1, x + radius) + 1;
+          long n = height * (right - left);
+          dst[o] = (int) ((prefix[right] - prefix[left] + n / 2) / n);
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Adds (or takes away) a row of packed pixels to the running column sums.
+   */
+  private static void addRow(int[] src, int start, int cols, long[] columns, int sign) {
+    for (int x = 0, p = start, c = 0; x < cols; x++, p++, c += 3) {
+      int v = src[p];
+      columns[c] += sign * ((v >> 16) & 0xFF);
+      columns[c + 1] += sign * ((v >> 8) & 0xFF);
+      columns[c + 2] += sign * (v & 0xFF);
+    }
+  }
+
+  /**
+   * Adds (or takes away) a row of one channel to the running column sums.
+   */
+  private static void addPlaneRow(int[] src, int cols, int row, long[] columns, int sign) {
+    for (int x = 0, p = row * cols; x < cols; x++, p++) {
+      columns[x] += (long) sign * src[p];
+    }
+  }
+}
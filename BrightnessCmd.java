@@ -45,4 +45,14 @@ public class BrightnessCmd implements ImageProcessingCommand {
     ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
     model.addImage(newName, transformer.brighten(increment));
   }
+
+  /**
+   * Each pixel's new value depends only on the pixel itself.
+   *
+   * @return 0
+   */
+  @Override
+  public int getHalo() {
+    return 0;
+  }
 }
@@ -42,6 +42,16 @@ public class ColorTransformationCmd implements ImageProcessingCommand {
     model.addImage(newName, transformer.transformColor(matrix));
   }
 
+  /**
+   * Each pixel's new value depends only on the pixel itself.
+   *
+   * @return 0
+   */
+  @Override
+  public int getHalo() {
+    return 0;
+  }
+
   /**
    * Adds the supported matrices to the class' map of known matrices.
    */
@@ -0,0 +1,149 @@
+package model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import controller.commands.ImageProcessingCommand;
+
+/**
+ * A thread-safe ImageCollectionModel which can be shared between the GUI thread, background
+ * workers and batch runners. Reads never block: images are stored in a concurrent map and
+ * replaced atomically by addImage(). The collection keeps a copy of each image added rather than
+ * the image itself, so whoever added it can go on editing their own image, and reading an image
+ * only ever reads the stored copy. Callers which need a consistent read-modify-write sequence
+ * on an image (i.e. a long-running command which reads "koala" and writes "koala") can hold that
+ * image's write lock, which only blocks other users of images in the same lock stripe.
+ */
+public class ConcurrentImageCollection implements ImageCollectionModel {
+
+  private static final int DEFAULT_STRIPES = 64;
+
+  private final Map<String, ImageModel> images;
+  private final ReadWriteLock[] stripes;
+
+  /**
+   * Constructs an empty collection with the default number of lock stripes.
+   */
+  public ConcurrentImageCollection() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * Constructs an empty collection with a given number of lock stripes. More stripes means less
+   * chance of two different images sharing a lock.
+   *
+   * @param numStripes the number of per-image read/write locks to stripe names across
+   * @throws IllegalArgumentException if the number of stripes is not positive
+   */
+  public ConcurrentImageCollection(int numStripes) throws IllegalArgumentException {
+    if (numStripes < 1) {
+      throw new IllegalArgumentException("Number of lock stripes must be positive.");
+    }
+    this.images = new ConcurrentHashMap<>();
+    this.stripes = new ReadWriteLock[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      this.stripes[i] = new ReentrantReadWriteLock();
+    }
+  }
+
+  @Override
+  public void executeCommand(ImageProcessingCommand cmd) throws IllegalArgumentException {
+    cmd.execute(this);
+  }
+
+  /**
+   * Executes a command while holding the write lock of a single image, so that no other locked
+   * command can read or replace that image until this one has finished. Commands on images in
+   * other stripes run concurrently.
+   *
+   * @param cmd the command to execute
+   * @param imageName the name of the image the command reads and replaces
+   * @throws IllegalArgumentException if the command fails
+   */
+  public void executeCommand(ImageProcessingCommand cmd, String imageName)
+          throws IllegalArgumentException {
+    Lock lock = writeLock(imageName);
+    lock.lock();
+    try {
+      cmd.execute(this);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Lock-free retrieval of an image. The stored image is never written to after being added, not
+   * even to mark it as shared (it already is), so the copy is always of a complete image, either
+   * the old one or its replacement.
+   */
+  @Override
+  public ImageModel getImage(String name) throws IllegalArgumentException {
+    if (name == null) {
+      throw new IllegalArgumentException("Image name cannot be null.");
+    }
+    ImageModel img = this.images.get(name);
+    if (img == null) {
+      throw new IllegalArgumentException(
+              name + " image not found. Please load an image or check that " +
+              "the image name is correct.");
+    }
+    return img.getCopy();
+  }
+
+  /**
+   * Atomically adds or replaces an image. Readers see either the previous image or the new one,
+   * never a partially written image. A copy of the image is stored, which for packed and deep
+   * images shares its pixels until the caller writes to theirs.
+   */
+  @Override
+  public void addImage(String name, ImageModel img) throws IllegalArgumentException {
+    if (name == null || img == null) {
+      throw new IllegalArgumentException("Cannot add a null image.");
+    }
+    this.images.put(name, img.getCopy());
+  }
+
+  @Override
+  public int getNumImages() {
+    return images.size();
+  }
+
+  /**
+   * Returns the read lock guarding an image name. Holding it keeps locked writers of that image
+   * (and of any image in the same stripe) out, while other readers may continue.
+   *
+   * @param name the name of the image
+   * @return the read lock for the image's stripe
+   */
+  public Lock readLock(String name) {
+    return stripeFor(name).readLock();
+  }
+
+  /**
+   * Returns the write lock guarding an image name.
+   *
+   * @param name the name of the image
+   * @return the write lock for the image's stripe
+   */
+  public Lock writeLock(String name) {
+    return stripeFor(name).writeLock();
+  }
+
+  /**
+   * Finds the lock stripe an image name hashes to.
+   *
+   * @param name the name of the image
+   * @return the read/write lock for that stripe
+   */
+  private ReadWriteLock stripeFor(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("Image name cannot be null.");
+    }
+    int h = name.hashCode();
+    h ^= (h >>> 16);
+    return stripes[Math.floorMod(h, stripes.length)];
+  }
+}
@@ -0,0 +1,200 @@
+package model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests for ConcurrentImageCollection: many threads reading, editing and replacing images
+ * under a few overlapping names at once.
+ */
+public class ConcurrentImageCollectionTest {
+
+  private static final int THREADS = 16;
+  private static final int ROUNDS = 2000;
+  private static final String[] NAMES = {"koala", "bird", "tree"};
+  private static final int SIZE = 32;
+
+  /**
+   * Every image added under a name is filled with one value. A reader must always see a whole
+   * image filled with a value some writer used, never a mix, and never the edits other readers
+   * made to their own copies.
+   */
+  @Test
+  public void testReadersSeeWholeImages() throws Exception {
+    ConcurrentImageCollection model = new ConcurrentImageCollection(4);
+    for (String name : NAMES) {
+      model.addImage(name, filled(1, false));
+    }
+    Queue<String> failures = new ConcurrentLinkedQueue<>();
+    runAll(t -> {
+      for (int i = 0; i < ROUNDS; i++) {
+        String name = NAMES[(t + i) % NAMES.length];
+        if ((t + i) % 4 == 0) {
+          // values 1 to 200 are written; edits by readers use 255
+          ImageModel img = filled(1 + (t * ROUNDS + i) % 200, i % 8 == 0);
+          model.addImage(name, img);
+          // the writer goes on editing its own image, which must not change the stored one
+          img.setPixel(0, 0, new Pixel(255, 255, 255, img.getPixel(0, 0).getMaxValue()));
+        } else {
+          ImageModel img = model.getImage(name);
+          String problem = checkFilled(img);
+          if (problem != null) {
+            failures.add(name + ": " + problem);
+          }
+          img.setPixel(SIZE - 1, SIZE - 1,
+                  new Pixel(255, 255, 255, img.getPixel(0, 0).getMaxValue()));
+        }
+      }
+    });
+    assertTrue(String.join("\n", failures), failures.isEmpty());
+    for (String name : NAMES) {
+      assertEquals(null, checkFilled(model.getImage(name)));
+    }
+  }
+
+  /**
+   * Commands run while holding an image's write lock see each other's results, so no increment
+   * made by one thread is lost to another doing the same.
+   */
+  @Test
+  public void testLockedCommandsDoNotLoseUpdates() throws Exception {
+    ConcurrentImageCollection model = new ConcurrentImageCollection(2);
+    for (String name : NAMES) {
+      model.addImage(name, filled(0, false));
+    }
+    int increments = 12;
+    runAll(t -> {
+      for (int i = 0; i < increments; i++) {
+        for (String name : NAMES) {
+          model.executeCommand(m -> {
+            ImageModel img = m.getImage(name);
+            int value = img.getPixel(0, 0).getRed() + 1;
+            m.addImage(name, filled(value, false));
+          }, name);
+          // an unlocked reader in between must still see a whole image
+          assertEquals(null, checkFilled(model.getImage(name)));
+        }
+      }
+    });
+    for (String name : NAMES) {
+      assertEquals(THREADS * increments, model.getImage(name).getPixel(SIZE / 2, 3).getRed());
+    }
+  }
+
+  /**
+   * Copies taken on many threads at once from the same stored image all share its pixels, and
+   * each one takes pixels of its own when written to.
+   */
+  @Test
+  public void testCopiesTakenConcurrentlyAreIndependent() throws Exception {
+    ConcurrentImageCollection model = new ConcurrentImageCollection();
+    model.addImage("koala", filled(7, false));
+    Queue<PackedImage> copies = new ConcurrentLinkedQueue<>();
+    runAll(t -> {
+      for (int i = 0; i < ROUNDS; i++) {
+        PackedImage copy = (PackedImage) model.getImage("koala");
+        if (i % 2 == 0) {
+          copy.writablePixels()[t] = 0xFF000000;
+        }
+        if (i == ROUNDS - 1) {
+          copies.add(copy);
+        }
+      }
+    });
+    assertEquals(null, checkFilled(model.getImage("koala")));
+    List<int[]> arrays = new ArrayList<>();
+    for (PackedImage copy : copies) {
+      arrays.add(copy.buffer());
+    }
+    // the last copies were only read, so they still share the stored image's array
+    for (int[] array : arrays) {
+      assertTrue(array == arrays.get(0));
+    }
+  }
+
+  /**
+   * Work done by one thread of a stress test.
+   */
+  private interface Work {
+    void run(int thread) throws Exception;
+  }
+
+  /**
+   * Runs the same work on every thread at once, and rethrows the first failure.
+   *
+   * @param work the work, given the number of the thread running it
+   */
+  private static void runAll(Work work) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> results = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      int thread = t;
+      results.add(pool.submit(() -> {
+        start.await();
+        work.run(thread);
+        return null;
+      }));
+    }
+    start.countDown();
+    try {
+      for (Future<?> result : results) {
+        result.get(2, TimeUnit.MINUTES);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Makes an image with every channel of every pixel set to one value.
+   *
+   * @param value the value
+   * @param deep true for a 16-bit DeepImage, false for a PackedImage
+   * @return the image
+   */
+  private static ImageModel filled(int value, boolean deep) {
+    if (deep) {
+      char[][] planes = new char[3][SIZE * SIZE];
+      for (char[] plane : planes) {
+        Arrays.fill(plane, (char) value);
+      }
+      return new DeepImage(SIZE, SIZE, planes, DeepImage.MAX_VALUE);
+    }
+    int[] data = new int[SIZE * SIZE];
+    Arrays.fill(data, 0xFF000000 | value << 16 | value << 8 | value);
+    return new PackedImage(SIZE, SIZE, data, 255);
+  }
+
+  /**
+   * Checks that an image is filled with one value.
+   *
+   * @param img the image
+   * @return a description of the first pixel which differs, or null if there is none
+   */
+  private static String checkFilled(ImageModel img) {
+    int value = img.getPixel(0, 0).getRed();
+    for (int i = 0; i < img.getRows(); i++) {
+      for (int j = 0; j < img.getCols(); j++) {
+        Pixel p = img.getPixel(i, j);
+        if (p.getRed() != value || p.getGreen() != value || p.getBlue() != value) {
+          return "pixel (" + i + ", " + j + ") is " + p.getRed() + " rather than " + value;
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,69 @@
+package controller.commands;
+
+import model.ImageCollectionModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+
+/**
+ * Class to represent the command to crop an image to a rectangle and add it to the
+ * ImageCollectionModel. The cropped image shares the original's pixels until either is edited,
+ * so cropping costs nothing however large the rectangle is.
+ */
+public class CropCmd implements ImageProcessingCommand {
+
+  private final String newName;
+  private final String orig;
+  private final int left;
+  private final int top;
+  private final int width;
+  private final int height;
+
+  /**
+   * Constructs a Crop object.
+   * @param orig the name of the image to crop
+   * @param newName the name of the new cropped image
+   * @param left the first column of the rectangle
+   * @param top the first row of the rectangle
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   * @throws IllegalArgumentException if either name is null, or the rectangle is empty
+   */
+  public CropCmd(String orig, String newName, int left, int top, int width, int height)
+          throws IllegalArgumentException {
+    if (orig == null || newName == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    this.newName = newName;
+    this.orig = orig;
+    this.left = left;
+    this.top = top;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Method to execute the command to crop an Image in an ImageCollection and add it
+   * under its new name.
+   *
+   * @param model the model to execute the command on
+   * @throws IllegalArgumentException if the rectangle is not inside the image
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
+    model.addImage(newName, transformer.crop(left, top, width, height));
+  }
+
+  /**
+   * Cropping makes a new image out of the pixels rather than editing them in place.
+   *
+   * @return false
+   */
+  @Override
+  public boolean editsInPlace() {
+    return false;
+  }
+}
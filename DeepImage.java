@@ -0,0 +1,250 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Class representing an image with more than 8 bits per channel, such as a 16-bit PPM or PNG.
+ * Each channel is stored in an array of its own (a plane), one char per value, row by row, so a
+ * 16-bit image takes 6 bytes per pixel rather than a Pixel object per pixel. Transformations
+ * work directly on the planes. As with PackedImage, copies share the planes until one of them is
+ * written to (copy-on-write).
+ */
+public class DeepImage implements ImageModel {
+
+  /**
+   * The largest maximum value a channel can have.
+   */
+  public static final int MAX_VALUE = 0xFFFF;
+
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  // the red, green and blue planes
+  private char[][] planes;
+  // volatile, as in PackedImage, since copies taken on one thread can be written to on another
+  private volatile boolean shared;
+
+  /**
+   * Constructs a black image of the given size.
+   *
+   * @param width the number of columns in the image
+   * @param height the number of rows in the image
+   * @param maxValue the maximum value of each channel
+   * @throws IllegalArgumentException if the dimensions are not positive or the maximum value
+   *         does not fit in 16 bits
+   */
+  public DeepImage(int width, int height, int maxValue) throws IllegalArgumentException {
+    this(width, height, newPlanes(width, height), maxValue);
+  }
+
+  /**
+   * Constructs an image around existing red, green and blue planes, each stored row by row. The
+   * arrays are used directly, not copied.
+   *
+   * @param width the number of columns in the image
+   * @param height the number of rows in the image
+   * @param planes the red, green and blue planes
+   * @param maxValue the maximum value of each channel
+   * @throws IllegalArgumentException if the planes do not match the dimensions or the maximum
+   *         value does not fit in 16 bits
+   */
+  public DeepImage(int width, int height, char[][] planes, int maxValue)
+          throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    if (planes == null || planes.length != 3) {
+      throw new IllegalArgumentException("Pixel data does not match the image dimensions.");
+    }
+    for (char[] plane : planes) {
+      if (plane == null || plane.length != width * height) {
+        throw new IllegalArgumentException("Pixel data does not match the image dimensions.");
+      }
+    }
+    if (maxValue < 0 || maxValue > MAX_VALUE) {
+      throw new IllegalArgumentException("Images hold at most 16 bits per channel.");
+    }
+    this.width = width;
+    this.height = height;
+    this.planes = planes;
+    this.maxValue = maxValue;
+    this.shared = false;
+  }
+
+  /**
+   * Returns an image as a deep image. Deep images are returned as they are, and any other image
+   * is converted, keeping its maximum value.
+   *
+   * @param img the image to convert
+   * @return the image as a DeepImage
+   * @throws IllegalArgumentException if the image's channels do not fit in 16 bits
+   */
+  public static DeepImage of(ImageModel img) throws IllegalArgumentException {
+    if (img instanceof DeepImage) {
+      return (DeepImage) img;
+    }
+    int rows = img.getRows();
+    int cols = img.getCols();
+    char[][] planes = new char[3][rows * cols];
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        Pixel p = img.getPixel(i, j);
+        planes[0][i * cols + j] = (char) p.getRed();
+        planes[1][i * cols + j] = (char) p.getGreen();
+        planes[2][i * cols + j] = (char) p.getBlue();
+      }
+    }
+    return new DeepImage(cols, rows, planes, img.getPixel(0, 0).getMaxValue());
+  }
+
+  @Override
+  public int getRows() {
+    return this.height;
+  }
+
+  @Override
+  public int getCols() {
+    return this.width;
+  }
+
+  /**
+   * Gets the maximum allowed value of each channel.
+   *
+   * @return int the max value
+   */
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Returns a copy of this image. The copy shares this image's planes until either is written to.
+   *
+   * @return ImageModel the copy
+   */
+  @Override
+  public ImageModel getCopy() {
+    if (!shared) {
+      this.shared = true;
+    }
+    DeepImage copy = new DeepImage(width, height, planes, maxValue);
+    copy.shared = true;
+    return copy;
+  }
+
+  @Override
+  public Pixel getPixel(int row, int col) throws IllegalArgumentException {
+    checkBounds(row, col);
+    int i = row * width + col;
+    return new Pixel(planes[0][i], planes[1][i], planes[2][i], maxValue);
+  }
+
+  @Override
+  public void setPixel(int row, int col, Pixel p) throws IllegalArgumentException {
+    if (p == null) {
+      throw new IllegalArgumentException("Invalid parameters");
+    }
+    checkBounds(row, col);
+    char[][] writable = writablePlanes();
+    int i = row * width + col;
+    writable[0][i] = (char) Math.min(p.getRed(), maxValue);
+    writable[1][i] = (char) Math.min(p.getGreen(), maxValue);
+    writable[2][i] = (char) Math.min(p.getBlue(), maxValue);
+  }
+
+  /**
+   * Returns the red, green and blue planes for reading. The arrays must not be written to, as
+   * they may be shared with copies of this image.
+   *
+   * @return the planes, each row by row
+   */
+  char[][] planes() {
+    return planes;
+  }
+
+  /**
+   * Returns the planes for writing, first taking private copies of them if they are shared with
+   * another image.
+   *
+   * @return the planes, each row by row
+   */
+  char[][] writablePlanes() {
+    if (shared) {
+      planes = new char[][]{planes[0].clone(), planes[1].clone(), planes[2].clone()};
+      shared = false;
+    }
+    return planes;
+  }
+
+  /**
+   * Replaces the planes with new arrays, for edits which read the old values while writing every
+   * new one and so cannot write in place.
+   *
+   * @param planes the new red, green and blue planes, which now belong to this image
+   */
+  void replacePlanes(char[][] planes) {
+    for (char[] plane : planes) {
+      if (plane.length != width * height) {
+        throw new IllegalArgumentException("Pixel data does not match the image dimensions.");
+      }
+    }
+    this.planes = planes;
+    this.shared = false;
+  }
+
+  /**
+   * Throws an exception if a row and column are outside of this image.
+   *
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   */
+  private void checkBounds(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || row >= height || col >= width) {
+      throw new IllegalArgumentException("Out of range.");
+    }
+  }
+
+  /**
+   * Creates three new planes of zeros.
+   *
+   * @param width the number of columns
+   * @param height the number of rows
+   * @return the planes
+   */
+  private static char[][] newPlanes(int width, int height) {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    return new char[3][width * height];
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof DeepImage)) {
+      return false;
+    }
+    DeepImage other = (DeepImage) obj;
+    if (this.width != other.width || this.height != other.height
+            || this.maxValue != other.maxValue) {
+      return false;
+    }
+    for (int c = 0; c < 3; c++) {
+      if (!Arrays.equals(this.planes[c], other.planes[c])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = Objects.hash(width, height, maxValue);
+    for (char[] plane : planes) {
+      hash = 31 * hash + Arrays.hashCode(plane);
+    }
+    return hash;
+  }
+}
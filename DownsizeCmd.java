@@ -31,4 +31,14 @@ public class DownsizeCmd implements ImageProcessingCommand {
     ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
     model.addImage(newName, transformer.downsize(newWidth, newHeight));
   }
+
+  /**
+   * Downsizing makes a new image out of the pixels rather than editing them in place.
+   *
+   * @return false
+   */
+  @Override
+  public boolean editsInPlace() {
+    return false;
+  }
 }
@@ -0,0 +1,267 @@
+package controller.commands;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodes images to files through ImageIO on a pool of background threads, so that saving an
+ * image does not hold up the commands after it. Each thread keeps one ImageWriter per format and
+ * reuses it for every image it encodes, rather than looking writers up for every file. Writes to
+ * the same file happen in the order they were asked for, and loading a file waits for any write
+ * to it still in progress. The outcome of a write which is not waited for is kept until it is
+ * collected with finished(), as the controller does after each command and when it quits; the
+ * pool is also waited for when the program exits, so no file is left half written.
+ */
+public final class EncoderPool {
+
+  private static final AtomicInteger THREADS = new AtomicInteger();
+  private static final ExecutorService POOL = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "image-encoder-" + THREADS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          });
+  // each thread's writers, by format name
+  private static final ThreadLocal<Map<String, ImageWriter>> WRITERS =
+          ThreadLocal.withInitial(HashMap::new);
+  // the latest write to each file, by absolute path
+  private static final Map<String, CompletableFuture<Void>> PENDING = new ConcurrentHashMap<>();
+  // the outcomes of writes nobody waited for, in the order they finished, until collected
+  private static final Queue<Outcome> FINISHED = new ConcurrentLinkedQueue<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(EncoderPool::awaitAll));
+  }
+
+  private EncoderPool() {
+    // static helpers only
+  }
+
+  /**
+   * Checks whether ImageIO has a writer for a format.
+   *
+   * @param format the format's name, such as a file extension
+   * @return true if images can be written in the format
+   */
+  static boolean canWrite(String format) {
+    return ImageIO.getImageWritersByFormatName(format).hasNext();
+  }
+
+  /**
+   * Encodes an image to a file on the pool. Images the format cannot hold, such as ones with
+   * 16 bits per channel or alpha in a JPEG, are written with 8 bits per channel and no alpha.
+   *
+   * @param image the image to write, which must not be changed afterwards
+   * @param file the file to write to, replaced if it exists
+   * @param format the name of the format to write
+   * @param quality the compression quality from 0 (smallest) to 1 (best), or a negative number
+   *                for the format's default
+   * @param wait true to wait for the file to be written, false to return straight away
+   * @throws IllegalArgumentException if waiting and the file cannot be written
+   */
+  static void write(BufferedImage image, File file, String format, float quality, boolean wait)
+          throws IllegalArgumentException {
+    String key = file.getAbsolutePath();
+    CompletableFuture<Void> task = PENDING.compute(key, (k, previous) -> {
+      CompletableFuture<Void> encoded = (previous == null
+              ? CompletableFuture.<Void>completedFuture(null) : previous.exceptionally(e -> null))
+              .thenRunAsync(() -> encode(image, file, format, quality), POOL);
+      if (wait) {
+        return encoded;
+      }
+      // the outcome is recorded before the write counts as finished, so waiting always sees it
+      return encoded.whenComplete((v, e) -> FINISHED.add(new Outcome(file.getPath(),
+              e == null ? null : message(e))));
+    });
+    task.whenComplete((v, e) -> PENDING.remove(key, task));
+    if (wait) {
+      join(task);
+    }
+  }
+
+  /**
+   * Waits for any write to a file still in progress. A failure is left to be collected with
+   * finished().
+   *
+   * @param path the path of the file
+   */
+  public static void await(String path) {
+    CompletableFuture<Void> task = PENDING.get(new File(path).getAbsolutePath());
+    if (task != null) {
+      task.exceptionally(e -> null).join();
+    }
+  }
+
+  /**
+   * Collects the outcomes of the writes nobody waited for which have finished since this was
+   * last called, in the order they finished.
+   *
+   * @param wait true to first wait for every write still in progress
+   * @return the outcomes, which are not returned again
+   */
+  public static List<Outcome> finished(boolean wait) {
+    if (wait) {
+      awaitAll();
+    }
+    List<Outcome> outcomes = new ArrayList<>();
+    for (Outcome o = FINISHED.poll(); o != null; o = FINISHED.poll()) {
+      outcomes.add(o);
+    }
+    return outcomes;
+  }
+
+  /**
+   * Waits for every write still in progress, ignoring failures.
+   */
+  private static void awaitAll() {
+    for (CompletableFuture<Void> task : PENDING.values()) {
+      task.exceptionally(e -> null).join();
+    }
+  }
+
+  /**
+   * Encodes an image with this thread's writer for its format.
+   *
+   * @param image the image to write
+   * @param file the file to write to
+   * @param format the name of the format
+   * @param quality the compression quality, or a negative number for the format's default
+   * @throws IllegalArgumentException if the file cannot be written
+   */
+  private static void encode(BufferedImage image, File file, String format, float quality)
+          throws IllegalArgumentException {
+    Map<String, ImageWriter> writers = WRITERS.get();
+    ImageWriter writer = writers.computeIfAbsent(format.toLowerCase(), f -> {
+      Iterator<ImageWriter> found = ImageIO.getImageWritersByFormatName(f);
+      return found.hasNext() ? found.next() : null;
+    });
+    if (writer == null) {
+      throw new IllegalArgumentException("File type not supported.");
+    }
+    if (!writer.getOriginatingProvider().canEncodeImage(image)) {
+      // formats such as JPEG cannot hold 16 bits per channel or alpha, so write 8-bit RGB instead
+      image = toEightBit(image);
+      if (!writer.getOriginatingProvider().canEncodeImage(image)) {
+        throw new IllegalArgumentException("File type not supported.");
+      }
+    }
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (quality >= 0 && param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      if (param.getCompressionType() == null) {
+        param.setCompressionType(param.getCompressionTypes()[0]);
+      }
+      param.setCompressionQuality(quality);
+    }
+    try {
+      // the stream writes over the file without shortening it, so remove the old file first
+      Files.deleteIfExists(file.toPath());
+      try (ImageOutputStream out = new FileImageOutputStream(file)) {
+        writer.setOutput(out);
+        writer.write(null, new IIOImage(image, null, null), param);
+      } finally {
+        writer.reset();
+      }
+    } catch (IOException | RuntimeException e) {
+      // a writer which failed part way may be left in a bad state, so it is not reused
+      writers.remove(format.toLowerCase());
+      writer.dispose();
+      throw new IllegalArgumentException("File writing failed.");
+    }
+  }
+
+  /**
+   * Converts an image to an 8-bit RGB image.
+   *
+   * @param image the image to convert
+   * @return the 8-bit image
+   */
+  private static BufferedImage toEightBit(BufferedImage image) {
+    BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+            BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = converted.createGraphics();
+    g.drawImage(image, 0, 0, null);
+    g.dispose();
+    return converted;
+  }
+
+  /**
+   * Waits for a write, passing on its failure.
+   *
+   * @param task the write
+   * @throws IllegalArgumentException if the write failed
+   */
+  private static void join(CompletableFuture<Void> task) throws IllegalArgumentException {
+    try {
+      task.join();
+    } catch (CompletionException e) {
+      throw new IllegalArgumentException(message(e));
+    }
+  }
+
+  /**
+   * Finds the message of a failed write.
+   *
+   * @param e what the write threw, possibly wrapped by the future
+   * @return the message to show the user
+   */
+  private static String message(Throwable e) {
+    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    return cause instanceof IllegalArgumentException ? cause.getMessage()
+            : "File writing failed.";
+  }
+
+  /**
+   * How a write nobody waited for turned out.
+   */
+  public static final class Outcome {
+
+    private final String path;
+    private final String failure;
+
+    private Outcome(String path, String failure) {
+      this.path = path;
+      this.failure = failure;
+    }
+
+    /**
+     * Gets the path of the file written to.
+     *
+     * @return the path, as it was given
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Gets why the write failed.
+     *
+     * @return the message to show the user, or null if the file was written
+     */
+    public String getFailure() {
+      return failure;
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package controller.commands;
+
+import model.ImageCollectionModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+
+/**
+ * Class to represent the command to equalize the histogram of an image and add it to the
+ * ImageCollectionModel.
+ */
+public class EqualizeCmd implements ImageProcessingCommand {
+
+  private final String newName;
+  private final String orig;
+
+  /**
+   * Constructs an EqualizeCmd object, which requires a name of the original image and a name for
+   * the equalized image.
+   *
+   * @param orig the name of the image to equalize
+   * @param newName the name of the equalized image
+   * @throws IllegalArgumentException if either name is null
+   */
+  public EqualizeCmd(String orig, String newName) throws IllegalArgumentException {
+    if (orig == null || newName == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    this.newName = newName;
+    this.orig = orig;
+  }
+
+  /**
+   * Equalizes an Image in an ImageCollection and adds it under its new name using
+   * ImageCollectionModel's addImage().
+   *
+   * @param model the ImageCollectionModel to execute the command on
+   * @throws IllegalArgumentException if the model runs into an error at any point
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
+    model.addImage(newName, transformer.equalize());
+  }
+}
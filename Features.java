@@ -25,10 +25,11 @@ public interface Features {
   void runCommand(String commandName);
 
   /**
-   * Toggles the brightness of an image.
-   * @param increment the amount by which to brighten an image
+   * Sets the brightness of an image relative to how it looked before the brightness was first
+   * changed, so repeated calls replace each other rather than adding up.
+   * @param level the amount by which the image should be brightened (negative to darken)
    */
-  void toggleBrightness(int increment);
+  void setBrightness(int level);
 
   /**
    * Downsizes an image
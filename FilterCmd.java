@@ -2,7 +2,9 @@ package controller.commands;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiFunction;
 import model.ImageCollectionModel;
+import model.ImageModel;
 import model.ImageTransformations;
 import model.ImageTransformationsImpl;
 
@@ -17,6 +19,13 @@ public class FilterCmd implements ImageProcessingCommand {
   private final String orig;
   private final double[][] filter;
   private final Map<String, double[][]> knownFilters;
+  // filters which work in any radius, and how many times over each reaches that radius
+  private final Map<String, BiFunction<ImageTransformations, Integer, ImageModel>>
+          knownRadiusFilters;
+  private final Map<String, Integer> knownPasses;
+  private final BiFunction<ImageTransformations, Integer, ImageModel> radiusFilter;
+  private final int radius;
+  private final int passes;
 
   /**
    * Constructor for the command to filter an image.
@@ -32,18 +41,77 @@ public class FilterCmd implements ImageProcessingCommand {
     this.orig = orig;
     this.newName = newName;
     knownFilters = new HashMap<>();
+    knownRadiusFilters = new HashMap<>();
+    knownPasses = new HashMap<>();
     addFilters();
 
     filter = knownFilters.getOrDefault(filterName, null);
     if (filter == null) {
       throw new IllegalArgumentException("Filter is null.");
     }
+    this.radiusFilter = null;
+    this.radius = 0;
+    this.passes = 0;
+  }
+
+  /**
+   * Constructor for the command to filter an image with a filter of any radius, which takes the
+   * same time whatever its radius: "Box" averages each pixel with those within the radius,
+   * "Gaussian" repeats that three times over, which is close to a Gaussian blur, and "Median"
+   * takes the median of them, which removes noise while keeping edges sharp.
+   *
+   * @param orig       the name of the original image to filter
+   * @param newName    the name of the new, filtered image
+   * @param filterName the name of the filter to apply to the image
+   * @param radius     how far the filter reaches from each pixel, in each pass
+   * @throws IllegalArgumentException if any name is null or unknown, or the radius is negative
+   */
+  public FilterCmd(String orig, String newName, String filterName, int radius)
+          throws IllegalArgumentException {
+    if (orig == null || newName == null || filterName == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (radius < 0) {
+      throw new IllegalArgumentException("The radius cannot be negative.");
+    }
+    this.orig = orig;
+    this.newName = newName;
+    knownFilters = new HashMap<>();
+    knownRadiusFilters = new HashMap<>();
+    knownPasses = new HashMap<>();
+    addFilters();
+
+    radiusFilter = knownRadiusFilters.getOrDefault(filterName, null);
+    if (radiusFilter == null) {
+      throw new IllegalArgumentException("Filter is null.");
+    }
+    this.filter = null;
+    this.radius = radius;
+    this.passes = knownPasses.get(filterName);
   }
 
   @Override
   public void execute(ImageCollectionModel model) throws IllegalArgumentException {
     ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
-    model.addImage(newName, transformer.filter(filter));
+    if (filter == null) {
+      model.addImage(newName, radiusFilter.apply(transformer, radius));
+    } else {
+      model.addImage(newName, transformer.filter(filter));
+    }
+  }
+
+  /**
+   * Filters only look as far from each pixel as the radius of their kernel, or their radius in
+   * each pass.
+   *
+   * @return the radius of the kernel, or of all the filter's passes together
+   */
+  @Override
+  public int getHalo() {
+    if (filter == null) {
+      return radius * passes;
+    }
+    return Math.max(filter.length, filter[0].length) / 2;
   }
 
   /**
@@ -61,5 +129,12 @@ public class FilterCmd implements ImageProcessingCommand {
             {.0625, .125, .0625},
             {.125, .25, .125},
             {.0625, .125, .0625}});
+
+    knownRadiusFilters.put("Box", (t, r) -> t.boxBlur(r, 1));
+    knownPasses.put("Box", 1);
+    knownRadiusFilters.put("Gaussian", (t, r) -> t.boxBlur(r, 3));
+    knownPasses.put("Gaussian", 3);
+    knownRadiusFilters.put("Median", ImageTransformations::median);
+    knownPasses.put("Median", 1);
   }
 }
@@ -21,15 +21,45 @@ public interface GUIView extends ImageProcessingView {
    * it to the list of image names. Sets the image being displayed to the selected image.
    *
    * @param img the BufferedImage to display to the user
+   * @param histValues the histogram of the image
+   * @param maxFrequency the largest count in the histogram
    */
-  void displayImage(BufferedImage img, int[][] histValues);
+  void displayImage(BufferedImage img, int[][] histValues, int maxFrequency);
 
   /**
-   * Resets the previous brightness slider value to 0 and the current brightness slider to 0.
+   * Displays a reduced-resolution preview of an image, stretched to the size of the full image it
+   * stands in for, until the full-resolution image is displayed.
+   *
+   * @param preview the reduced-resolution image
+   * @param fullWidth the width of the full-resolution image
+   * @param fullHeight the height of the full-resolution image
+   * @param histValues the histogram of the preview
+   * @param maxFrequency the largest count in the histogram
+   */
+  void displayPreview(BufferedImage preview, int fullWidth, int fullHeight, int[][] histValues,
+                      int maxFrequency);
+
+  /**
+   * Replaces the displayed histogram without changing the displayed image, as when an estimated
+   * histogram is replaced by the exact one.
+   *
+   * @param histValues the histogram of the displayed image
+   * @param maxFrequency the largest count in the histogram
+   */
+  void displayHistogram(int[][] histValues, int maxFrequency);
+
+  /**
+   * Resets the brightness slider to 0.
    * Resets the radio button selections to false.
    */
   void resetSelections();
 
+  /**
+   * Shows or hides the indicator telling the user that work is running in the background.
+   * @param busy true while commands are still being processed
+   */
+  void setBusy(boolean busy);
+
   /**
    * Renders an error message in a popup box for the user to read.
    * @param message the message to render
@@ -0,0 +1,151 @@
+package model;
+
+/**
+ * Moves the pixels of packed images around: transposing, rotating by quarter turns, and
+ * mirroring. Transposes and quarter turns read the source down its columns while writing the
+ * result along its rows, which would miss the cache on every read of a large image; instead, the
+ * result is written one square tile at a time, small enough that the source rows a tile reads
+ * stay in cache until the tile is done. Tiles are spread over bands of the result's rows in
+ * parallel. Mirroring and half turns only reverse rows or swap whole rows, and work in place.
+ */
+final class Geometry {
+
+  // the width and height of a tile, in pixels: 64 x 64 pixels of source and result fit in cache
+  private static final int TILE = 64;
+
+  private Geometry() {
+    // static helpers only
+  }
+
+  /**
+   * Transposes packed pixels, so that columns become rows.
+   *
+   * @param src the array holding the pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @return the transposed pixels, rows wide and cols high
+   */
+  static int[] transpose(int[] src, int offset, int stride, int cols, int rows) {
+    return remap(src, cols, rows, offset, 1, stride);
+  }
+
+  /**
+   * Rotates packed pixels a quarter turn clockwise.
+   *
+   * @param src the array holding the pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @return the rotated pixels, rows wide and cols high
+   */
+  static int[] rotateClockwise(int[] src, int offset, int stride, int cols, int rows) {
+    // row i of the result is column i of the source, read from the bottom up
+    return remap(src, cols, rows, offset + (rows - 1) * stride, 1, -stride);
+  }
+
+  /**
+   * Rotates packed pixels a quarter turn counterclockwise.
+   *
+   * @param src the array holding the pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @return the rotated pixels, rows wide and cols high
+   */
+  static int[] rotateCounterclockwise(int[] src, int offset, int stride, int cols, int rows) {
+    // row i of the result is the i-th column from the right of the source, read downwards
+    return remap(src, cols, rows, offset + cols - 1, -1, stride);
+  }
+
+  /**
+   * Rotates packed pixels a half turn in place, which reverses their order.
+   *
+   * @param pixels the pixels, row by row
+   */
+  static void rotateHalf(int[] pixels) {
+    int half = pixels.length / 2;
+    RowBands.forEach(half, 1, (from, to) -> {
+      for (int i = from, j = pixels.length - 1 - from; i < to; i++, j--) {
+        int temp = pixels[i];
+        pixels[i] = pixels[j];
+        pixels[j] = temp;
+      }
+    });
+  }
+
+  /**
+   * Mirrors packed pixels in place, reversing each row.
+   *
+   * @param pixels the pixels, row by row
+   * @param cols the width of the image
+   * @param rows the height of the image
+   */
+  static void mirrorRows(int[] pixels, int cols, int rows) {
+    RowBands.forEach(rows, cols, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        for (int left = i * cols, right = left + cols - 1; left < right; left++, right--) {
+          int temp = pixels[left];
+          pixels[left] = pixels[right];
+          pixels[right] = temp;
+        }
+      }
+    });
+  }
+
+  /**
+   * Mirrors packed pixels in place top to bottom, swapping whole rows.
+   *
+   * @param pixels the pixels, row by row
+   * @param cols the width of the image
+   * @param rows the height of the image
+   */
+  static void mirrorColumns(int[] pixels, int cols, int rows) {
+    RowBands.forEach(rows / 2, cols, (from, to) -> {
+      int[] temp = new int[cols];
+      for (int i = from; i < to; i++) {
+        int top = i * cols;
+        int bottom = (rows - 1 - i) * cols;
+        System.arraycopy(pixels, top, temp, 0, cols);
+        System.arraycopy(pixels, bottom, pixels, top, cols);
+        System.arraycopy(temp, 0, pixels, bottom, cols);
+      }
+    });
+  }
+
+  /**
+   * Builds an image rows wide and cols high whose pixel (i, j) is the source pixel at index
+   * first + i * down + j * across, one tile at a time.
+   *
+   * @param src the source pixels
+   * @param cols the width of the source
+   * @param rows the height of the source
+   * @param first the index of the source pixel which becomes the result's top left pixel
+   * @param down how far through the source each row of the result moves
+   * @param across how far through the source each column of the result moves
+   * @return the result
+   */
+  private static int[] remap(int[] src, int cols, int rows, int first, int down, int across) {
+    int width = rows;
+    int height = cols;
+    int[] dst = new int[cols * rows];
+    RowBands.forEach(height, width, (from, to) -> {
+      for (int top = from; top < to; top += TILE) {
+        int bottom = Math.min(to, top + TILE);
+        for (int left = 0; left < width; left += TILE) {
+          int right = Math.min(width, left + TILE);
+          for (int i = top; i < bottom; i++) {
+            int s = first + i * down + left * across;
+            for (int j = left, d = i * width + left; j < right; j++, d++, s += across) {
+              dst[d] = src[s];
+            }
+          }
+        }
+      }
+    });
+    return dst;
+  }
+}
@@ -43,4 +43,14 @@ public class GreyscaleCmd implements ImageProcessingCommand {
     ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
     model.addImage(newName, transformer.greyscale(component));
   }
+
+  /**
+   * Each pixel's new value depends only on the pixel itself.
+   *
+   * @return 0
+   */
+  @Override
+  public int getHalo() {
+    return 0;
+  }
 }
@@ -0,0 +1,293 @@
+package model;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Helper methods for building and updating the histograms of packed images. A histogram is a
+ * 2D array of 4 rows of 256 counts: 0 = red, 1 = green, 2 = blue, 3 = intensity. Histograms of
+ * deep images, and histograms asked for with another number of bins, share the values out evenly
+ * between the bins; when there are at least as many bins as values, each value has its own bin.
+ * Rather than recounting every pixel after each edit, transformations use these methods to work
+ * out the new histogram from the old one whenever the edit allows it.
+ */
+public final class Histograms {
+
+  static final int RED = 0;
+  static final int GREEN = 1;
+  static final int BLUE = 2;
+  static final int INTENSITY = 3;
+  static final int BINS = 256;
+
+  private Histograms() {
+    // static helpers only
+  }
+
+  /**
+   * Returns the histogram of an image, counting its pixels only if it isn't already known. The
+   * result is cached on the image.
+   *
+   * @param img the image
+   * @return the image's histogram, which must not be modified
+   */
+  static int[][] of(PackedImage img) {
+    int[][] values = img.cachedHistogram();
+    if (values == null) {
+      values = count(img.buffer(), img.offset(), img.stride(), img.getCols(), img.getRows());
+      img.cacheHistogram(values);
+    }
+    return values;
+  }
+
+  /**
+   * Counts the values of every pixel in an array of packed pixels. Bands of rows are counted in
+   * parallel, each into its own private bins so the workers never contend, and the bins are
+   * added together at the end.
+   *
+   * @param pixels the array holding the packed pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the number of pixels in each row
+   * @param rows the number of rows
+   * @return the histogram
+   */
+  static int[][] count(int[] pixels, int offset, int stride, int cols, int rows) {
+    List<int[][]> bands = RowBands.map(rows, cols, (from, to) -> {
+      int[] red = new int[BINS];
+      int[] green = new int[BINS];
+      int[] blue = new int[BINS];
+      int[] intensity = new int[BINS];
+      for (int y = from; y < to; y++) {
+        for (int i = offset + y * stride, end = i + cols; i < end; i++) {
+          int p = pixels[i];
+          int r = (p >> 16) & 0xFF;
+          int g = (p >> 8) & 0xFF;
+          int b = p & 0xFF;
+          red[r]++;
+          green[g]++;
+          blue[b]++;
+          intensity[(r + g + b) / 3]++;
+        }
+      }
+      return new int[][]{red, green, blue, intensity};
+    });
+    return sum(bands);
+  }
+
+  /**
+   * Counts the values of every pixel of a deep image into a number of bins, in parallel bands of
+   * rows as for packed pixels.
+   *
+   * @param planes the red, green and blue planes of the image
+   * @param max the maximum value of each channel
+   * @param bins the number of bins in each row of the histogram
+   * @return the histogram
+   */
+  static int[][] count(char[][] planes, int max, int bins) {
+    char[] red = planes[RED];
+    char[] green = planes[GREEN];
+    char[] blue = planes[BLUE];
+    List<int[][]> bands = RowBands.map(red.length, 1, (from, to) -> {
+      int[][] values = new int[4][bins];
+      for (int i = from; i < to; i++) {
+        int r = red[i];
+        int g = green[i];
+        int b = blue[i];
+        values[RED][bin(r, max, bins)]++;
+        values[GREEN][bin(g, max, bins)]++;
+        values[BLUE][bin(b, max, bins)]++;
+        values[INTENSITY][bin((r + g + b) / 3, max, bins)]++;
+      }
+      return values;
+    });
+    return sum(bands);
+  }
+
+  /**
+   * Shares the counts of a histogram with a bin for every value out between another number of
+   * bins.
+   *
+   * @param values the histogram, with a bin for every value
+   * @param max the maximum value of each channel
+   * @param bins the number of bins in each row of the new histogram
+   * @return the new histogram
+   */
+  static int[][] rebin(int[][] values, int max, int bins) {
+    int[][] binned = new int[4][bins];
+    for (int c = 0; c < 4; c++) {
+      for (int v = 0; v <= max && v < values[c].length; v++) {
+        binned[c][bin(v, max, bins)] += values[c][v];
+      }
+    }
+    return binned;
+  }
+
+  /**
+   * Finds the bin a value is counted in.
+   *
+   * @param v the value
+   * @param max the maximum value
+   * @param bins the number of bins
+   * @return the bin, from 0 to bins - 1
+   */
+  static int bin(int v, int max, int bins) {
+    return max < bins ? v : (int) ((long) v * bins / (max + 1));
+  }
+
+  /**
+   * Adds the histograms of several bands together, into the first of them.
+   *
+   * @param bands the histograms of the bands
+   * @return the total histogram
+   */
+  private static int[][] sum(List<int[][]> bands) {
+    int[][] values = bands.get(0);
+    for (int band = 1; band < bands.size(); band++) {
+      int[][] other = bands.get(band);
+      for (int c = 0; c < 4; c++) {
+        for (int v = 0; v < values[c].length; v++) {
+          values[c][v] += other[c][v];
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Estimates the histogram of an array of packed pixels from a stratified sample. The pixels are
+   * split, in order, into runs of the same length (the last may be shorter), and one pixel is
+   * picked at random from each run; its bins are counted as many times as the run is long. The
+   * estimate has the same total as the exact histogram and is visually identical to it for large
+   * images, at a fraction of the cost. Each pick is seeded by the run it is made from, so the same
+   * image always gives the same estimate, however many threads count it.
+   *
+   * @param pixels the packed pixels, row by row
+   * @param cols the number of pixels in each row
+   * @param run the number of pixels each sampled pixel stands in for
+   * @return the estimated histogram
+   */
+  static int[][] sample(int[] pixels, int cols, int run) {
+    int rows = pixels.length / cols;
+    List<int[][]> bands = RowBands.map(rows, cols / run + 1, (from, to) -> {
+      int[][] values = new int[4][BINS];
+      // each band takes the runs which start in its rows, and each pick is seeded by its run, so
+      // neither depends on how the rows are split into bands
+      int end = to * cols;
+      for (int start = (from * cols + run - 1) / run * run; start < end; start += run) {
+        int length = Math.min(run, pixels.length - start);
+        add(values, pixels[start + new SplittableRandom(start / run).nextInt(length)], length);
+      }
+      return values;
+    });
+    return sum(bands);
+  }
+
+  /**
+   * Finds the largest count in a histogram, which a histogram display scales its graph by.
+   *
+   * @param values the histogram
+   * @return the largest count of any value of any channel
+   */
+  public static int maxFrequency(int[][] values) {
+    int max = 0;
+    for (int[] channel : values) {
+      for (int count : channel) {
+        max = Math.max(max, count);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Adds (or with a count of -1, removes) one packed pixel to a histogram.
+   *
+   * @param values the histogram to update
+   * @param p the packed pixel
+   * @param count the amount to add to the pixel's bins
+   */
+  static void add(int[][] values, int p, int count) {
+    int r = (p >> 16) & 0xFF;
+    int g = (p >> 8) & 0xFF;
+    int b = p & 0xFF;
+    values[RED][r] += count;
+    values[GREEN][g] += count;
+    values[BLUE][b] += count;
+    values[INTENSITY][(r + g + b) / 3] += count;
+  }
+
+  /**
+   * Works out the histogram of an image after each of its channels has been remapped through a
+   * lookup table, without looking at any pixels. The channel counts simply move to their new
+   * values. The intensity of a pixel depends on all three channels together, so its counts can
+   * only be moved when every channel is shifted by the same amount, with no clamping, across all
+   * the values the image uses (as with brightening an image that has room to get brighter).
+   *
+   * @param old the histogram before the remapping
+   * @param red the new value of each red value
+   * @param green the new value of each green value
+   * @param blue the new value of each blue value
+   * @return the new histogram, or null if the intensity counts cannot be worked out
+   */
+  static int[][] remap(int[][] old, int[] red, int[] green, int[] blue) {
+    int[][] values = new int[4][BINS];
+    int[][] luts = {red, green, blue};
+    int lowest = BINS;
+    int highest = -1;
+    for (int c = 0; c < 3; c++) {
+      for (int v = 0; v < BINS; v++) {
+        if (old[c][v] != 0) {
+          values[c][luts[c][v]] += old[c][v];
+          lowest = Math.min(lowest, v);
+          highest = Math.max(highest, v);
+        }
+      }
+    }
+    if (highest < 0) {
+      return values;
+    }
+    int shift = red[lowest] - lowest;
+    for (int v = lowest; v <= highest; v++) {
+      if (red[v] != v + shift || green[v] != v + shift || blue[v] != v + shift) {
+        return null;
+      }
+    }
+    // (r + g + b + 3 * shift) / 3 == (r + g + b) / 3 + shift, since the sum is never negative
+    for (int v = 0; v < BINS; v++) {
+      if (old[INTENSITY][v] != 0) {
+        values[INTENSITY][v + shift] += old[INTENSITY][v];
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Works out the histogram of an image after every pixel's channels have all been set to the
+   * same channel of the original. The new image is grey, so all four rows are that channel's
+   * counts.
+   *
+   * @param old the histogram before the change
+   * @param channel the row of the channel each pixel was set to
+   * @return the new histogram
+   */
+  static int[][] grey(int[][] old, int channel) {
+    int[][] values = new int[4][];
+    for (int c = 0; c < 4; c++) {
+      values[c] = old[channel].clone();
+    }
+    return values;
+  }
+
+  /**
+   * Copies a histogram, so it can be handed out without the cached one being modified.
+   *
+   * @param values the histogram
+   * @return the copy
+   */
+  static int[][] copy(int[][] values) {
+    int[][] copy = new int[values.length][];
+    for (int c = 0; c < values.length; c++) {
+      copy[c] = values[c].clone();
+    }
+    return copy;
+  }
+}
@@ -40,8 +40,10 @@ public class ImageHistogram extends JPanel {
    * Updates the histogram with a new set of values after a transformation has been made.
    * @param histValues A 2d array that holds the amount of pixels for each value, with each row
    *                   representing a different component.
+   * @param maxFrequency the largest value in histValues, which the graph is scaled by. It is
+   *                     worked out along with the values so the arrays aren't scanned again here.
    */
-  public void update(int[][] histValues) {
+  public void update(int[][] histValues, int maxFrequency) {
     if (histValues == null) {
       throw new IllegalArgumentException("Histogram given null values array");
     }
@@ -50,29 +52,11 @@ public class ImageHistogram extends JPanel {
     this.green = histValues[1];
     this.blue = histValues[2];
     this.intensity = histValues[3];
-    this.maxFrequency = 0;
-    this.setMaxFrequency();
+    // avoid dividing by zero when drawing
+    this.maxFrequency = Math.max(1, maxFrequency);
     this.repaint();
   }
 
-  /**
-   * Sets the maximum frequency of all of the components to be used for scaling the histogram.
-   */
-  private void setMaxFrequency() {
-    for (int value : red) {
-      this.maxFrequency = Integer.max(value, maxFrequency);
-    }
-    for (int value : green) {
-      this.maxFrequency = Integer.max(value, maxFrequency);
-    }
-    for (int value : blue) {
-      this.maxFrequency = Integer.max(value, maxFrequency);
-    }
-    for (int value : intensity) {
-      this.maxFrequency = Integer.max(value, maxFrequency);
-    }
-  }
-
   /**
    * A class representing the graph of the histogram.
    */
@@ -113,7 +97,7 @@ public class ImageHistogram extends JPanel {
       int y1 = 0;
       for (int i = 0; i < component.length; i++) {
         int x2 = i + 1;
-        int y2 = (component[i] * this.getHeight()) / maxFrequency;
+        int y2 = (int) (((long) component[i] * this.getHeight()) / maxFrequency);
         g.drawLine(x1, this.getHeight() - y1, x2, this.getHeight() - y2);
         x1 = x2;
         y1 = y2;
@@ -13,4 +13,32 @@ public interface ImageProcessingCommand {
    * @param model the model to execute the command on
    */
   void execute(ImageCollectionModel model) throws IllegalArgumentException;
+
+  /**
+   * Returns how far from a pixel this command looks when working out that pixel's new value. A
+   * command which only looks at the pixel itself returns 0, and a filter returns the radius of its
+   * kernel. Commands which look further, such as flips or histogram adjustments, return -1; this
+   * is the default. Masked and region commands use this to edit only the area around the mask or
+   * region. A command which returns -1 is always run on the whole region of interest as if it
+   * were the whole image (or on the whole image, when there is no region), with or without a
+   * mask: a flip flips the region, and histogram adjustments count only the region's pixels.
+   *
+   * @return the distance in pixels, or -1 if the new value can depend on any pixel in the image
+   */
+  default int getHalo() {
+    return -1;
+  }
+
+  /**
+   * Returns whether this command edits pixels where they are, leaving the image its own size and
+   * shape. Commands which make a new image out of the pixels, such as rotating, transposing,
+   * resizing or cropping, return false. Run on a region, a command which edits in place changes
+   * the region inside the whole image, and any other command gives the new image made from the
+   * region alone, whatever the region's shape.
+   *
+   * @return true if the command edits the image in place; this is the default
+   */
+  default boolean editsInPlace() {
+    return true;
+  }
 }
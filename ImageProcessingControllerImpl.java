@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Scanner;
 import java.util.function.Function;
 import controller.commands.BrightnessCmd;
+import controller.commands.EncoderPool;
 import controller.commands.FilterCmd;
 import controller.commands.FlipCmd;
 import controller.commands.Greyscale;
@@ -15,6 +16,7 @@ import controller.commands.GreyscaleCmd;
 import controller.commands.ImageProcessingCommand;
 import controller.commands.LoadCmd;
 import controller.commands.MaskedCmd;
+import controller.commands.RegionCmd;
 import controller.commands.SaveCmd;
 import model.ImageCollection;
 import model.ImageCollectionModel;
@@ -32,6 +34,8 @@ import view.SimpleImageView;
  */
 public class ImageProcessingControllerImpl implements ImageProcessingController {
 
+  // added after a command's arguments, followed by x, y, width and height, to edit only a region
+  protected static final String ROI_FLAG = "--roi";
   protected final Map<String, Function<Scanner, ImageProcessingCommand>> knownCommands;
   private final ImageCollectionModel model;
   protected final ImageProcessingView view;
@@ -96,6 +100,7 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
         continue;
       }
       if (in.equalsIgnoreCase("quit")) {
+        reportSaves(true);
         view.renderMessage("Image Processor quit!");
         return;
       }
@@ -115,6 +120,22 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
           view.renderMessage("An input you entered is not valid. Please re-enter your command.");
         }
       }
+      reportSaves(false);
+    }
+    reportSaves(true);
+  }
+
+  /**
+   * Renders whether each image saved in the background has been written, as each save finishes.
+   * Messages are only rendered from the thread running the controller, so they are picked up
+   * after each command rather than the moment the file is written.
+   *
+   * @param wait true to first wait for images still being saved, as when quitting
+   */
+  private void reportSaves(boolean wait) {
+    for (EncoderPool.Outcome o : EncoderPool.finished(wait)) {
+      view.renderMessage(o.getFailure() == null ? "Save to " + o.getPath() + " was successful"
+              : "Save to " + o.getPath() + " failed: " + o.getFailure());
     }
   }
 
@@ -137,7 +158,8 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
             + "'Flip-horizontal': Enter an image name and a new name\n"
             + "'Flip-vertical': Enter an image name and a new name\n"
             + "'X-component': Enter an image name and a new name\n"
-            + "Supported components: red, blue, green, value, intensity");
+            + "Supported components: red, blue, green, value, intensity\n"
+            + "Add '--roi x y width height' after an edit to change only that region");
   }
 
 
@@ -169,12 +191,18 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
   private void addFlipCommands() {
     knownCommands.put("flip-horizontal",
             s -> model -> {
-              model.executeCommand(new FlipCmd(s.next(), s.next(), false));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new FlipCmd(orig, newName, false)));
               view.renderMessage("Flip-horizontal was successful");
             });
     knownCommands.put("flip-vertical",
             s -> model -> {
-              model.executeCommand(new FlipCmd(s.next(), s.next(), true));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new FlipCmd(orig, newName, true)));
               view.renderMessage("Flip-vertical was successful");
             });
   }
@@ -185,12 +213,18 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
   private void addBrightenCommands() {
     knownCommands.put("brighten",
             s -> model -> {
-              model.executeCommand(new BrightnessCmd(s.next(), s.next(), s.nextInt()));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new BrightnessCmd(orig, newName, s.nextInt())));
               view.renderMessage("Brighten was successful");
             });
     knownCommands.put("darken",
             s -> model -> {
-              model.executeCommand(new BrightnessCmd(s.next(), s.next(), -s.nextInt()));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new BrightnessCmd(orig, newName, -s.nextInt())));
               view.renderMessage("Darken was successful");
             });
   }
@@ -201,31 +235,80 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
   private void addColorTransformCommands() {
     knownCommands.put("red-component",
             s -> model -> {
-              model.executeCommand(new GreyscaleCmd(s.next(), s.next(), Greyscale.RED));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new GreyscaleCmd(orig, newName, Greyscale.RED)));
               view.renderMessage("Red-component was successful");
             });
     knownCommands.put("green-component",
             s -> model -> {
-              model.executeCommand(new GreyscaleCmd(s.next(), s.next(), Greyscale.GREEN));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new GreyscaleCmd(orig, newName, Greyscale.GREEN)));
               view.renderMessage("Green-component was successful");
             });
     knownCommands.put("blue-component",
             s -> model -> {
-              model.executeCommand(new GreyscaleCmd(s.next(), s.next(), Greyscale.BLUE));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new GreyscaleCmd(orig, newName, Greyscale.BLUE)));
               view.renderMessage("Blue-component was successful");
             });
     knownCommands.put("value-component",
             s -> model -> {
-              model.executeCommand(new GreyscaleCmd(s.next(), s.next(), Greyscale.VALUE));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new GreyscaleCmd(orig, newName, Greyscale.VALUE)));
               view.renderMessage("Value-component was successful");
             });
     knownCommands.put("intensity-component",
             s -> model -> {
-              model.executeCommand(new GreyscaleCmd(s.next(), s.next(), Greyscale.INTENSITY));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new GreyscaleCmd(orig, newName, Greyscale.INTENSITY)));
               view.renderMessage("Intensity-component was successful");
             });
   }
 
+  /**
+   * Limits a command to a region of its image if the rest of the command's line asks for one, by
+   * giving '--roi' followed by the region's x, y, width and height.
+   *
+   * @param s the scanner, positioned after the command's other arguments
+   * @param orig the name of the image the command edits
+   * @param newName the name the command gives the edited image
+   * @param cmd the command
+   * @return the command, limited to the region if one was given
+   * @throws java.util.InputMismatchException if the region is not four integers
+   */
+  protected ImageProcessingCommand inRegion(Scanner s, String orig, String newName,
+                                            ImageProcessingCommand cmd) {
+    int[] region = readRegion(s);
+    if (region == null) {
+      return cmd;
+    }
+    return new RegionCmd(cmd, orig, newName, region[0], region[1], region[2], region[3]);
+  }
+
+  /**
+   * Reads the region of interest from the rest of the current line, if there is one.
+   *
+   * @param s the scanner
+   * @return the x, y, width and height of the region, or null if the line does not give one
+   * @throws java.util.InputMismatchException if the region is not four integers
+   */
+  protected int[] readRegion(Scanner s) {
+    if (s.findInLine(ROI_FLAG) == null) {
+      return null;
+    }
+    return new int[]{s.nextInt(), s.nextInt(), s.nextInt(), s.nextInt()};
+  }
+
   /**
    * Renders a command not found message to the view and relists the supported commands.
    */
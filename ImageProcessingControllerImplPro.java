@@ -39,14 +39,18 @@ public class ImageProcessingControllerImplPro extends ImageProcessingControllerI
   private void addTransformCommands() {
     knownCommands.put("sepia",
             s -> model -> {
-              model.executeCommand(
-                      new ColorTransformationCmd(s.next(), s.next(), "Sepia"));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new ColorTransformationCmd(orig, newName, "Sepia")));
               view.renderMessage("Sepia was successful");
             });
     knownCommands.put("greyscale",
             s -> model -> {
-              model.executeCommand(
-                      new ColorTransformationCmd(s.next(), s.next(), "Greyscale"));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new ColorTransformationCmd(orig, newName, "Greyscale")));
               view.renderMessage("Greyscale was successful");
             });
   }
@@ -54,16 +58,44 @@ public class ImageProcessingControllerImplPro extends ImageProcessingControllerI
   private void addFilterCommands() {
     knownCommands.put("blur",
             s -> model -> {
-              model.executeCommand(
-                      new FilterCmd(s.next(), s.next(), "Blur"));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new FilterCmd(orig, newName, "Blur")));
               view.renderMessage("Blur was successful");
             });
     knownCommands.put("sharpen",
             s -> model -> {
-              model.executeCommand(
-                      new FilterCmd(s.next(), s.next(), "Sharpen"));
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new FilterCmd(orig, newName, "Sharpen")));
               view.renderMessage("Sharpen was successful");
             });
+    knownCommands.put("box-blur",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new FilterCmd(orig, newName, "Box", s.nextInt())));
+              view.renderMessage("Box-blur was successful");
+            });
+    knownCommands.put("gaussian-blur",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new FilterCmd(orig, newName, "Gaussian", s.nextInt())));
+              view.renderMessage("Gaussian-blur was successful");
+            });
+    knownCommands.put("median",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new FilterCmd(orig, newName, "Median", s.nextInt())));
+              view.renderMessage("Median was successful");
+            });
   }
 
   /**
@@ -74,6 +106,9 @@ public class ImageProcessingControllerImplPro extends ImageProcessingControllerI
     super.printMenu();
     this.view.renderMessage("'Blur: Enter an image name and a new name\n" +
             "'Sharpen': Enter an image name and a new name\n" +
+            "'Box-blur': Enter an image name, a new name, and a radius\n" +
+            "'Gaussian-blur': Enter an image name, a new name, and a radius\n" +
+            "'Median': Enter an image name, a new name, and a radius\n" +
             "'Greyscale': Enter an image name and a new name\n" +
             "'Sepia': Enter an image name and a new name");
   }
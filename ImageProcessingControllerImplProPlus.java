@@ -4,12 +4,24 @@ import java.util.Scanner;
 import java.util.function.Function;
 import controller.commands.BrightnessCmd;
 import controller.commands.ColorTransformationCmd;
+import controller.commands.CropCmd;
 import controller.commands.DownsizeCmd;
+import controller.commands.EqualizeCmd;
 import controller.commands.FilterCmd;
 import controller.commands.Greyscale;
 import controller.commands.GreyscaleCmd;
 import controller.commands.ImageProcessingCommand;
+import controller.commands.LevelsCmd;
+import controller.commands.LoadScaledCmd;
 import controller.commands.MaskedCmd;
+import controller.commands.MorphOperation;
+import controller.commands.MorphologyCmd;
+import controller.commands.Resampling;
+import controller.commands.ResizeCmd;
+import controller.commands.RotateCmd;
+import controller.commands.SaveCmd;
+import controller.commands.ThumbnailsCmd;
+import controller.commands.TransposeCmd;
 import model.ImageCollectionModel;
 import view.ImageProcessingView;
 
@@ -19,6 +31,19 @@ import view.ImageProcessingView;
  */
 public class ImageProcessingControllerImplProPlus extends ImageProcessingControllerImplPro {
 
+  // the percentage of pixels auto-contrast lets become pure black or pure white
+  private static final double AUTO_CONTRAST_CLIP = 0.5;
+  // added after a masked command's new image name to blend by the mask's intensity
+  private static final String SOFT_FLAG = "--soft";
+  // added after a morphology command's arguments to change the area a mask image selects
+  private static final String MASK_FLAG = "--mask";
+  // added after a save command's arguments to compress an image saved in the native format
+  private static final String COMPRESS_FLAG = "--compress";
+  // added after a save command's arguments, with a number, to set a JPEG's quality (0-100) or a
+  // PNG's compression level (0-9)
+  private static final String QUALITY_FLAG = "--quality";
+  private static final String LEVEL_FLAG = "--level";
+
   /**
    * Default constructor.
    */
@@ -29,6 +54,11 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
     addMaskedFilterCommands();
     addMaskedColorCommands();
     addMaskedBrightnessCommands();
+    addHistogramCommands();
+    addLoadScaledCommand();
+    addMorphologyCommands();
+    addGeometryCommands();
+    addSaveCommand();
   }
 
   /**
@@ -46,14 +76,184 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
     addMaskedFilterCommands();
     addMaskedColorCommands();
     addMaskedBrightnessCommands();
+    addHistogramCommands();
+    addLoadScaledCommand();
+    addMorphologyCommands();
+    addGeometryCommands();
+    addSaveCommand();
   }
 
   /**
-   * Adds the command to downsize an image.
+   * Adds the commands to downsize, resize, and create thumbnails of an image.
    */
   protected void addDownsizeCommand() {
     knownCommands.put("downsize",
-            s -> new DownsizeCmd(s.next(), s.next(), s.nextInt(), s.nextInt()));
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new DownsizeCmd(orig, newName, s.nextInt(), s.nextInt())));
+            });
+    knownCommands.put("resize",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              int width = s.nextInt();
+              int height = s.nextInt();
+              String kernel = s.next();
+              Resampling resampling;
+              try {
+                resampling = Resampling.valueOf(kernel.toUpperCase());
+              } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown resampling kernel '" + kernel
+                        + "'. Use box, bilinear or lanczos3.");
+              }
+              model.executeCommand(inRegion(s, orig, newName,
+                      new ResizeCmd(orig, newName, width, height, resampling)));
+              view.renderMessage("Resize was successful");
+            });
+    knownCommands.put("thumbnails",
+            s -> model -> {
+              model.executeCommand(new ThumbnailsCmd(s.next(), s.next(), s.nextInt()));
+              view.renderMessage("Thumbnails were successful");
+            });
+  }
+
+  /**
+   * Adds the command to load an image at a reduced size.
+   */
+  protected void addLoadScaledCommand() {
+    knownCommands.put("load-scaled",
+            s -> model -> {
+              model.executeCommand(new LoadScaledCmd(s.next(), s.next(), s.nextInt(),
+                      s.nextInt()));
+              view.renderMessage("Load was successful");
+            });
+  }
+
+  /**
+   * Adds the commands which adjust an image using its histogram.
+   */
+  protected void addHistogramCommands() {
+    knownCommands.put("levels",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new LevelsCmd(orig, newName, s.nextDouble())));
+              view.renderMessage("Levels was successful");
+            });
+    knownCommands.put("auto-contrast",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new LevelsCmd(orig, newName, AUTO_CONTRAST_CLIP)));
+              view.renderMessage("Auto-contrast was successful");
+            });
+    knownCommands.put("equalize",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName, new EqualizeCmd(orig, newName)));
+              view.renderMessage("Equalize was successful");
+            });
+  }
+
+  /**
+   * Adds the command to save an image, which is encoded in the background while the commands
+   * after it run; whether it was written is reported after the command during which it finished.
+   * It can be followed by --compress to compress images saved in the application's own format,
+   * --quality and a number to set a JPEG's quality, or --level and a number to set how hard a PNG
+   * is compressed.
+   */
+  protected void addSaveCommand() {
+    knownCommands.put("save",
+            s -> model -> {
+              String path = s.next();
+              String name = s.next();
+              Scanner options = new Scanner(rest(s));
+              boolean compress = false;
+              int quality = SaveCmd.DEFAULT;
+              int level = SaveCmd.DEFAULT;
+              while (options.hasNext()) {
+                String option = options.next();
+                if (option.equals(COMPRESS_FLAG)) {
+                  compress = true;
+                } else if (option.equals(QUALITY_FLAG) && options.hasNextInt()) {
+                  quality = options.nextInt();
+                } else if (option.equals(LEVEL_FLAG) && options.hasNextInt()) {
+                  level = options.nextInt();
+                } else {
+                  throw new IllegalArgumentException("Unknown save option '" + option + "'.");
+                }
+              }
+              SaveCmd save = new SaveCmd(path, name, compress, quality, level, true);
+              model.executeCommand(save);
+              // whether a queued image was written is reported once the pool has finished it
+              view.renderMessage(save.isQueued() ? "Save queued for " + path
+                      : "Save was successful");
+            });
+  }
+
+  /**
+   * Adds the commands to crop, rotate and transpose an image.
+   */
+  protected void addGeometryCommands() {
+    knownCommands.put("crop",
+            s -> model -> {
+              model.executeCommand(new CropCmd(s.next(), s.next(), s.nextInt(), s.nextInt(),
+                      s.nextInt(), s.nextInt()));
+              view.renderMessage("Crop was successful");
+            });
+    knownCommands.put("rotate",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              int degrees = s.nextInt();
+              model.executeCommand(inRegion(s, orig, newName,
+                      new RotateCmd(orig, newName, degrees)));
+              view.renderMessage("Rotate was successful");
+            });
+    knownCommands.put("transpose",
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              model.executeCommand(inRegion(s, orig, newName, new TransposeCmd(orig, newName)));
+              view.renderMessage("Transpose was successful");
+            });
+  }
+
+  /**
+   * Adds the commands to erode, dilate, open and close an image or a mask.
+   */
+  protected void addMorphologyCommands() {
+    morphologyCommandHelper("erode", MorphOperation.ERODE);
+    morphologyCommandHelper("dilate", MorphOperation.DILATE);
+    morphologyCommandHelper("open", MorphOperation.OPEN);
+    morphologyCommandHelper("close", MorphOperation.CLOSE);
+  }
+
+  /**
+   * Helper method to build the morphology commands, which take an image name, a new name, and
+   * how far the rectangle reaches horizontally and vertically.
+   * @param cmdName the name of the command
+   * @param operation the operation to apply
+   */
+  private void morphologyCommandHelper(String cmdName, MorphOperation operation) {
+    knownCommands.put(cmdName,
+            s -> model -> {
+              String orig = s.next();
+              String newName = s.next();
+              int radiusX = s.nextInt();
+              int radiusY = s.nextInt();
+              String options = rest(s);
+              boolean mask = new Scanner(options).findInLine(MASK_FLAG) != null;
+              model.executeCommand(inRegion(new Scanner(options), orig, newName,
+                      new MorphologyCmd(orig, newName, operation, radiusX, radiusY, mask)));
+              view.renderMessage(Character.toUpperCase(cmdName.charAt(0))
+                      + cmdName.substring(1) + " was successful");
+            });
   }
 
   /**
@@ -79,14 +279,15 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
               Scanner line = new Scanner(s.nextLine());
               String sourceImg = line.next();
               String maskImg = line.next();
-              if (!line.hasNext()) {
-                oldCommand.apply(new Scanner(sourceImg + " " + maskImg)).
+              if (!line.hasNext() || line.hasNext(ROI_FLAG)) {
+                oldCommand.apply(new Scanner(sourceImg + " " + maskImg + rest(line))).
                         execute(model);
                 return;
               }
               String newName = line.next();
-              model.executeCommand(new MaskedCmd(new GreyscaleCmd(sourceImg, newName, component),
-                      sourceImg, newName, maskImg));
+              String options = rest(line);
+              model.executeCommand(masked(new GreyscaleCmd(sourceImg, newName, component),
+                      sourceImg, newName, maskImg, options));
               view.renderMessage("Partial " +
                       component.toString().toLowerCase() + "-component was successful");
             });
@@ -98,6 +299,9 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
   protected void addMaskedFilterCommands() {
     filterCommandHelper("blur", "Blur");
     filterCommandHelper("sharpen", "Sharpen");
+    radiusFilterCommandHelper("box-blur", "Box");
+    radiusFilterCommandHelper("gaussian-blur", "Gaussian");
+    radiusFilterCommandHelper("median", "Median");
   }
 
   /**
@@ -112,18 +316,46 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
               Scanner line = new Scanner(s.nextLine());
               String sourceImg = line.next();
               String maskImg = line.next();
-              if (!line.hasNext()) {
-                oldCommand.apply(new Scanner(sourceImg + " " + maskImg + " " + filterName)).
+              if (!line.hasNext() || line.hasNext(ROI_FLAG)) {
+                oldCommand.apply(new Scanner(sourceImg + " " + maskImg + rest(line))).
                         execute(model);
                 return;
               }
               String newName = line.next();
-              model.executeCommand(new MaskedCmd(new FilterCmd(sourceImg, newName, filterName),
-                      sourceImg, newName, maskImg));
+              String options = rest(line);
+              model.executeCommand(masked(new FilterCmd(sourceImg, newName, filterName),
+                      sourceImg, newName, maskImg, options));
               view.renderMessage("Partial " + filterName + " was successful");
             });
   }
 
+  /**
+   * Helper method to build the masking commands for filters of any radius, which take the radius
+   * after the image names.
+   * @param cmdName the name of the command
+   * @param filterName the name of the filter to use
+   */
+  private void radiusFilterCommandHelper(String cmdName, String filterName) {
+    Function<Scanner, ImageProcessingCommand> oldCommand = this.knownCommands.get(cmdName);
+    knownCommands.put(cmdName,
+            s -> model -> {
+              Scanner line = new Scanner(s.nextLine());
+              String sourceImg = line.next();
+              String maskImg = line.next();
+              if (line.hasNextInt()) {
+                oldCommand.apply(new Scanner(sourceImg + " " + maskImg + rest(line))).
+                        execute(model);
+                return;
+              }
+              String newName = line.next();
+              int radius = line.nextInt();
+              String options = rest(line);
+              model.executeCommand(masked(new FilterCmd(sourceImg, newName, filterName, radius),
+                      sourceImg, newName, maskImg, options));
+              view.renderMessage("Partial " + cmdName + " was successful");
+            });
+  }
+
   /**
    * Adds the masked commands to partially color-transform an image.
    */
@@ -144,15 +376,16 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
               Scanner line = new Scanner(s.nextLine());
               String sourceImg = line.next();
               String maskImg = line.next();
-              if (!line.hasNext()) {
-                oldCommand.apply(new Scanner(sourceImg + " " + maskImg + " " + matrixName)).
+              if (!line.hasNext() || line.hasNext(ROI_FLAG)) {
+                oldCommand.apply(new Scanner(sourceImg + " " + maskImg + rest(line))).
                         execute(model);
                 return;
               }
               String newName = line.next();
+              String options = rest(line);
               model.executeCommand(
-                      new MaskedCmd(new ColorTransformationCmd(sourceImg, newName, matrixName),
-                      sourceImg, newName, maskImg));
+                      masked(new ColorTransformationCmd(sourceImg, newName, matrixName),
+                      sourceImg, newName, maskImg, options));
               view.renderMessage("Partial " + matrixName + " was successful");
             });
   }
@@ -170,13 +403,14 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
               String maskImg = s.next();
               if (s.hasNextInt()) {
                 int inc = s.nextInt();
-                brighten.apply(new Scanner(sourceImg + " " + maskImg + " " + inc)).
+                brighten.apply(new Scanner(sourceImg + " " + maskImg + " " + inc + rest(s))).
                         execute(model);
                 return;
               }
               String newImage = s.next();
-              model.executeCommand(new MaskedCmd(new BrightnessCmd(sourceImg, newImage, s.nextInt()),
-                      sourceImg, newImage, maskImg));
+              int inc = s.nextInt();
+              model.executeCommand(masked(new BrightnessCmd(sourceImg, newImage, inc),
+                      sourceImg, newImage, maskImg, rest(s)));
               view.renderMessage("Partial brighten was successful");
             });
 
@@ -186,16 +420,78 @@ public class ImageProcessingControllerImplProPlus extends ImageProcessingControl
               String maskImg = s.next();
               if (s.hasNextInt()) {
                 int inc = s.nextInt();
-                brighten.apply(new Scanner(sourceImg + " " + maskImg + " " + -inc)).
+                brighten.apply(new Scanner(sourceImg + " " + maskImg + " " + -inc + rest(s))).
                         execute(model);
                 return;
               }
               String newImage = s.next();
-              model.executeCommand(new MaskedCmd(new BrightnessCmd(sourceImg, newImage, -s.nextInt()),
-                      sourceImg, newImage, maskImg));
+              int inc = s.nextInt();
+              model.executeCommand(masked(new BrightnessCmd(sourceImg, newImage, -inc),
+                      sourceImg, newImage, maskImg, rest(s)));
               view.renderMessage("Partial brighten was successful");
             });
   }
 
+  /**
+   * Builds a masked command from the options given after its new image name: '--soft' to blend
+   * by the mask's intensity, and '--roi' with an x, y, width and height to edit only that region.
+   * @param cmd the command to mask
+   * @param sourceImg the image to edit
+   * @param newName the name of the edited image
+   * @param maskImg the mask image
+   * @param options the rest of the command's line
+   * @return the masked command
+   */
+  private ImageProcessingCommand masked(ImageProcessingCommand cmd, String sourceImg,
+                                        String newName, String maskImg, String options) {
+    boolean soft = new Scanner(options).findInLine(SOFT_FLAG) != null;
+    int[] region = readRegion(new Scanner(options));
+    if (region == null) {
+      return new MaskedCmd(cmd, sourceImg, newName, maskImg, soft);
+    }
+    return new MaskedCmd(cmd, sourceImg, newName, maskImg, soft, region[0], region[1],
+            region[2], region[3]);
+  }
+
+  /**
+   * Reads the rest of the scanner's current line.
+   * @param s the scanner
+   * @return the rest of the line, or an empty string if there is none
+   */
+  private static String rest(Scanner s) {
+    return s.hasNextLine() ? s.nextLine() : "";
+  }
 
+  /**
+   * Renders the welcoming message to the user. Displays the list of supported commands.
+   */
+  @Override
+  protected void printMenu() {
+    super.printMenu();
+    this.view.renderMessage("Save and load '.ipi' files to keep intermediate images in the " +
+            "application's own format; add '--compress' after a save to compress them\n" +
+            "Add '--quality' and 0-100 after saving a JPEG, or '--level' and 0-9 after saving a " +
+            "PNG, to choose how hard it is compressed\n" +
+            "'Load-scaled': Enter a pathname, a name, a max width and height\n" +
+            "'Downsize': Enter an image name, a new name, a width and a height\n" +
+            "'Resize': Enter an image name, a new name, a width, a height, and a kernel\n" +
+            "Supported kernels: box, bilinear, lanczos3\n" +
+            "'Thumbnails': Enter an image name, a prefix, and the number of thumbnails\n" +
+            "'Levels': Enter an image name, a new name, and the percentage of pixels to clip\n" +
+            "'Auto-contrast': Enter an image name and a new name\n" +
+            "'Equalize': Enter an image name and a new name\n" +
+            "'Crop': Enter an image name, a new name, and the x, y, width and height of the " +
+            "rectangle to keep\n" +
+            "'Rotate': Enter an image name, a new name, and a multiple of 90 degrees to " +
+            "rotate it clockwise by\n" +
+            "'Transpose': Enter an image name and a new name\n" +
+            "'Erode', 'Dilate', 'Open', 'Close': Enter an image name, a new name, and how far " +
+            "the rectangle reaches horizontally and vertically; add '--mask' to grow or shrink " +
+            "the area a mask image selects\n" +
+            "Masked commands: enter an image name, a mask name, and a new name (and for " +
+            "brighten/darken, an increment, or for blurs and median, a radius); add '--soft' " +
+            "to blend by the mask's intensity\n" +
+            "Add '--roi x y width height' after a downsize, resize or histogram command to use " +
+            "only that region");
+  }
 }
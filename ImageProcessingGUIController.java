@@ -1,45 +1,136 @@
 package controller;
 
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
 
-import controller.commands.BrightnessCmd;
 import controller.commands.ColorTransformationCmd;
 import controller.commands.DownsizeCmd;
+import controller.commands.EqualizeCmd;
 import controller.commands.FilterCmd;
 import controller.commands.FlipCmd;
 import controller.commands.Greyscale;
 import controller.commands.GreyscaleCmd;
 import controller.commands.ImageProcessingCommand;
+import controller.commands.LevelsCmd;
 import controller.commands.LoadCmd;
 import controller.commands.SaveCmd;
+import model.ConcurrentImageCollection;
+import model.Histograms;
 import model.ImageCollectionModel;
+import model.ImageModel;
 import model.ImageTransformations;
 import model.ImageTransformationsImpl;
 import view.GUIView;
 
 /**
  * An asynchronous controller to be used for running the GUI for the Image Processor.
+ * All pixel work (loading, commands, saving and rendering) runs on a background worker so
+ * that the Swing event dispatch thread never blocks; results are posted back to the view with
+ * SwingUtilities.invokeLater(). Edits are applied in the order they were requested, since each one
+ * builds on the last. The controller's own state (the loaded image name and the command map) is
+ * only touched on the event dispatch thread.
+ * Images larger than the view's image panel are also edited through a proxy: a copy scaled down
+ * to the panel's size, kept in a separate model by a second worker. Edits are applied to the proxy
+ * first for instant feedback, and the full-resolution result replaces it when it is done. Until
+ * the proxy of a newly loaded (or reset) image is ready, edits go straight to the full-resolution
+ * image. Saves always use the full-resolution image.
+ * The histograms of very large images are first estimated from a sample of their pixels, and the
+ * exact histogram is counted by a third worker and swapped in once it is ready.
+ * Since images read on one worker are handed to the others (to be scaled down, counted or shown)
+ * while the first goes on editing, the models are ConcurrentImageCollections.
  */
 public class ImageProcessingGUIController implements Features, ImageProcessingController {
 
+  private static final String BRIGHTNESS_BASE = "brightness-base";
+  // the size of the view's image panel; larger images are previewed at this size
+  private static final int PREVIEW_WIDTH = 600;
+  private static final int PREVIEW_HEIGHT = 390;
+  // the percentage of pixels auto-contrast lets become pure black or pure white
+  private static final double AUTO_CONTRAST_CLIP = 0.5;
+  // above this many pixels, histograms are estimated first and counted exactly afterwards
+  private static final long APPROXIMATE_HISTOGRAM_PIXELS = 16_000_000L;
+  // the number of pixels sampled for an estimated histogram
+  private static final double HISTOGRAM_SAMPLES = 1_000_000.0;
+
   private final ImageCollectionModel model;
   private boolean imageLoaded;
   private final Map<String, ImageProcessingCommand> commands;
   private final GUIView view;
-  private ImageTransformations transformer;
   private String imageName;
+  // true if the image is too large for the panel, and so is edited through a proxy
+  private boolean proxied;
+  private final ExecutorService worker;
+  private final List<Future<?>> pending;
+  private final List<Future<?>> saves;
+
+  // every request that changes the image gets a new version, so stale results can be dropped
+  private long version;
+  private final AtomicLong latestVersion;
+  private long displayedVersion;
+  private boolean displayedPreview;
+  private int session;
+  private final AtomicInteger latestSession;
+
+  // brightness slider state, only touched on the event dispatch thread
+  private int sliderLevel;
+  private long sliderVersion;
+  private final BrightnessLoop fullBrightness;
+  private final BrightnessLoop previewBrightness;
+
+  // the proxy, only touched on the preview worker
+  private final ExecutorService previewWorker;
+  private final ImageCollectionModel previewModel;
+  private int fullWidth;
+  private int fullHeight;
+  // the session and version of the proxy installed last
+  private int proxySession;
+  private long proxyVersion;
+
+  // counts exact histograms for images whose histogram was estimated
+  private final ExecutorService histogramWorker;
 
   /**
-   * A constructor that sets up the GUI controller, before anything has been loaded.
+   * A constructor that sets up the GUI controller with a new, empty model.
+   *
+   * @param view the view to be used when running the program.
+   */
+  public ImageProcessingGUIController(GUIView view) {
+    this(new ConcurrentImageCollection(), view);
+  }
+
+  /**
+   * A constructor that sets up the GUI controller, before anything has been loaded. Images read
+   * from the model on one background worker are handed to others while it goes on editing, so
+   * the model should be thread-safe, such as a ConcurrentImageCollection.
    *
    * @param model the model to be used when running the program.
+   * @param view the view to be used when running the program.
    */
   public ImageProcessingGUIController(ImageCollectionModel model, GUIView view) {
     this.model = model;
     imageLoaded = false;
     commands = new HashMap<>();
     this.view = view;
+    this.worker = newWorker("image-worker");
+    this.previewWorker = newWorker("preview-worker");
+    this.previewModel = new ConcurrentImageCollection();
+    this.histogramWorker = newWorker("histogram-worker");
+    this.pending = new ArrayList<>();
+    this.saves = new ArrayList<>();
+    this.latestVersion = new AtomicLong();
+    this.latestSession = new AtomicInteger();
+    this.proxySession = -1;
+    this.fullBrightness = new BrightnessLoop(worker, model, false);
+    this.previewBrightness = new BrightnessLoop(previewWorker, previewModel, true);
   }
 
   /**
@@ -58,62 +149,84 @@ public class ImageProcessingGUIController implements Features, ImageProcessingCo
 
   @Override
   public void loadImage(String path, String name) {
-    try {
+    // a new image supersedes anything still queued for the old one
+    cancelPending();
+    int current = newSession();
+    // brightness changes cancelled above never finish, so forget them now even if the load fails
+    resetBrightness();
+    long v = newVersion();
+    submit(worker, () -> {
       model.executeCommand(new LoadCmd(path, name));
       // add a copy under the name "copy" to allow for reset
       model.addImage("copy", model.getImage(name));
-      imageLoaded = true;
-      imageName = name;
-      addCommands();
-      view.resetSelections(); // resets view's buttons in case this isn't the first loaded image
-      update();
-    } catch (IllegalArgumentException e) {
-      view.renderMessage(e.getMessage());
-    }
+      boolean proxy = needsProxy(model.getImage(name));
+      SwingUtilities.invokeLater(() -> {
+        imageLoaded = true;
+        imageName = name;
+        proxied = proxy;
+        addCommands();
+        view.resetSelections(); // resets view's buttons in case this isn't the first loaded image
+      });
+      if (proxy) {
+        refreshPreview(name, v, current);
+      }
+      post(render(model, name, v, false));
+    });
   }
 
   @Override
   public void saveImage(String path) {
-    try {
-      model.executeCommand(new SaveCmd(path, imageName));
-      // no call to view required here, as saving an image doesn't remove the image from the view
-    } catch (IllegalArgumentException e) {
-      view.renderMessage(e.getMessage());
+    if (!imageLoaded) {
+      return;
     }
+    String name = imageName;
+    // queued behind any in-flight full-resolution edits (including the slider's newest level),
+    // so the saved image always includes them
+    fullBrightness.whenSettled(() -> submit(worker,
+        () -> model.executeCommand(new SaveCmd(path, name)), false));
+    // no call to view required here, as saving an image doesn't remove the image from the view
   }
 
   @Override
   public void runCommand(String commandName) {
-    try {
-      if (imageLoaded) {
-        ImageProcessingCommand cmd = commands.getOrDefault(commandName, null);
-        if (cmd != null) {
-          model.executeCommand(cmd);
-          update();
-        }
+    if (imageLoaded) {
+      ImageProcessingCommand cmd = commands.getOrDefault(commandName, null);
+      if (cmd != null) {
+        edit(cmd, true);
       }
-    } catch (IllegalArgumentException e) {
-      view.renderMessage(e.getMessage());
     }
   }
 
+  /**
+   * Sets the brightness of the image. Brightness is always applied to the image as it was before
+   * the slider last moved (the brightness base), so levels don't accumulate and clamped values
+   * are not lost. While a brightness change is being computed, further calls only record the
+   * newest level; when the computation finishes, the newest level (if it changed) is applied next.
+   * Proxied images get the new level on their proxy first.
+   *
+   * @param level the amount by which the image should be brightened (negative to darken)
+   */
   @Override
-  public void toggleBrightness(int increment) {
-    try {
-      if (imageLoaded) {
-        model.executeCommand(new BrightnessCmd(imageName, imageName, increment));
-        update();
+  public void setBrightness(int level) {
+    if (level == sliderLevel) {
+      return;
+    }
+    sliderLevel = level;
+    sliderVersion = newVersion();
+    if (imageLoaded) {
+      if (proxied) {
+        previewBrightness.schedule();
       }
-    } catch (IllegalArgumentException e) {
-      view.renderMessage(e.getMessage());
+      fullBrightness.schedule();
     }
   }
 
+  @Override
   public void downsize(int width, int height) {
     try {
       if (imageLoaded) {
-        model.executeCommand(new DownsizeCmd(imageName, imageName, width, height));
-        update();
+        // changes the size of the image, so there is nothing to preview until it is done
+        edit(new DownsizeCmd(imageName, imageName, width, height), false);
       }
     } catch (IllegalArgumentException e) {
       view.renderMessage(e.getMessage());
@@ -122,25 +235,315 @@ public class ImageProcessingGUIController implements Features, ImageProcessingCo
 
   @Override
   public void update() {
-    try {
-      transformer = new ImageTransformationsImpl(model.getImage(imageName));
-      view.displayImage(transformer.toBufferedImg(), transformer.createHistogramData());
-    } catch (IllegalArgumentException e) {
-      view.renderMessage(e.getMessage());
+    if (imageLoaded) {
+      String name = imageName;
+      long v = version;
+      submit(worker, () -> post(render(model, name, v, false)));
     }
   }
 
   @Override
   public void reset() {
-    try {
-      transformer = new ImageTransformationsImpl(model.getImage("copy"));
-      view.displayImage(transformer.toBufferedImg(), transformer.createHistogramData());
+    if (!imageLoaded) {
+      return;
+    }
+    // edits that have not started yet would be thrown away by the reset anyway
+    cancelPending();
+    int current = newSession();
+    resetBrightness();
+    String name = imageName;
+    boolean proxy = proxied;
+    view.resetSelections();
+    long v = newVersion();
+    submit(worker, () -> {
       // Reset model's collection to 2 copies of the same image by overwriting original w/ the
       // copy
-      model.addImage(imageName, model.getImage("copy"));
-      view.resetSelections();
-    } catch (IllegalArgumentException e) {
-      view.renderMessage(e.getMessage());
+      model.addImage(name, model.getImage("copy"));
+      if (proxy) {
+        refreshPreview(name, v, current);
+      }
+      post(render(model, name, v, false));
+    });
+  }
+
+  /**
+   * Queues a command which edits the current image. If the image is proxied and the command can
+   * be previewed, it is applied to the proxy first, as long as the proxy for the current image
+   * has been installed by then. Once the full-resolution edit is done it is displayed, and the
+   * proxy is rebuilt from it, unless a newer request has been made in the meantime.
+   *
+   * @param cmd the command to run on the background worker
+   * @param previewable true if the command can be applied to the proxy
+   */
+  private void edit(ImageProcessingCommand cmd, boolean previewable) {
+    String name = imageName;
+    boolean proxy = proxied;
+    int current = session;
+    long v = newVersion();
+    // the brightness slider now has to build on top of this edit
+    fullBrightness.rebase = true;
+    previewBrightness.rebase = true;
+    if (proxy && previewable) {
+      submit(previewWorker, () -> {
+        // until the image's proxy is installed, the previewed image is missing or a stale one
+        if (proxySession == current) {
+          previewModel.executeCommand(cmd);
+          post(render(previewModel, name, v, true));
+        }
+      });
+    }
+    submit(worker, () -> {
+      try {
+        model.executeCommand(cmd);
+        if (isLatest(v)) {
+          post(render(model, name, v, false));
+        }
+      } finally {
+        // resynchronize the proxy even if the edit failed, so it never shows an edit that the
+        // full-resolution image does not have
+        if (proxy && isLatest(v)) {
+          refreshPreview(name, v, current);
+        }
+      }
+    });
+  }
+
+  /**
+   * Checks whether an image is too large for the view's image panel, and so should be edited
+   * through a proxy.
+   *
+   * @param img the full-resolution image
+   * @return true if the image needs a proxy
+   */
+  private boolean needsProxy(ImageModel img) {
+    return img.getCols() > PREVIEW_WIDTH || img.getRows() > PREVIEW_HEIGHT;
+  }
+
+  /**
+   * Rebuilds the proxy from the full-resolution image. The image is scaled down on the calling
+   * (full-resolution) worker, then handed to the preview worker, which installs it unless another
+   * image has been loaded or reset since, or a proxy of a newer version has already been
+   * installed. A newer edit does not stop it being installed: until the first proxy of a session
+   * is in place there is nothing to preview on, and the edit's own result replaces it later. Its
+   * brightness base will be retaken from the new proxy.
+   *
+   * @param name the name of the image
+   * @param v the version of the image being scaled down
+   * @param current the session the image belongs to
+   */
+  private void refreshPreview(String name, long v, int current) {
+    ImageModel full = model.getImage(name);
+    double scale = Math.min((double) PREVIEW_WIDTH / full.getCols(),
+            (double) PREVIEW_HEIGHT / full.getRows());
+    int width = Math.max(1, (int) (full.getCols() * scale));
+    int height = Math.max(1, (int) (full.getRows() * scale));
+    ImageModel proxy = new ImageTransformationsImpl(full).downsize(width, height);
+    int cols = full.getCols();
+    int rows = full.getRows();
+    SwingUtilities.invokeLater(() -> previewBrightness.rebase = true);
+    submit(previewWorker, () -> {
+      if (current == latestSession.get() && (proxySession != current || v >= proxyVersion)) {
+        proxySession = current;
+        proxyVersion = v;
+        fullWidth = cols;
+        fullHeight = rows;
+        previewModel.addImage(name, proxy);
+        post(render(previewModel, name, v, true));
+      }
+    });
+  }
+
+  /**
+   * Forgets the brightness bases, as after a reset or when a new image is loaded.
+   */
+  private void resetBrightness() {
+    sliderLevel = 0;
+    fullBrightness.reset();
+    previewBrightness.reset();
+  }
+
+  /**
+   * Submits a task to a background worker and shows the view's progress indicator until every
+   * submitted task has finished or been cancelled. Errors thrown by the task are rendered on the
+   * event dispatch thread. Can be called from any thread.
+   *
+   * @param executor the worker to run the task on
+   * @param task the task to run
+   */
+  private void submit(ExecutorService executor, Runnable task) {
+    submit(executor, task, true);
+  }
+
+  /**
+   * Submits a task to a background worker, which can be made immune to cancellation by newer
+   * requests (as saves are, since the user expects the file to be written).
+   *
+   * @param executor the worker to run the task on
+   * @param task the task to run
+   * @param cancellable false if the task must run even if a newer request supersedes it
+   */
+  private void submit(ExecutorService executor, Runnable task, boolean cancellable) {
+    Future<?> future = executor.submit(() -> {
+      try {
+        task.run();
+      } catch (IllegalArgumentException e) {
+        SwingUtilities.invokeLater(() -> view.renderMessage(e.getMessage()));
+      } finally {
+        SwingUtilities.invokeLater(this::taskFinished);
+      }
+    });
+    List<Future<?>> list = cancellable ? pending : saves;
+    if (SwingUtilities.isEventDispatchThread()) {
+      list.add(future);
+      view.setBusy(true);
+    } else {
+      SwingUtilities.invokeLater(() -> {
+        list.add(future);
+        taskFinished();
+      });
+    }
+  }
+
+  /**
+   * Cancels every cancellable task which has not started yet. A task that is already running is
+   * left to finish, but its result will not be displayed since a newer request supersedes it.
+   */
+  private void cancelPending() {
+    for (Future<?> f : pending) {
+      f.cancel(false);
+    }
+    taskFinished();
+  }
+
+  /**
+   * Forgets finished tasks and hides the progress indicator once nothing is left to run. Always
+   * called on the event dispatch thread.
+   */
+  private void taskFinished() {
+    pending.removeIf(Future::isDone);
+    saves.removeIf(Future::isDone);
+    view.setBusy(!pending.isEmpty() || !saves.isEmpty());
+  }
+
+  /**
+   * Starts a new version of the image. Always called on the event dispatch thread.
+   *
+   * @return the new version
+   */
+  private long newVersion() {
+    version++;
+    latestVersion.set(version);
+    return version;
+  }
+
+  /**
+   * Starts a new session, as when an image is loaded or reset. Always called on the event dispatch
+   * thread.
+   *
+   * @return the new session
+   */
+  private int newSession() {
+    session++;
+    latestSession.set(session);
+    return session;
+  }
+
+  /**
+   * Checks whether a version is still the most recent one requested.
+   *
+   * @param v the version
+   * @return true if no newer version has been requested
+   */
+  private boolean isLatest(long v) {
+    return v == latestVersion.get();
+  }
+
+  /**
+   * Converts an image to the data the view displays. Runs on a background worker. The histogram
+   * of a very large full-resolution image is only estimated, and the rendering keeps the image so
+   * the exact one can be counted once it is displayed.
+   *
+   * @param source the model holding the image
+   * @param name the name of the image to render
+   * @param v the version of the image
+   * @param preview true if the image is a proxy
+   * @return the rendered image and its histogram
+   */
+  private Rendering render(ImageCollectionModel source, String name, long v, boolean preview) {
+    ImageModel img = source.getImage(name);
+    ImageTransformations transformer = new ImageTransformationsImpl(img);
+    long pixels = (long) img.getRows() * img.getCols();
+    int[][] histogram;
+    int maxFrequency;
+    ImageModel estimated = null;
+    if (!preview && pixels > APPROXIMATE_HISTOGRAM_PIXELS) {
+      histogram = transformer.createHistogramData(HISTOGRAM_SAMPLES / pixels);
+      maxFrequency = Histograms.maxFrequency(histogram);
+      estimated = img;
+    } else {
+      histogram = transformer.createHistogramData();
+      maxFrequency = transformer.getHistogramMaxFrequency();
+    }
+    return new Rendering(transformer.toBufferedImg(), histogram, maxFrequency, v, preview,
+            preview ? fullWidth : 0, preview ? fullHeight : 0, estimated);
+  }
+
+  /**
+   * Queues the exact histogram of an image to be counted, replacing the estimate displayed with
+   * it if that version of the image is still displayed at full resolution. Skipped if a newer
+   * version has been requested by the time the worker gets to it. Called on the event dispatch
+   * thread once the estimate is displayed.
+   *
+   * @param img the image, which no other thread writes to
+   * @param v the version of the image
+   */
+  private void countHistogram(ImageModel img, long v) {
+    histogramWorker.submit(() -> {
+      if (!isLatest(v)) {
+        return;
+      }
+      ImageTransformations transformer = new ImageTransformationsImpl(img);
+      int[][] histogram = transformer.createHistogramData();
+      int maxFrequency = transformer.getHistogramMaxFrequency();
+      SwingUtilities.invokeLater(() -> {
+        if (displayedVersion == v && !displayedPreview) {
+          view.displayHistogram(histogram, maxFrequency);
+        }
+      });
+    });
+  }
+
+  /**
+   * Posts a rendering to the view, to be displayed if it is still relevant.
+   *
+   * @param rendering the rendered image
+   */
+  private void post(Rendering rendering) {
+    SwingUtilities.invokeLater(() -> show(rendering));
+  }
+
+  /**
+   * Displays a rendering, unless a newer version is already displayed. A full-resolution
+   * rendering replaces a proxy of the same version, but never the other way around. Always
+   * called on the event dispatch thread.
+   *
+   * @param rendering the rendered image
+   */
+  private void show(Rendering rendering) {
+    if (rendering.version < displayedVersion || (rendering.version == displayedVersion
+            && rendering.preview && !displayedPreview)) {
+      return;
+    }
+    displayedVersion = rendering.version;
+    displayedPreview = rendering.preview;
+    if (rendering.preview) {
+      view.displayPreview(rendering.image, rendering.fullWidth, rendering.fullHeight,
+              rendering.histogram, rendering.maxFrequency);
+    } else {
+      view.displayImage(rendering.image, rendering.histogram, rendering.maxFrequency);
+      if (rendering.estimated != null) {
+        countHistogram(rendering.estimated, rendering.version);
+      }
     }
   }
 
@@ -153,6 +556,8 @@ public class ImageProcessingGUIController implements Features, ImageProcessingCo
     commands.put("Flip-Vertical", new FlipCmd(imageName, imageName, true));
     commands.put("Flip-Horizontal", new FlipCmd(imageName, imageName, false));
     commands.put("Sepia", new ColorTransformationCmd(imageName, imageName, "Sepia"));
+    commands.put("Auto-Contrast", new LevelsCmd(imageName, imageName, AUTO_CONTRAST_CLIP));
+    commands.put("Equalize", new EqualizeCmd(imageName, imageName));
     commands.put("Luma-Component",
             new ColorTransformationCmd(imageName, imageName, "Greyscale"));
     commands.put("Red-Component",
@@ -166,4 +571,194 @@ public class ImageProcessingGUIController implements Features, ImageProcessingCo
     commands.put("Intensity-Component",
             new GreyscaleCmd(imageName, imageName, Greyscale.INTENSITY));
   }
+
+  /**
+   * Creates a single-threaded background worker.
+   *
+   * @param name the name of the worker's thread
+   * @return the worker
+   */
+  private static ExecutorService newWorker(String name) {
+    return Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Applies the brightness slider's level to one copy of the image (the full-resolution image or
+   * its proxy), one level at a time. The image is always brightened from a base image taken
+   * before the slider moved, and whichever level is newest when a change finishes is applied
+   * next. Only touched on the event dispatch thread.
+   */
+  private class BrightnessLoop {
+
+    private final ExecutorService executor;
+    private final ImageCollectionModel target;
+    private final boolean preview;
+    private int appliedLevel;
+    private int baseLevel;
+    private boolean rebase;
+    private boolean inFlight;
+    private int inFlightSession;
+    private final List<Runnable> settledActions;
+
+    BrightnessLoop(ExecutorService executor, ImageCollectionModel target, boolean preview) {
+      this.executor = executor;
+      this.target = target;
+      this.preview = preview;
+      this.settledActions = new ArrayList<>();
+      reset();
+    }
+
+    /**
+     * Forgets the brightness base.
+     */
+    void reset() {
+      if (settledActions != null) {
+        settledActions.forEach(Runnable::run);
+        settledActions.clear();
+      }
+      appliedLevel = 0;
+      baseLevel = 0;
+      rebase = true;
+      inFlight = false;
+    }
+
+    /**
+     * Runs an action once the image has caught up with the slider's newest level, or right away
+     * if it already has.
+     *
+     * @param action the action to run
+     */
+    void whenSettled(Runnable action) {
+      if (!inFlight && sliderLevel == appliedLevel) {
+        action.run();
+      } else {
+        settledActions.add(action);
+      }
+    }
+
+    /**
+     * Queues the brightness change for the slider's newest level, unless a change is already
+     * running or the image already has that level. If another edit happened since the brightness
+     * base was taken, the current image becomes the new base.
+     */
+    void schedule() {
+      if (inFlight) {
+        return;
+      }
+      if (sliderLevel == appliedLevel) {
+        List<Runnable> actions = new ArrayList<>(settledActions);
+        settledActions.clear();
+        actions.forEach(Runnable::run);
+        return;
+      }
+      int level = sliderLevel;
+      long v = sliderVersion;
+      boolean capture = rebase;
+      if (capture) {
+        baseLevel = appliedLevel;
+        rebase = false;
+      }
+      int increment = level - baseLevel;
+      String name = imageName;
+      int current = session;
+      boolean resync = !preview && proxied;
+      inFlight = true;
+      inFlightSession = current;
+      submit(executor, () -> {
+        boolean applied = false;
+        Rendering rendering = null;
+        try {
+          if (preview && proxySession != current) {
+            // the image's proxy is not installed yet; it is rebuilt with this level once the
+            // full-resolution image has it
+            applied = true;
+            return;
+          }
+          if (capture) {
+            target.addImage(BRIGHTNESS_BASE, target.getImage(name));
+          }
+          ImageTransformations transformer =
+                  new ImageTransformationsImpl(target.getImage(BRIGHTNESS_BASE));
+          target.addImage(name, transformer.brighten(increment));
+          applied = true;
+          if (preview || isLatest(v)) {
+            rendering = render(target, name, v, preview);
+          }
+          if (resync && isLatest(v)) {
+            // the slider has settled, so bring the proxy in line with the full-resolution image
+            refreshPreview(name, v, current);
+          }
+        } finally {
+          boolean done = applied;
+          Rendering result = rendering;
+          SwingUtilities.invokeLater(() -> finished(current, level, done, result));
+        }
+      });
+    }
+
+    /**
+     * Records that a brightness change has finished, displays it, and moves on to the slider's
+     * newest level if it has moved in the meantime.
+     *
+     * @param current the session the change was made in
+     * @param level the brightness level that was applied
+     * @param applied true if the change succeeded
+     * @param rendering the rendered result, or null if it was not rendered
+     */
+    private void finished(int current, int level, boolean applied, Rendering rendering) {
+      if (current != session) {
+        // a reset or a new image has replaced the image this change was made to; only a change
+        // made since then can still be running
+        if (inFlightSession == current) {
+          inFlight = false;
+          schedule();
+        }
+        return;
+      }
+      inFlight = false;
+      if (!applied) {
+        // give up on this level; anything waiting for the slider can go ahead
+        sliderLevel = appliedLevel;
+        schedule();
+        return;
+      }
+      appliedLevel = level;
+      if (rendering != null) {
+        show(rendering);
+      }
+      schedule();
+    }
+  }
+
+  /**
+   * A rendered image along with its histogram, ready to be handed to the view.
+   */
+  private static class Rendering {
+
+    private final BufferedImage image;
+    private final int[][] histogram;
+    private final int maxFrequency;
+    private final long version;
+    private final boolean preview;
+    private final int fullWidth;
+    private final int fullHeight;
+    // the image, if its histogram is only an estimate
+    private final ImageModel estimated;
+
+    Rendering(BufferedImage image, int[][] histogram, int maxFrequency, long version,
+              boolean preview, int fullWidth, int fullHeight, ImageModel estimated) {
+      this.image = image;
+      this.histogram = histogram;
+      this.maxFrequency = maxFrequency;
+      this.version = version;
+      this.preview = preview;
+      this.fullWidth = fullWidth;
+      this.fullHeight = fullHeight;
+      this.estimated = estimated;
+    }
+  }
 }
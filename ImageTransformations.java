@@ -1,8 +1,10 @@
 package model;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import controller.commands.Greyscale;
+import controller.commands.Resampling;
 
 /**
  * Represents a collection of methods that edit an ImageModel and return the new ImageModel.
@@ -18,6 +20,52 @@ public interface ImageTransformations {
    */
   ImageModel filter(double[][] filter);
 
+  /**
+   * Blurs the RGB channels of an image with a box filter, averaging every pixel with the pixels
+   * within a radius of it, as many times over as asked. The cost of each pass does not depend on
+   * the radius. Three or more passes are close to a Gaussian blur.
+   *
+   * @param radius how far the box reaches from each pixel, 0 leaving the image as it is
+   * @param passes how many times to blur the image
+   * @return the blurred image
+   * @throws IllegalArgumentException if the radius is negative or there are no passes
+   */
+  ImageModel boxBlur(int radius, int passes) throws IllegalArgumentException;
+
+  /**
+   * Removes noise from the RGB channels of an image by replacing each value with the median of
+   * the values within a radius of it. The cost does not depend on the radius.
+   *
+   * @param radius how far the window reaches from each pixel, 0 leaving the image as it is
+   * @return the filtered image
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  ImageModel median(int radius) throws IllegalArgumentException;
+
+  /**
+   * Erodes the RGB channels of an image with a rectangle, replacing each value with the smallest
+   * value within the given distances of it. Dark areas grow and light areas shrink. The cost does
+   * not depend on the size of the rectangle.
+   *
+   * @param radiusX how far the rectangle reaches to the left and right of each pixel
+   * @param radiusY how far the rectangle reaches above and below each pixel
+   * @return the eroded image
+   * @throws IllegalArgumentException if either distance is negative
+   */
+  ImageModel erode(int radiusX, int radiusY) throws IllegalArgumentException;
+
+  /**
+   * Dilates the RGB channels of an image with a rectangle, replacing each value with the largest
+   * value within the given distances of it. Light areas grow and dark areas shrink. The cost does
+   * not depend on the size of the rectangle.
+   *
+   * @param radiusX how far the rectangle reaches to the left and right of each pixel
+   * @param radiusY how far the rectangle reaches above and below each pixel
+   * @return the dilated image
+   * @throws IllegalArgumentException if either distance is negative
+   */
+  ImageModel dilate(int radiusX, int radiusY) throws IllegalArgumentException;
+
 
   /**
    * Flips an image either horizontally or vertically. Utilizes ImageModel's micro-methods
@@ -28,6 +76,24 @@ public interface ImageTransformations {
    */
   ImageModel flip(boolean vertical);
 
+  /**
+   * Transposes an image, so that its rows become its columns: the pixel in row i and column j
+   * moves to row j and column i.
+   *
+   * @return the transposed image, as wide as the image was high
+   */
+  ImageModel transpose();
+
+  /**
+   * Rotates an image clockwise by a multiple of 90 degrees. Negative angles rotate it
+   * counterclockwise.
+   *
+   * @param degrees how far to rotate the image
+   * @return the rotated image, which is as wide as the image was high after a quarter turn
+   * @throws IllegalArgumentException if the angle is not a multiple of 90 degrees
+   */
+  ImageModel rotate(int degrees) throws IllegalArgumentException;
+
 
   /**
    * Transforms the coloring of an image based on individual pixel values. Whereas a filter
@@ -49,15 +115,63 @@ public interface ImageTransformations {
   ImageModel brighten(int increment);
 
   /**
-   * Downsizes an image based on new dimensions.
+   * Stretches the contrast of an image so its darkest values become black and its brightest
+   * become the maximum value. The black and white points are percentiles of the image's intensity
+   * histogram, so a few outlying pixels don't stop the stretch. Every channel is stretched by the
+   * same amount, keeping the image's colors in balance.
+   *
+   * @param clipPercent the percentage of pixels allowed to be clipped at each end, from 0 to 50
+   * @return the stretched image
+   * @throws IllegalArgumentException if the percentage is out of range, or the image's channels
+   *         do not fit in 8 bits
+   */
+  ImageModel autoLevels(double clipPercent) throws IllegalArgumentException;
+
+  /**
+   * Equalizes an image's histogram, spreading its intensities evenly over the whole range of
+   * values. Each value is mapped through the cumulative distribution of the intensity histogram,
+   * and the same mapping is applied to every channel.
+   *
+   * @return the equalized image
+   * @throws IllegalArgumentException if the image's channels do not fit in 8 bits
+   */
+  ImageModel equalize() throws IllegalArgumentException;
+
+  /**
+   * Downsizes an image based on new dimensions. Each new pixel is the average of the area of the
+   * image it covers.
    * @param newWidth the new width of the image.
    * @param newHeight the new height of the image.
    * @return the newly sized image.
+   * @throws IllegalArgumentException if either dimension is less than 1 or larger than the image's
+   */
+  ImageModel downsize(int newWidth, int newHeight) throws IllegalArgumentException;
+
+  /**
+   * Creates thumbnails of an image at 1/2, 1/4, 1/8 and so on of its size, in one pass: each
+   * thumbnail is made by halving the one before it. Odd rows and columns are dropped at each step.
+   * @param levels the number of thumbnails to create
+   * @return the thumbnails, largest first
+   * @throws IllegalArgumentException if the number of levels is not positive, or the image's
+   *         channels do not fit in 8 bits
    */
-  ImageModel downsize(int newWidth, int newHeight);
+  List<ImageModel> thumbnails(int levels) throws IllegalArgumentException;
 
   /**
-   * Converts this class' image model to a buffered image.
+   * Resizes an image to new dimensions, larger or smaller, with the given resampling kernel.
+   * @param newWidth the new width of the image
+   * @param newHeight the new height of the image
+   * @param kernel the kernel to resample the image with
+   * @return the resized image
+   * @throws IllegalArgumentException if either dimension is not positive
+   */
+  ImageModel resize(int newWidth, int newHeight, Resampling kernel)
+          throws IllegalArgumentException;
+
+  /**
+   * Converts this class' image model to a buffered image. Images with more than 8 bits per
+   * channel become 16-bit images, scaled to the full 16-bit range, and images with transparent
+   * pixels keep their alpha.
    * @return a BufferedImage object
    */
   BufferedImage toBufferedImg();
@@ -69,9 +183,103 @@ public interface ImageTransformations {
    */
   ImageModel transformColor(double[][] matrix);
 
+  /**
+   * Partially applies an edit to this image: every pixel which is black in the mask is replaced
+   * by the same pixel of the edited image, and every other pixel is left as it is.
+   * @param edited the fully edited version of this image
+   * @param mask the mask selecting which pixels to take from the edited image
+   * @return the partially edited image
+   * @throws IllegalArgumentException if the images are not all the same size
+   */
+  ImageModel applyMask(ImageModel edited, ImageModel mask) throws IllegalArgumentException;
+
+  /**
+   * Partially applies an edit to this image which was only made to a region of it: every pixel
+   * selected by the mask is replaced by the same pixel of the edited region. Only the selected
+   * pixels are visited.
+   * @param edited the edited region of this image
+   * @param mask the mask selecting which pixels to take from the edited region
+   * @param left the column of this image where the edited region starts
+   * @param top the row of this image where the edited region starts
+   * @return the partially edited image
+   * @throws IllegalArgumentException if the mask is not the same size as this image, or the
+   *         edited region does not cover every selected pixel
+   */
+  ImageModel applyMask(ImageModel edited, Mask mask, int left, int top)
+          throws IllegalArgumentException;
+
+  /**
+   * Partially applies an edit to this image through a feathered mask: every pixel becomes a
+   * blend of itself and the same pixel of the edited region, weighted by the mask. Only the
+   * pixels inside the mask's bounding box are visited, in a single pass.
+   * @param edited the edited region of this image
+   * @param mask the mask giving how much of the edit each pixel takes
+   * @param left the column of this image where the edited region starts
+   * @param top the row of this image where the edited region starts
+   * @return the blended image
+   * @throws IllegalArgumentException if the mask is not the same size as this image, or the
+   *         edited region does not cover every pixel the mask affects
+   */
+  ImageModel applyMask(ImageModel edited, SoftMask mask, int left, int top)
+          throws IllegalArgumentException;
+
+  /**
+   * Copies a rectangular region of an image. Packed images are cropped without copying their
+   * pixels: the region is a view of them until either image is written to.
+   * @param left the first column of the region
+   * @param top the first row of the region
+   * @param width the width of the region
+   * @param height the height of the region
+   * @return the region, as an image of its own
+   * @throws IllegalArgumentException if the region is empty or not inside the image
+   */
+  ImageModel crop(int left, int top, int width, int height) throws IllegalArgumentException;
+
+  /**
+   * Copies an image over part of this image, in place. Only the pixels which fall inside the
+   * image (and inside the region of interest, if there is one) are written.
+   * @param region the image to copy
+   * @param left the column the region's first column goes to
+   * @param top the row the region's first row goes to
+   * @return the image, with the region pasted in
+   * @throws IllegalArgumentException if the region is null
+   */
+  ImageModel paste(ImageModel region, int left, int top) throws IllegalArgumentException;
+
   /**
    * Returns the histogram data for an image.
    * @return a 2d array of ints representing the image's histogram values
    */
   int[][] createHistogramData();
+
+  /**
+   * Returns an estimate of the histogram data for an image, from a stratified sample of its
+   * pixels. Much faster than the exact histogram for very large images, where the two look the
+   * same when displayed. If the exact histogram is already known, it is returned instead.
+   * @param sampleRate the fraction of pixels to sample, between 0 (exclusive) and 1; a rate of 1
+   *                   gives the exact histogram
+   * @return a 2d array of ints representing the image's estimated histogram values
+   * @throws IllegalArgumentException if the sample rate is not in range
+   */
+  int[][] createHistogramData(double sampleRate) throws IllegalArgumentException;
+
+  /**
+   * Returns the histogram data for an image with a given number of bins per component, exactly
+   * or from a sample of its pixels. The values from 0 to the image's maximum value are shared
+   * out evenly between the bins, so an image with 16 bits per channel can be shown with 256 bins
+   * or counted with a bin for every value. The other two methods use 256 bins.
+   * @param bins the number of bins for each component
+   * @param sampleRate the fraction of pixels to sample, between 0 (exclusive) and 1; a rate of 1
+   *                   gives the exact histogram
+   * @return a 2d array of ints representing the image's histogram values
+   * @throws IllegalArgumentException if there are no bins or the sample rate is not in range
+   */
+  int[][] createHistogramData(int bins, double sampleRate) throws IllegalArgumentException;
+
+  /**
+   * Returns the largest value in the image's histogram data, which the histogram is scaled by
+   * when it is displayed.
+   * @return the largest count of any value of any component
+   */
+  int getHistogramMaxFrequency();
 }
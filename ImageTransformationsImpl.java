@@ -1,18 +1,42 @@
 package model;
 
 import java.awt.Color;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
 
 import controller.commands.Greyscale;
+import controller.commands.Resampling;
 
 /**
  * Implements the methods outlined by the ImageTransformation interface. Provides implementation
  * for filtering, flipping, brightening/darkening, and transforming the color of ImageModels and
  * returning the new images.
+ * Operations can be limited to a rectangular region of interest. Edits then only read the region
+ * (plus, for filters, the neighbors they need around it) and only write the region, leaving the
+ * rest of the image untouched; operations which produce a new image (rotating, transposing,
+ * resizing and cropping), a histogram, or a BufferedImage work on the region as if it were the
+ * whole image, and return the result for the region alone whatever its shape.
  */
 public class ImageTransformationsImpl implements ImageTransformations {
 
   private final ImageModel img;
+  // the region every operation is limited to; the whole image unless one is given
+  private final int roiLeft;
+  private final int roiTop;
+  private final int roiWidth;
+  private final int roiHeight;
 
   /**
    * Constructor for the ImageTransformationsImpl. Takes an ImageModel and sets this
@@ -22,65 +46,274 @@ public class ImageTransformationsImpl implements ImageTransformations {
    */
   public ImageTransformationsImpl(ImageModel image) {
     this.img = image;
+    this.roiLeft = 0;
+    this.roiTop = 0;
+    this.roiWidth = image.getCols();
+    this.roiHeight = image.getRows();
+  }
+
+  /**
+   * Constructor for an ImageTransformationsImpl whose operations only apply to a region of the
+   * image.
+   *
+   * @param image the image to be transformed
+   * @param left the first column of the region
+   * @param top the first row of the region
+   * @param width the width of the region
+   * @param height the height of the region
+   * @throws IllegalArgumentException if the region is empty or not inside the image
+   */
+  public ImageTransformationsImpl(ImageModel image, int left, int top, int width, int height)
+          throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    if (left < 0 || top < 0 || left + width > image.getCols() || top + height > image.getRows()) {
+      throw new IllegalArgumentException("The region must be inside the image.");
+    }
+    this.img = image;
+    this.roiLeft = left;
+    this.roiTop = top;
+    this.roiWidth = width;
+    this.roiHeight = height;
   }
 
   @Override
   public ImageModel filter(double[][] filter) {
-    for (int i = 0; i < img.getRows(); i++) {
-      for (int j = 0; j < img.getCols(); j++) {
-        double r = 0;
-        double g = 0;
-        double b = 0;
-        int filterSize = filter.length;
-        int filterSize2 = filter[0].length;
-        Pixel p = img.getPixel(i, j);
-        for (int x = 0; x < filterSize; x++) {
-          for (int y = 0; y < filterSize2; y++) {
-            try {
-              r += img.getPixel(i - (filterSize / 2 - x),
-                      j - (filterSize2 / 2 - y)).getRed() * filter[x][y];
-              g += img.getPixel(i - (filterSize / 2 - x),
-                      j - (filterSize2 / 2 - y)).getGreen() * filter[x][y];
-              b += img.getPixel(i - (filterSize / 2 - x),
-                      j - (filterSize2 / 2 - y)).getBlue() * filter[x][y];
-            } catch (IndexOutOfBoundsException | IllegalArgumentException ignored) {
-              // We're expecting these exceptions, when encountered do nothing to the variables.
+    if (hasRegion()) {
+      return editRegion(Math.max(filter.length, filter[0].length) / 2, t -> t.filter(filter));
+    }
+    if (img instanceof PackedImage) {
+      filterPacked((PackedImage) img, filter);
+      return img;
+    }
+    int[][] planes = readPlanes();
+    int max = maxValue();
+    for (int c = 0; c < 3; c++) {
+      planes[c] = filterPlane(planes[c], img.getCols(), img.getRows(), filter, max);
+    }
+    writePlanes(planes);
+    return img;
+  }
+
+  @Override
+  public ImageModel boxBlur(int radius, int passes) throws IllegalArgumentException {
+    if (radius < 0 || passes < 1) {
+      throw new IllegalArgumentException("The radius cannot be negative and there must be at " +
+              "least one pass.");
+    }
+    if (hasRegion()) {
+      return editRegion(radius * passes, t -> t.boxBlur(radius, passes));
+    }
+    if (radius == 0) {
+      return img;
+    }
+    int rows = img.getRows();
+    int cols = img.getCols();
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      // the first pass reads the image where it is; later passes read the last pass's pixels
+      int[] pixels = BoxBlur.blur(packed.buffer(), packed.offset(), packed.stride(), cols, rows,
+              radius);
+      for (int k = 1; k < passes; k++) {
+        pixels = BoxBlur.blur(pixels, 0, cols, cols, rows, radius);
+      }
+      packed.replacePixels(pixels);
+      return img;
+    }
+    int[][] planes = readPlanes();
+    for (int c = 0; c < 3; c++) {
+      for (int k = 0; k < passes; k++) {
+        planes[c] = BoxBlur.blurPlane(planes[c], cols, rows, radius);
+      }
+    }
+    writePlanes(planes);
+    return img;
+  }
+
+  @Override
+  public ImageModel median(int radius) throws IllegalArgumentException {
+    if (radius < 0) {
+      throw new IllegalArgumentException("The radius cannot be negative.");
+    }
+    if (hasRegion()) {
+      return editRegion(radius, t -> t.median(radius));
+    }
+    if (radius == 0) {
+      return img;
+    }
+    int rows = img.getRows();
+    int cols = img.getCols();
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      packed.replacePixels(MedianFilter.filter(packed.buffer(), packed.offset(), packed.stride(),
+              cols, rows, radius));
+      return img;
+    }
+    // channels deeper than 8 bits have too many values for histograms: sort each window instead
+    int[][] source = readPlanes();
+    int[][] planes = new int[3][rows * cols];
+    int[] window = new int[(2 * radius + 1) * (2 * radius + 1)];
+    for (int c = 0; c < 3; c++) {
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < cols; j++) {
+          int n = 0;
+          for (int x = Math.max(0, i - radius); x <= Math.min(rows - 1, i + radius); x++) {
+            for (int y = Math.max(0, j - radius); y <= Math.min(cols - 1, j + radius); y++) {
+              window[n++] = source[c][x * cols + y];
             }
           }
+          Arrays.sort(window, 0, n);
+          planes[c][i * cols + j] = window[(n - 1) / 2];
         }
-        img.setPixel(i, j, new Pixel(p.constrain((int) r), p.constrain((int) g),
-                p.constrain((int) b), 255));
       }
     }
+    writePlanes(planes);
     return img;
   }
 
+  @Override
+  public ImageModel erode(int radiusX, int radiusY) throws IllegalArgumentException {
+    return morph(radiusX, radiusY, false);
+  }
+
+  @Override
+  public ImageModel dilate(int radiusX, int radiusY) throws IllegalArgumentException {
+    return morph(radiusX, radiusY, true);
+  }
+
   @Override
   public ImageModel flip(boolean vertical) {
+    if (hasRegion()) {
+      return editRegion(0, t -> t.flip(vertical));
+    }
     int rows = img.getRows();
     int cols = img.getCols();
-    if (vertical) {
-      for (int i = 0; i < rows; i++) {
-        for (int j = 0; j < cols / 2; j++) {
-          Pixel temp = img.getPixel(i, j);
-          img.setPixel(i, j, img.getPixel(i, cols - 1 - j));
-          img.setPixel(i, cols - 1 - j, temp);
-        }
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      // moving pixels around doesn't change how many there are of each value
+      int[][] histogram = packed.cachedHistogram();
+      int[] pixels = packed.writablePixels();
+      if (vertical) {
+        Geometry.mirrorRows(pixels, cols, rows);
+      } else {
+        Geometry.mirrorColumns(pixels, cols, rows);
       }
-    } else {
-      for (int i = 0; i < rows / 2; i++) {
-        for (int j = 0; j < cols; j++) {
-          Pixel temp = img.getPixel(i, j);
-          img.setPixel(i, j, img.getPixel(rows - 1 - i, j));
-          img.setPixel(rows - 1 - i, j, temp);
-        }
+      packed.cacheHistogram(histogram);
+      return img;
+    }
+    int[][] planes = readPlanes();
+    for (int[] plane : planes) {
+      if (vertical) {
+        Geometry.mirrorRows(plane, cols, rows);
+      } else {
+        Geometry.mirrorColumns(plane, cols, rows);
       }
     }
+    writePlanes(planes);
     return img;
   }
 
+  @Override
+  public ImageModel transpose() {
+    if (hasRegion()) {
+      return region().transpose();
+    }
+    return turn(0);
+  }
+
+  @Override
+  public ImageModel rotate(int degrees) throws IllegalArgumentException {
+    if (degrees % 90 != 0) {
+      throw new IllegalArgumentException("Images can only be rotated by multiples of 90 degrees.");
+    }
+    if (hasRegion()) {
+      return region().rotate(degrees);
+    }
+    int quarters = Math.floorMod(degrees / 90, 4);
+    if (quarters == 0) {
+      return img;
+    }
+    if (quarters == 2 && img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      int[][] histogram = packed.cachedHistogram();
+      Geometry.rotateHalf(packed.writablePixels());
+      packed.cacheHistogram(histogram);
+      return img;
+    }
+    return turn(quarters);
+  }
+
+  /**
+   * Transposes or turns the image into a new image, which is as wide as the image is high.
+   * Packed images are turned a tile at a time, and others a plane at a time. A half turn keeps
+   * the image's shape, and is only turned here for images which are not packed.
+   *
+   * @param quarters how many quarter turns clockwise to rotate the image by, or 0 to transpose
+   *                 it
+   * @return the new image
+   */
+  private ImageModel turn(int quarters) {
+    int rows = img.getRows();
+    int cols = img.getCols();
+    if (img instanceof PackedImage && quarters != 2) {
+      PackedImage packed = (PackedImage) img;
+      int[] pixels = packed.buffer();
+      int offset = packed.offset();
+      int stride = packed.stride();
+      int[] turned = quarters == 0 ? Geometry.transpose(pixels, offset, stride, cols, rows)
+              : quarters == 1 ? Geometry.rotateClockwise(pixels, offset, stride, cols, rows)
+              : Geometry.rotateCounterclockwise(pixels, offset, stride, cols, rows);
+      PackedImage result = new PackedImage(rows, cols, turned, packed.getMaxValue());
+      // moving pixels around doesn't change how many there are of each value
+      result.cacheHistogram(packed.cachedHistogram());
+      return result;
+    }
+    int[][] planes = readPlanes();
+    for (int c = 0; c < 3; c++) {
+      if (quarters == 0) {
+        planes[c] = Geometry.transpose(planes[c], 0, cols, cols, rows);
+      } else if (quarters == 1) {
+        planes[c] = Geometry.rotateClockwise(planes[c], 0, cols, cols, rows);
+      } else if (quarters == 2) {
+        Geometry.rotateHalf(planes[c]);
+      } else {
+        planes[c] = Geometry.rotateCounterclockwise(planes[c], 0, cols, cols, rows);
+      }
+    }
+    return quarters == 2 ? newImage(cols, rows, planes, maxValue())
+            : newImage(rows, cols, planes, maxValue());
+  }
+
   @Override
   public ImageModel brighten(int increment) {
+    if (hasRegion()) {
+      return editRegion(0, t -> t.brighten(increment));
+    }
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      int max = packed.getMaxValue();
+      int[] lut = new int[256];
+      for (int v = 0; v <= max; v++) {
+        lut[v] = Math.max(0, Math.min(v + increment, max));
+      }
+      int[][] histogram = packed.cachedHistogram();
+      applyLut(packed, lut, lut, lut);
+      if (histogram != null) {
+        packed.cacheHistogram(Histograms.remap(histogram, lut, lut, lut));
+      }
+      return img;
+    }
+    if (img instanceof DeepImage) {
+      DeepImage deep = (DeepImage) img;
+      int max = deep.getMaxValue();
+      int[] lut = new int[max + 1];
+      for (int v = 0; v <= max; v++) {
+        lut[v] = Math.max(0, Math.min(v + increment, max));
+      }
+      applyLut(deep, lut);
+      return img;
+    }
     for (int i = 0; i < img.getRows(); i++) {
       for (int j = 0; j < img.getCols(); j++) {
         Pixel p = img.getPixel(i, j);
@@ -91,8 +324,103 @@ public class ImageTransformationsImpl implements ImageTransformations {
     return img;
   }
 
+  @Override
+  public ImageModel autoLevels(double clipPercent) throws IllegalArgumentException {
+    if (hasRegion()) {
+      return editRegion(0, t -> t.autoLevels(clipPercent));
+    }
+    if (!(clipPercent >= 0 && clipPercent < 50)) {
+      throw new IllegalArgumentException("Clip percentage must be at least 0 and less than 50.");
+    }
+    // deeper images are counted with a bin for every value, as packed images are
+    PackedImage packed = PackedImage.canPack(img) ? PackedImage.of(img) : null;
+    DeepImage deep = packed == null ? DeepImage.of(img) : null;
+    int max = packed != null ? packed.getMaxValue() : deep.getMaxValue();
+    int[] intensity = packed != null ? Histograms.of(packed)[Histograms.INTENSITY]
+            : Histograms.count(deep.planes(), max, max + 1)[Histograms.INTENSITY];
+    long clip = (long) (clipPercent / 100 * img.getRows() * img.getCols());
+    // the black point is the first value with more than the clipped count at or below it, and
+    // the white point the last value with more than the clipped count at or above it
+    int black = 0;
+    long below = intensity[0];
+    while (black < max && below <= clip) {
+      below += intensity[++black];
+    }
+    int white = max;
+    long above = intensity[max];
+    while (white > 0 && above <= clip) {
+      above += intensity[--white];
+    }
+    int[] lut = identityLut(max);
+    if (white > black) {
+      int range = white - black;
+      for (int v = 0; v <= max; v++) {
+        long stretched = ((long) (v - black) * max * 2 + range) / (range * 2L);
+        lut[v] = (int) Math.max(0, Math.min(max, stretched));
+      }
+    }
+    if (deep != null) {
+      applyLut(deep, lut);
+      return deep;
+    }
+    applyLut(packed, lut, lut, lut);
+    return packed;
+  }
+
+  @Override
+  public ImageModel equalize() throws IllegalArgumentException {
+    if (hasRegion()) {
+      return editRegion(0, ImageTransformationsImpl::equalize);
+    }
+    PackedImage packed = PackedImage.canPack(img) ? PackedImage.of(img) : null;
+    DeepImage deep = packed == null ? DeepImage.of(img) : null;
+    int max = packed != null ? packed.getMaxValue() : deep.getMaxValue();
+    int[] intensity = packed != null ? Histograms.of(packed)[Histograms.INTENSITY]
+            : Histograms.count(deep.planes(), max, max + 1)[Histograms.INTENSITY];
+    long total = (long) img.getRows() * img.getCols();
+    long lowest = 0;
+    for (int v = 0; v < intensity.length && lowest == 0; v++) {
+      lowest = intensity[v];
+    }
+    int[] lut = identityLut(max);
+    if (total > lowest) {
+      long cumulative = 0;
+      for (int v = 0; v <= max; v++) {
+        cumulative += intensity[v];
+        lut[v] = (int) Math.max(0, ((cumulative - lowest) * max + (total - lowest) / 2)
+                / (total - lowest));
+      }
+    }
+    if (deep != null) {
+      applyLut(deep, lut);
+      return deep;
+    }
+    applyLut(packed, lut, lut, lut);
+    return packed;
+  }
+
   @Override
   public BufferedImage toBufferedImg() {
+    if (hasRegion()) {
+      return region().toBufferedImg();
+    }
+    if (!(img instanceof PackedImage) && maxValue() > 255) {
+      return toDeepBufferedImg();
+    }
+    if (img instanceof PackedImage) {
+      // the packed layout matches TYPE_INT_ARGB (and TYPE_INT_RGB, which ignores the top byte),
+      // so the pixels can be copied a row at a time
+      PackedImage packed = (PackedImage) img;
+      int type = packed.hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+      BufferedImage image = new BufferedImage(img.getCols(), img.getRows(), type);
+      int[] pixels = packed.buffer();
+      int[] out = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      int cols = img.getCols();
+      for (int i = 0; i < img.getRows(); i++) {
+        System.arraycopy(pixels, packed.offset() + i * packed.stride(), out, i * cols, cols);
+      }
+      return image;
+    }
     BufferedImage image =
             new BufferedImage(img.getCols(), img.getRows(), BufferedImage.TYPE_INT_RGB);
     for (int i = 0; i < img.getRows(); i++) {
@@ -107,8 +435,43 @@ public class ImageTransformationsImpl implements ImageTransformations {
     return image;
   }
 
+  /**
+   * Converts an image whose channels are deeper than 8 bits to a BufferedImage with 16 bits per
+   * channel, scaling its values up to the full 16-bit range. Formats such as PNG keep all 16
+   * bits when the BufferedImage is written.
+   *
+   * @return the BufferedImage
+   */
+  private BufferedImage toDeepBufferedImg() {
+    int cols = img.getCols();
+    int rows = img.getRows();
+    DeepImage deep = DeepImage.of(img);
+    long max = deep.getMaxValue();
+    ColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            new int[]{16, 16, 16}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+    WritableRaster raster = model.createCompatibleWritableRaster(cols, rows);
+    short[] out = ((DataBufferUShort) raster.getDataBuffer()).getData();
+    char[][] planes = deep.planes();
+    RowBands.forEach(rows, cols * 3, (from, to) -> {
+      for (int c = 0; c < 3; c++) {
+        char[] plane = planes[c];
+        for (int i = from * cols, o = i * 3 + c; i < to * cols; i++, o += 3) {
+          out[o] = (short) ((plane[i] * (long) DeepImage.MAX_VALUE + max / 2) / max);
+        }
+      }
+    });
+    return new BufferedImage(model, raster, false, null);
+  }
+
   @Override
   public ImageModel greyscale(Greyscale component) {
+    if (hasRegion()) {
+      return editRegion(0, t -> t.greyscale(component));
+    }
+    if (img instanceof PackedImage) {
+      greyscalePacked((PackedImage) img, component);
+      return img;
+    }
     for (int i = 0; i < img.getRows(); i++) {
       for (int j = 0; j < img.getCols(); j++) {
         Pixel p = img.getPixel(i, j);
@@ -120,6 +483,17 @@ public class ImageTransformationsImpl implements ImageTransformations {
 
   @Override
   public ImageModel transformColor(double[][] matrix) {
+    if (hasRegion()) {
+      return editRegion(0, t -> t.transformColor(matrix));
+    }
+    if (img instanceof PackedImage) {
+      transformColorPacked((PackedImage) img, matrix);
+      return img;
+    }
+    if (img instanceof DeepImage) {
+      transformColorDeep((DeepImage) img, matrix);
+      return img;
+    }
     for (int i = 0; i < img.getRows(); i++) {
       for (int j = 0; j < img.getCols(); j++) {
         Pixel p = img.getPixel(i, j);
@@ -131,12 +505,123 @@ public class ImageTransformationsImpl implements ImageTransformations {
           }
         }
         img.setPixel(i, j, new Pixel(p.constrain((int) result[0]), p.constrain((int) result[1]),
-                p.constrain((int) result[2]), 255));
+                p.constrain((int) result[2]), p.getMaxValue()));
       }
     }
     return img;
   }
 
+  /**
+   * Multiplies every pixel of a packed image by a color matrix, reading the original pixels in
+   * place and writing the results to a new array, one band of rows per task. Each result is
+   * truncated and clamped to the image's range, and alpha is kept.
+   *
+   * @param packed the image to transform
+   * @param matrix the 3x3 matrix, with one row for each of red, green and blue
+   */
+  private void transformColorPacked(PackedImage packed, double[][] matrix) {
+    int rows = packed.getRows();
+    int cols = packed.getCols();
+    int max = packed.getMaxValue();
+    int[] src = packed.buffer();
+    int offset = packed.offset();
+    int stride = packed.stride();
+    int[] dst = new int[rows * cols];
+    double[] m0 = matrix[0];
+    double[] m1 = matrix[1];
+    double[] m2 = matrix[2];
+    RowBands.forEach(rows, cols * 9, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        for (int j = 0, s = offset + i * stride, d = i * cols; j < cols; j++, s++, d++) {
+          int p = src[s];
+          int r = (p >> 16) & 0xFF;
+          int g = (p >> 8) & 0xFF;
+          int b = p & 0xFF;
+          dst[d] = (p & 0xFF000000)
+                  | (clamp((int) (r * m0[0] + g * m0[1] + b * m0[2]), max) << 16)
+                  | (clamp((int) (r * m1[0] + g * m1[1] + b * m1[2]), max) << 8)
+                  | clamp((int) (r * m2[0] + g * m2[1] + b * m2[2]), max);
+        }
+      }
+    });
+    packed.replacePixels(dst);
+  }
+
+  /**
+   * Multiplies every pixel of a deep image by a color matrix, reading its planes and writing new
+   * ones, one band of rows per task. Each result is truncated and clamped to the image's range.
+   *
+   * @param deep the image to transform
+   * @param matrix the 3x3 matrix, with one row for each of red, green and blue
+   */
+  private void transformColorDeep(DeepImage deep, double[][] matrix) {
+    int rows = deep.getRows();
+    int cols = deep.getCols();
+    int max = deep.getMaxValue();
+    char[][] src = deep.planes();
+    char[][] dst = new char[3][rows * cols];
+    double[] m0 = matrix[0];
+    double[] m1 = matrix[1];
+    double[] m2 = matrix[2];
+    RowBands.forEach(rows, cols * 9, (from, to) -> {
+      for (int k = from * cols; k < to * cols; k++) {
+        int r = src[0][k];
+        int g = src[1][k];
+        int b = src[2][k];
+        dst[0][k] = (char) clamp((int) (r * m0[0] + g * m0[1] + b * m0[2]), max);
+        dst[1][k] = (char) clamp((int) (r * m1[0] + g * m1[1] + b * m1[2]), max);
+        dst[2][k] = (char) clamp((int) (r * m2[0] + g * m2[1] + b * m2[2]), max);
+      }
+    });
+    deep.replacePlanes(dst);
+  }
+
+  /**
+   * Greyscales a packed image in a single pass over its pixels. Greyscaling to a single channel
+   * (or to intensity) makes that channel's counts the new histogram, so it is updated without
+   * recounting.
+   *
+   * @param packed the image to greyscale
+   * @param component the component to set the image's pixels to
+   */
+  private void greyscalePacked(PackedImage packed, Greyscale component) {
+    int[][] histogram = packed.cachedHistogram();
+    int[] src = packed.pixels();
+    int[] dst = packed.pixelsForOverwrite();
+    for (int i = 0; i < src.length; i++) {
+      int p = src[i];
+      int r = (p >> 16) & 0xFF;
+      int g = (p >> 8) & 0xFF;
+      int b = p & 0xFF;
+      int v;
+      switch (component) {
+        case RED:
+          v = r;
+          break;
+        case GREEN:
+          v = g;
+          break;
+        case BLUE:
+          v = b;
+          break;
+        case INTENSITY:
+          v = (r + g + b) / 3;
+          break;
+        case VALUE:
+          v = Math.max(Math.max(r, g), b);
+          break;
+        default:
+          throw new IllegalArgumentException("Invalid component type.");
+      }
+      dst[i] = (p & 0xFF000000) | (v << 16) | (v << 8) | v;
+    }
+    if (histogram != null && component != Greyscale.VALUE) {
+      int channel = component == Greyscale.RED ? Histograms.RED
+              : component == Greyscale.GREEN ? Histograms.GREEN
+              : component == Greyscale.BLUE ? Histograms.BLUE : Histograms.INTENSITY;
+      packed.cacheHistogram(Histograms.grey(histogram, channel));
+    }
+  }
 
   /**
    * Helper method to determine what value to set an RGB pixel to given a greyscale component.
@@ -172,60 +657,758 @@ public class ImageTransformationsImpl implements ImageTransformations {
 
   @Override
   public ImageModel downsize(int newWidth, int newHeight) {
+    if (hasRegion()) {
+      return region().downsize(newWidth, newHeight);
+    }
+    if (newWidth < 1 || newHeight < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
     if (newWidth > img.getCols() || newHeight > img.getRows()) {
       throw new IllegalArgumentException("Width and height must be less than original " +
               "width and height to downsize.");
     }
-    Pixel[][] newPixels = new Pixel[newHeight][newWidth];
-    Image downsized = new Image(newPixels);
-
-    for (int i = 0; i < downsized.getRows(); i++) {
-      for (int j = 0; j < downsized.getCols(); j++) {
-        double oldX = j * img.getCols() / newWidth;
-        double oldY = i * img.getRows() / newHeight;
-        int r = 0;
-        int g = 0;
-        int b = 0;
-        int maxValue = 0;
-
-        int top = (int) Math.floor(oldY);
-        int bottom = (int) Math.ceil(oldY);
-        int left = (int) Math.floor(oldX);
-        int right = (int) Math.ceil(oldX);
-
-        Pixel topleft = img.getPixel(top, left);
-        Pixel topright = img.getPixel(top, right);
-        Pixel bottomleft = img.getPixel(bottom, left);
-        Pixel bottomright = img.getPixel(bottom, right);
-        Pixel[] pixelset = new Pixel[]{topleft, topright, bottomleft, bottomright};
-
-        for (Pixel p : pixelset) {
-          try {
-            r += p.getRed();
-            g += p.getGreen();
-            b += p.getBlue();
-            maxValue = p.getMaxValue();
-          } catch (IndexOutOfBoundsException ignored) {
+    int factor = img.getCols() / newWidth;
+    if (PackedImage.canPack(img) && factor > 1 && (factor & (factor - 1)) == 0
+            && newWidth * factor == img.getCols() && newHeight * factor == img.getRows()) {
+      // an exact power-of-two reduction is a series of 2x2 box reductions
+      PackedImage reduced = PackedImage.of(img);
+      for (int f = factor; f > 1; f /= 2) {
+        reduced = Resampler.halve(reduced);
+      }
+      return reduced;
+    }
+    return resize(newWidth, newHeight, Resampling.BOX);
+  }
+
+  @Override
+  public List<ImageModel> thumbnails(int levels) throws IllegalArgumentException {
+    if (hasRegion()) {
+      return region().thumbnails(levels);
+    }
+    if (levels < 1) {
+      throw new IllegalArgumentException("There must be at least one thumbnail.");
+    }
+    List<ImageModel> thumbnails = new ArrayList<>();
+    if (!PackedImage.canPack(img)) {
+      // deeper images are halved by box resampling, which averages the same 2x2 blocks
+      ImageModel level = img;
+      for (int i = 0; i < levels; i++) {
+        level = new ImageTransformationsImpl(level).resize(Math.max(1, level.getCols() / 2),
+                Math.max(1, level.getRows() / 2), Resampling.BOX);
+        thumbnails.add(level);
+      }
+      return thumbnails;
+    }
+    PackedImage level = PackedImage.of(img);
+    for (int i = 0; i < levels; i++) {
+      level = Resampler.halve(level);
+      thumbnails.add(level);
+    }
+    return thumbnails;
+  }
+
+  @Override
+  public ImageModel resize(int newWidth, int newHeight, Resampling kernel)
+          throws IllegalArgumentException {
+    if (hasRegion()) {
+      return region().resize(newWidth, newHeight, kernel);
+    }
+    if (newWidth < 1 || newHeight < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    if (kernel == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (PackedImage.canPack(img)) {
+      return Resampler.resize(PackedImage.of(img), newWidth, newHeight, kernel);
+    }
+    int maxValue = maxValue();
+    int[][] resized = Resampler.resize(readPlanes(), img.getCols(), img.getRows(), newWidth,
+            newHeight, maxValue, kernel);
+    return newImage(newWidth, newHeight, resized, maxValue);
+  }
+
+  @Override
+  public ImageModel applyMask(ImageModel edited, ImageModel mask) {
+    if (edited.getCols() != img.getCols() || edited.getRows() != img.getRows()
+            || mask.getCols() != img.getCols() || mask.getRows() != img.getRows()) {
+      throw new IllegalArgumentException("Image must be the same size as its mask counterpart.");
+    }
+    return applyMask(edited, Mask.of(mask), 0, 0);
+  }
+
+  @Override
+  public ImageModel applyMask(ImageModel edited, Mask mask, int left, int top)
+          throws IllegalArgumentException {
+    if (mask.getCols() != img.getCols() || mask.getRows() != img.getRows()) {
+      throw new IllegalArgumentException("Image must be the same size as its mask counterpart.");
+    }
+    // only the part of the mask inside the region of interest is applied
+    int maskLeft = Math.max(mask.getLeft(), roiLeft);
+    int maskTop = Math.max(mask.getTop(), roiTop);
+    int maskRight = Math.min(mask.getRight(), roiLeft + roiWidth);
+    int maskBottom = Math.min(mask.getBottom(), roiTop + roiHeight);
+    if (mask.isEmpty() || maskLeft >= maskRight || maskTop >= maskBottom) {
+      return img;
+    }
+    if (left > maskLeft || top > maskTop || left + edited.getCols() < maskRight
+            || top + edited.getRows() < maskBottom) {
+      throw new IllegalArgumentException("The edited region must cover the whole mask.");
+    }
+    if (img instanceof PackedImage && edited instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      int[] editedPixels = ((PackedImage) edited).pixels();
+      int editedCols = edited.getCols();
+      long[] bits = mask.bits();
+      int words = mask.wordsPerRow();
+      int cols = img.getCols();
+      // only the pixels under the mask change, so only their bins need updating
+      int[][] old = packed.cachedHistogram();
+      int[][] histogram = old == null ? null : Histograms.copy(old);
+      int[] pixels = packed.writablePixels();
+      for (int i = maskTop; i < maskBottom; i++) {
+        int from = i * words + (maskLeft >> 6);
+        int to = i * words + ((maskRight - 1) >> 6);
+        for (int w = from; w <= to; w++) {
+          // walk the set bits of the word, lowest first
+          for (long word = bits[w]; word != 0; word &= word - 1) {
+            int j = ((w - i * words) << 6) + Long.numberOfTrailingZeros(word);
+            if (j < maskLeft || j >= maskRight) {
+              continue;
+            }
+            int p = i * cols + j;
+            int e = editedPixels[(i - top) * editedCols + (j - left)];
+            if (histogram != null && pixels[p] != e) {
+              Histograms.add(histogram, pixels[p], -1);
+              Histograms.add(histogram, e, 1);
+            }
+            pixels[p] = e;
           }
         }
-        downsized.setPixel(i, j, new Pixel(r / 4, g / 4, b / 4, maxValue));
+      }
+      packed.cacheHistogram(histogram);
+      return img;
+    }
+    for (int i = maskTop; i < maskBottom; i++) {
+      for (int j = maskLeft; j < maskRight; j++) {
+        // if the pixel is selected by the mask, take the edited pixel
+        if (mask.isSet(i, j)) {
+          img.setPixel(i, j, edited.getPixel(i - top, j - left));
+        }
       }
     }
-    return downsized;
+    return img;
+  }
+
+  @Override
+  public ImageModel applyMask(ImageModel edited, SoftMask mask, int left, int top)
+          throws IllegalArgumentException {
+    if (mask.getCols() != img.getCols() || mask.getRows() != img.getRows()) {
+      throw new IllegalArgumentException("Image must be the same size as its mask counterpart.");
+    }
+    // only the part of the mask inside the region of interest is applied
+    int maskLeft = Math.max(mask.getLeft(), roiLeft);
+    int maskTop = Math.max(mask.getTop(), roiTop);
+    int maskRight = Math.min(mask.getRight(), roiLeft + roiWidth);
+    int maskBottom = Math.min(mask.getBottom(), roiTop + roiHeight);
+    if (mask.isEmpty() || maskLeft >= maskRight || maskTop >= maskBottom) {
+      return img;
+    }
+    if (left > maskLeft || top > maskTop || left + edited.getCols() < maskRight
+            || top + edited.getRows() < maskBottom) {
+      throw new IllegalArgumentException("The edited region must cover the whole mask.");
+    }
+    int first = maskTop;
+    int from = maskLeft;
+    int to = maskRight;
+    if (img instanceof PackedImage && edited instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      int[] editedPixels = ((PackedImage) edited).pixels();
+      int editedCols = edited.getCols();
+      byte[] weights = mask.weights();
+      int cols = img.getCols();
+      int[] pixels = packed.writablePixels();
+      RowBands.forEach(maskBottom - first, to - from, (start, end) -> {
+        for (int i = first + start; i < first + end; i++) {
+          int e = (i - top) * editedCols - left;
+          for (int j = from, p = i * cols + from; j < to; j++, p++) {
+            int w = weights[p] & 0xFF;
+            if (w == 0) {
+              continue;
+            }
+            pixels[p] = blend(pixels[p], editedPixels[e + j], w + (w >> 7));
+          }
+        }
+      });
+      return img;
+    }
+    for (int i = first; i < maskBottom; i++) {
+      for (int j = from; j < to; j++) {
+        int w = mask.getWeight(i, j);
+        if (w != 0) {
+          Pixel o = img.getPixel(i, j);
+          Pixel e = edited.getPixel(i - top, j - left);
+          img.setPixel(i, j, new Pixel((e.getRed() * w + o.getRed() * (255 - w) + 127) / 255,
+                  (e.getGreen() * w + o.getGreen() * (255 - w) + 127) / 255,
+                  (e.getBlue() * w + o.getBlue() * (255 - w) + 127) / 255, o.getMaxValue()));
+        }
+      }
+    }
+    return img;
+  }
+
+  @Override
+  public ImageModel crop(int left, int top, int width, int height)
+          throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    if (left < 0 || top < 0 || left + width > roiWidth || top + height > roiHeight) {
+      throw new IllegalArgumentException("The region must be inside the image.");
+    }
+    return cropImage(roiLeft + left, roiTop + top, width, height);
+  }
+
+  @Override
+  public ImageModel paste(ImageModel region, int left, int top) throws IllegalArgumentException {
+    if (region == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    // only the part of the region inside the region of interest is written
+    int fromRow = Math.max(top, roiTop);
+    int toRow = Math.min(top + region.getRows(), roiTop + roiHeight);
+    int fromCol = Math.max(left, roiLeft);
+    int toCol = Math.min(left + region.getCols(), roiLeft + roiWidth);
+    if (fromRow >= toRow || fromCol >= toCol) {
+      return img;
+    }
+    if (img instanceof PackedImage && region instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      PackedImage source = (PackedImage) region;
+      int[] regionPixels = source.buffer();
+      int cols = img.getCols();
+      int width = toCol - fromCol;
+      // the rest of the image is unchanged, so only the pasted pixels' bins need updating
+      int[][] old = packed.cachedHistogram();
+      int[][] histogram = old == null ? null : Histograms.copy(old);
+      int[] pixels = packed.writablePixels();
+      for (int i = fromRow; i < toRow; i++) {
+        int src = source.offset() + (i - top) * source.stride() + (fromCol - left);
+        int dst = i * cols + fromCol;
+        if (histogram != null) {
+          for (int k = 0; k < width; k++) {
+            Histograms.add(histogram, pixels[dst + k], -1);
+            Histograms.add(histogram, regionPixels[src + k], 1);
+          }
+        }
+        System.arraycopy(regionPixels, src, pixels, dst, width);
+      }
+      packed.cacheHistogram(histogram);
+      return img;
+    }
+    for (int i = fromRow; i < toRow; i++) {
+      for (int j = fromCol; j < toCol; j++) {
+        img.setPixel(i, j, region.getPixel(i - top, j - left));
+      }
+    }
+    return img;
   }
 
   @Override
   public int[][] createHistogramData() {
-    int[][] values = new int[4][256]; // values @ 0 = red, 1 = green, 2 = blue, 3 = intensity
-    for (int i = 0; i < img.getRows(); i++) {
-      for (int j = 0; j < img.getCols(); j++) {
-        Pixel p = img.getPixel(i, j);
-        values[0][p.getRed()]++;
-        values[1][p.getGreen()]++;
-        values[2][p.getBlue()]++;
-        values[3][p.getIntensity()]++;
+    return createHistogramData(Histograms.BINS, 1);
+  }
+
+  @Override
+  public int[][] createHistogramData(double sampleRate) throws IllegalArgumentException {
+    return createHistogramData(Histograms.BINS, sampleRate);
+  }
+
+  @Override
+  public int[][] createHistogramData(int bins, double sampleRate)
+          throws IllegalArgumentException {
+    if (hasRegion()) {
+      return region().createHistogramData(bins, sampleRate);
+    }
+    if (bins < 1) {
+      throw new IllegalArgumentException("There must be at least one bin.");
+    }
+    if (!(sampleRate > 0 && sampleRate <= 1)) {
+      throw new IllegalArgumentException("Sample rate must be greater than 0 and at most 1.");
+    }
+    int run = (int) Math.round(1 / sampleRate);
+    int max = maxValue();
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      // usually already known from the image this one was made from
+      int[][] values = packed.cachedHistogram();
+      if (values == null) {
+        values = run <= 1 ? Histograms.of(packed)
+                : Histograms.sample(packed.pixels(), packed.getCols(), run);
       }
+      return bins == Histograms.BINS ? Histograms.copy(values)
+              : Histograms.rebin(values, max, bins);
+    }
+    if (img instanceof DeepImage && run <= 1) {
+      return Histograms.count(((DeepImage) img).planes(), max, bins);
+    }
+    // values @ 0 = red, 1 = green, 2 = blue, 3 = intensity
+    int[][] values = new int[4][bins];
+    Random random = new Random(0);
+    int total = img.getRows() * img.getCols();
+    for (int start = 0; start < total; start += Math.max(1, run)) {
+      int length = Math.min(Math.max(1, run), total - start);
+      int index = start + random.nextInt(length);
+      Pixel p = img.getPixel(index / img.getCols(), index % img.getCols());
+      values[0][Histograms.bin(p.getRed(), max, bins)] += length;
+      values[1][Histograms.bin(p.getGreen(), max, bins)] += length;
+      values[2][Histograms.bin(p.getBlue(), max, bins)] += length;
+      values[3][Histograms.bin(p.getIntensity(), max, bins)] += length;
     }
     return values;
   }
+
+  @Override
+  public int getHistogramMaxFrequency() {
+    if (hasRegion()) {
+      return region().getHistogramMaxFrequency();
+    }
+    if (img instanceof PackedImage) {
+      return Histograms.maxFrequency(Histograms.of((PackedImage) img));
+    }
+    return Histograms.maxFrequency(createHistogramData());
+  }
+
+  /**
+   * Checks whether operations are limited to a region smaller than the image.
+   *
+   * @return true if there is a region of interest
+   */
+  private boolean hasRegion() {
+    return roiWidth != img.getCols() || roiHeight != img.getRows();
+  }
+
+  /**
+   * Returns transformations of a copy of the region of interest, as an image of its own.
+   *
+   * @return the transformations of the region
+   */
+  private ImageTransformations region() {
+    return new ImageTransformationsImpl(cropImage(roiLeft, roiTop, roiWidth, roiHeight));
+  }
+
+  /**
+   * Edits the region of interest in place: the region is copied out along with a margin of
+   * pixels around it, edited as an image of its own, and the region (without the margin) is
+   * pasted back. The margin gives filters the real neighbors of the pixels at the region's edge.
+   *
+   * @param halo how far around the region the edit reads
+   * @param edit the edit to make to the copy
+   * @return the image, with only the region changed
+   */
+  private ImageModel editRegion(int halo, Function<ImageTransformationsImpl, ImageModel> edit) {
+    int left = Math.max(0, roiLeft - halo);
+    int top = Math.max(0, roiTop - halo);
+    int right = Math.min(img.getCols(), roiLeft + roiWidth + halo);
+    int bottom = Math.min(img.getRows(), roiTop + roiHeight + halo);
+    ImageModel edited = edit.apply(new ImageTransformationsImpl(
+            cropImage(left, top, right - left, bottom - top)));
+    return paste(edited, left, top);
+  }
+
+  /**
+   * Copies a rectangular region of the image, ignoring the region of interest. Packed images
+   * are not copied at all: the region is a view of the image's pixels, which only copies them
+   * once it is written to.
+   *
+   * @param left the first column of the region
+   * @param top the first row of the region
+   * @param width the width of the region
+   * @param height the height of the region
+   * @return the region, as an image of its own
+   */
+  private ImageModel cropImage(int left, int top, int width, int height) {
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      if (left == 0 && top == 0 && width == img.getCols() && height == img.getRows()) {
+        return packed.getCopy();
+      }
+      return packed.view(left, top, width, height);
+    }
+    if (img instanceof DeepImage) {
+      char[][] planes = ((DeepImage) img).planes();
+      char[][] region = new char[3][width * height];
+      for (int c = 0; c < 3; c++) {
+        for (int i = 0; i < height; i++) {
+          System.arraycopy(planes[c], (top + i) * img.getCols() + left, region[c], i * width,
+                  width);
+        }
+      }
+      return new DeepImage(width, height, region, ((DeepImage) img).getMaxValue());
+    }
+    Pixel[][] region = new Pixel[height][width];
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        region[i][j] = img.getPixel(top + i, left + j);
+      }
+    }
+    return new Image(region);
+  }
+
+  /**
+   * Erodes or dilates the image with a rectangle.
+   *
+   * @param radiusX how far the rectangle reaches to the left and right of each pixel
+   * @param radiusY how far the rectangle reaches above and below each pixel
+   * @param dilate true to take the largest values, false to take the smallest
+   * @return the image
+   * @throws IllegalArgumentException if either distance is negative
+   */
+  private ImageModel morph(int radiusX, int radiusY, boolean dilate)
+          throws IllegalArgumentException {
+    if (radiusX < 0 || radiusY < 0) {
+      throw new IllegalArgumentException("The radius cannot be negative.");
+    }
+    if (hasRegion()) {
+      return editRegion(Math.max(radiusX, radiusY), t -> t.morph(radiusX, radiusY, dilate));
+    }
+    if (radiusX == 0 && radiusY == 0) {
+      return img;
+    }
+    int rows = img.getRows();
+    int cols = img.getCols();
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      packed.replacePixels(Morphology.filter(packed.buffer(), packed.offset(), packed.stride(),
+              cols, rows, radiusX, radiusY, dilate));
+      return img;
+    }
+    // channels deeper than 8 bits: take the extreme along the rows, then along the columns
+    int identity = dilate ? 0 : Integer.MAX_VALUE;
+    int[][] source = readPlanes();
+    int[][] planes = new int[3][rows * cols];
+    int[] across = new int[rows * cols];
+    for (int c = 0; c < 3; c++) {
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < cols; j++) {
+          int v = identity;
+          for (int y = Math.max(0, j - radiusX); y <= Math.min(cols - 1, j + radiusX); y++) {
+            v = extreme(v, source[c][i * cols + y], dilate);
+          }
+          across[i * cols + j] = v;
+        }
+      }
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < cols; j++) {
+          int v = identity;
+          for (int x = Math.max(0, i - radiusY); x <= Math.min(rows - 1, i + radiusY); x++) {
+            v = extreme(v, across[x * cols + j], dilate);
+          }
+          planes[c][i * cols + j] = v;
+        }
+      }
+    }
+    writePlanes(planes);
+    return img;
+  }
+
+  /**
+   * Takes the larger or smaller of two values.
+   *
+   * @param a the first value
+   * @param b the second value
+   * @param largest true to take the larger value, false to take the smaller
+   * @return the chosen value
+   */
+  private static int extreme(int a, int b, boolean largest) {
+    return largest ? Math.max(a, b) : Math.min(a, b);
+  }
+
+  /**
+   * Filters a packed image, reading every pixel's neighbors from the original pixels and writing
+   * the results to a new array, one band of rows per task. Neighbors outside the image count as
+   * black, and each result is truncated and clamped to the image's range.
+   *
+   * @param packed the image to filter
+   * @param filter the kernel, centered on the pixel being filtered
+   */
+  private void filterPacked(PackedImage packed, double[][] filter) {
+    int rows = packed.getRows();
+    int cols = packed.getCols();
+    int max = packed.getMaxValue();
+    int kRows = filter.length;
+    int kCols = filter[0].length;
+    int[] src = packed.buffer();
+    int offset = packed.offset();
+    int stride = packed.stride();
+    int[] dst = new int[rows * cols];
+    RowBands.forEach(rows, cols * kRows * kCols, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        for (int j = 0; j < cols; j++) {
+          double r = 0;
+          double g = 0;
+          double b = 0;
+          for (int x = 0; x < kRows; x++) {
+            int row = i - (kRows / 2 - x);
+            if (row < 0 || row >= rows) {
+              continue;
+            }
+            for (int y = 0; y < kCols; y++) {
+              int col = j - (kCols / 2 - y);
+              if (col < 0 || col >= cols) {
+                continue;
+              }
+              int p = src[offset + row * stride + col];
+              double weight = filter[x][y];
+              r += ((p >> 16) & 0xFF) * weight;
+              g += ((p >> 8) & 0xFF) * weight;
+              b += (p & 0xFF) * weight;
+            }
+          }
+          dst[i * cols + j] = (src[offset + i * stride + j] & 0xFF000000)
+                  | (clamp((int) r, max) << 16) | (clamp((int) g, max) << 8)
+                  | clamp((int) b, max);
+        }
+      }
+    });
+    packed.replacePixels(dst);
+  }
+
+  /**
+   * Blends two packed pixels, all four channels at once: red and blue (and alpha and green) sit
+   * 16 bits apart, so each pair is weighted with a single multiplication without carrying into
+   * each other.
+   *
+   * @param original the original pixel
+   * @param edited the edited pixel
+   * @param weight the weight of the edited pixel, from 0 to 256
+   * @return the blended pixel
+   */
+  private static int blend(int original, int edited, int weight) {
+    int keep = 256 - weight;
+    int rb = ((edited & 0xFF00FF) * weight + (original & 0xFF00FF) * keep) >>> 8;
+    int ag = ((edited >>> 8) & 0xFF00FF) * weight + ((original >>> 8) & 0xFF00FF) * keep;
+    return (ag & 0xFF00FF00) | (rb & 0xFF00FF);
+  }
+
+  /**
+   * Clamps a value to the range of a channel.
+   *
+   * @param v the value
+   * @param max the maximum value of the channel
+   * @return the clamped value
+   */
+  private static int clamp(int v, int max) {
+    return Math.max(0, Math.min(v, max));
+  }
+
+  /**
+   * Creates a lookup table which maps every value to itself.
+   *
+   * @param max the largest value, which is at least 255 so packed images can use the table
+   * @return the lookup table
+   */
+  private static int[] identityLut(int max) {
+    int[] lut = new int[Math.max(256, max + 1)];
+    for (int v = 0; v < lut.length; v++) {
+      lut[v] = v;
+    }
+    return lut;
+  }
+
+  /**
+   * Remaps every channel of a packed image through lookup tables, in a single pass over its
+   * pixels. Alpha is left untouched.
+   *
+   * @param packed the image to remap
+   * @param red the new value for each red value
+   * @param green the new value for each green value
+   * @param blue the new value for each blue value
+   */
+  private void applyLut(PackedImage packed, int[] red, int[] green, int[] blue) {
+    int[] src = packed.pixels();
+    int[] dst = packed.pixelsForOverwrite();
+    for (int i = 0; i < src.length; i++) {
+      int p = src[i];
+      dst[i] = (p & 0xFF000000) | (red[(p >> 16) & 0xFF] << 16)
+              | (green[(p >> 8) & 0xFF] << 8) | blue[p & 0xFF];
+    }
+  }
+
+  /**
+   * Remaps every channel of a deep image through a lookup table, a plane at a time.
+   *
+   * @param deep the image to remap
+   * @param lut the new value for each value
+   */
+  private void applyLut(DeepImage deep, int[] lut) {
+    char[][] src = deep.planes();
+    char[][] dst = new char[3][];
+    for (int c = 0; c < 3; c++) {
+      char[] in = src[c];
+      char[] out = new char[in.length];
+      for (int i = 0; i < in.length; i++) {
+        out[i] = (char) lut[in[i]];
+      }
+      dst[c] = out;
+    }
+    deep.replacePlanes(dst);
+  }
+
+  /**
+   * Gets the maximum value of the image's channels.
+   *
+   * @return the maximum value
+   */
+  private int maxValue() {
+    if (img instanceof PackedImage) {
+      return ((PackedImage) img).getMaxValue();
+    }
+    if (img instanceof DeepImage) {
+      return ((DeepImage) img).getMaxValue();
+    }
+    return img.getPixel(0, 0).getMaxValue();
+  }
+
+  /**
+   * Reads the red, green and blue values of an image which is not packed into a plane of ints
+   * each, row by row. Deep images are read straight from their planes.
+   *
+   * @return the red, green and blue planes, which belong to the caller
+   */
+  private int[][] readPlanes() {
+    int rows = img.getRows();
+    int cols = img.getCols();
+    int[][] planes = new int[3][rows * cols];
+    if (img instanceof DeepImage) {
+      char[][] src = ((DeepImage) img).planes();
+      for (int c = 0; c < 3; c++) {
+        char[] in = src[c];
+        int[] out = planes[c];
+        for (int i = 0; i < out.length; i++) {
+          out[i] = in[i];
+        }
+      }
+      return planes;
+    }
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        Pixel p = img.getPixel(i, j);
+        planes[0][i * cols + j] = p.getRed();
+        planes[1][i * cols + j] = p.getGreen();
+        planes[2][i * cols + j] = p.getBlue();
+      }
+    }
+    return planes;
+  }
+
+  /**
+   * Writes planes of red, green and blue values, each between 0 and the image's maximum value,
+   * over every pixel of an image which is not packed.
+   *
+   * @param planes the new red, green and blue planes, row by row
+   */
+  private void writePlanes(int[][] planes) {
+    if (img instanceof DeepImage) {
+      ((DeepImage) img).replacePlanes(narrow(planes));
+      return;
+    }
+    int cols = img.getCols();
+    int max = maxValue();
+    for (int i = 0; i < img.getRows(); i++) {
+      for (int j = 0; j < cols; j++) {
+        int k = i * cols + j;
+        img.setPixel(i, j, new Pixel(planes[0][k], planes[1][k], planes[2][k], max));
+      }
+    }
+  }
+
+  /**
+   * Creates a new image from planes of red, green and blue values: a packed image if the values
+   * fit in 8 bits, a deep image if they fit in 16 bits, and an image of pixels otherwise.
+   *
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param planes the red, green and blue planes, row by row
+   * @param maxValue the maximum value of each channel
+   * @return the image
+   */
+  private static ImageModel newImage(int width, int height, int[][] planes, int maxValue) {
+    if (maxValue <= 255) {
+      int[] data = new int[width * height];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = 0xFF000000 | (planes[0][i] << 16) | (planes[1][i] << 8) | planes[2][i];
+      }
+      return new PackedImage(width, height, data, maxValue);
+    }
+    if (maxValue <= DeepImage.MAX_VALUE) {
+      return new DeepImage(width, height, narrow(planes), maxValue);
+    }
+    Pixel[][] pixels = new Pixel[height][width];
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        int k = i * width + j;
+        pixels[i][j] = new Pixel(planes[0][k], planes[1][k], planes[2][k], maxValue);
+      }
+    }
+    return new Image(pixels);
+  }
+
+  /**
+   * Copies planes of values which fit in 16 bits into planes of chars.
+   *
+   * @param planes the planes
+   * @return the planes as chars
+   */
+  private static char[][] narrow(int[][] planes) {
+    char[][] narrowed = new char[planes.length][];
+    for (int c = 0; c < planes.length; c++) {
+      int[] in = planes[c];
+      char[] out = new char[in.length];
+      for (int i = 0; i < in.length; i++) {
+        out[i] = (char) in[i];
+      }
+      narrowed[c] = out;
+    }
+    return narrowed;
+  }
+
+  /**
+   * Filters one plane of values with a kernel, as filterPacked() does for packed pixels:
+   * neighbors outside the image count as black, and each result is truncated and clamped to the
+   * image's range.
+   *
+   * @param src the values, row by row
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @param filter the kernel, centered on the value being filtered
+   * @param max the maximum value
+   * @return the filtered values, in a new array
+   */
+  private static int[] filterPlane(int[] src, int cols, int rows, double[][] filter, int max) {
+    int kRows = filter.length;
+    int kCols = filter[0].length;
+    int[] dst = new int[src.length];
+    RowBands.forEach(rows, cols * kRows * kCols, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        for (int j = 0; j < cols; j++) {
+          double v = 0;
+          for (int x = 0; x < kRows; x++) {
+            int row = i - (kRows / 2 - x);
+            if (row < 0 || row >= rows) {
+              continue;
+            }
+            for (int y = 0; y < kCols; y++) {
+              int col = j - (kCols / 2 - y);
+              if (col >= 0 && col < cols) {
+                v += src[row * cols + col] * filter[x][y];
+              }
+            }
+          }
+          dst[i * cols + j] = clamp((int) v, max);
+        }
+      }
+    });
+    return dst;
+  }
 }
@@ -0,0 +1,51 @@
+package controller.commands;
+
+import model.ImageCollectionModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+
+/**
+ * Class to represent the command to automatically stretch the contrast of an image, using black
+ * and white points taken from its histogram, and add it to the ImageCollectionModel.
+ */
+public class LevelsCmd implements ImageProcessingCommand {
+
+  private final String newName;
+  private final String orig;
+  private final double clipPercent;
+
+  /**
+   * Constructs a LevelsCmd object, which requires a name of the original image, a name for the
+   * adjusted image, and the percentage of pixels which may be clipped at each end of the range.
+   *
+   * @param orig the name of the image to adjust
+   * @param newName the name of the adjusted image
+   * @param clipPercent the percentage of pixels allowed to become pure black or pure white
+   * @throws IllegalArgumentException if either name is null or the percentage is out of range
+   */
+  public LevelsCmd(String orig, String newName, double clipPercent)
+          throws IllegalArgumentException {
+    if (orig == null || newName == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (!(clipPercent >= 0 && clipPercent < 50)) {
+      throw new IllegalArgumentException("Clip percentage must be at least 0 and less than 50.");
+    }
+    this.newName = newName;
+    this.orig = orig;
+    this.clipPercent = clipPercent;
+  }
+
+  /**
+   * Stretches the contrast of an Image in an ImageCollection and adds it under its new name using
+   * ImageCollectionModel's addImage().
+   *
+   * @param model the ImageCollectionModel to execute the command on
+   * @throws IllegalArgumentException if the model runs into an error at any point
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
+    model.addImage(newName, transformer.autoLevels(clipPercent));
+  }
+}
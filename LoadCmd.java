@@ -1,16 +1,24 @@
 package controller.commands;
 
-import java.awt.Color;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import model.DeepImage;
+import model.PackedImage;
 import model.Pixel;
 import model.Image;
 import model.ImageCollectionModel;
 import model.ImageModel;
+import model.NativeImageFile;
 import java.io.File;
 import java.io.IOException;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
 import javax.imageio.ImageIO;
 
 /**
@@ -47,8 +55,12 @@ public class LoadCmd implements ImageProcessingCommand {
    */
   @Override
   public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    // the file may still be being written by an earlier save
+    EncoderPool.await(path);
     if (path.endsWith(".ppm")) {
       model.addImage(name, this.loadPPM());
+    } else if (path.endsWith(NativeImageFile.EXTENSION)) {
+      model.addImage(name, this.loadNative());
     } else {
       model.addImage(name, this.loadImage());
     }
@@ -62,12 +74,16 @@ public class LoadCmd implements ImageProcessingCommand {
    * @throws IllegalArgumentException if the file cannot be found
    */
   private ImageModel loadPPM() throws IllegalArgumentException {
-    Scanner sc;
+    byte[] bytes;
     try {
-      sc = new Scanner(new FileInputStream(path));
-    } catch (FileNotFoundException e) {
+      bytes = Files.readAllBytes(Paths.get(path));
+    } catch (IOException | InvalidPathException e) {
       throw new IllegalArgumentException("File not found!");
     }
+    if (bytes.length > 1 && bytes[0] == 'P' && bytes[1] == '6') {
+      return loadBinaryPPM(bytes);
+    }
+    Scanner sc = new Scanner(new ByteArrayInputStream(bytes));
 
     StringBuilder builder = new StringBuilder();
     //read the file line by line, and populate a string. This will throw away any comment lines
@@ -85,6 +101,34 @@ public class LoadCmd implements ImageProcessingCommand {
     int cols = sc.nextInt();
     int rows = sc.nextInt();
     int maxValue = sc.nextInt();
+    if (maxValue <= 255) {
+      int[] data = new int[rows * cols];
+      for (int i = 0; i < data.length; i++) {
+        int r = sc.nextInt();
+        int g = sc.nextInt();
+        int b = sc.nextInt();
+        if (r < 0 || g < 0 || b < 0 || r > maxValue || g > maxValue || b > maxValue) {
+          throw new IllegalArgumentException("Pixel values must be between 0 and the maximum " +
+                  "value.");
+        }
+        data[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+      }
+      return new PackedImage(cols, rows, data, maxValue);
+    }
+    if (maxValue <= DeepImage.MAX_VALUE) {
+      char[][] planes = new char[3][rows * cols];
+      for (int i = 0; i < rows * cols; i++) {
+        for (int c = 0; c < 3; c++) {
+          int v = sc.nextInt();
+          if (v < 0 || v > maxValue) {
+            throw new IllegalArgumentException("Pixel values must be between 0 and the maximum " +
+                    "value.");
+          }
+          planes[c][i] = (char) v;
+        }
+      }
+      return new DeepImage(cols, rows, planes, maxValue);
+    }
     Pixel[][] pixels = new Pixel[rows][cols];
 
     for (int i = 0; i < rows; i++) {
@@ -99,6 +143,100 @@ public class LoadCmd implements ImageProcessingCommand {
     return new Image(pixels);
   }
 
+  /**
+   * Helper method to read a binary (P6) PPM file. Each value takes one byte if the maximum value
+   * is below 256, and two bytes (most significant first) otherwise, as in 16-bit PPMs.
+   *
+   * @param bytes the contents of the file
+   * @return ImageModel the image, packed if it has 8 bits per channel and deep otherwise
+   * @throws IllegalArgumentException if the file is not a valid P6 PPM
+   */
+  private ImageModel loadBinaryPPM(byte[] bytes) throws IllegalArgumentException {
+    // the header is the magic number and three numbers, separated by whitespace and comments
+    int[] header = new int[3];
+    int at = 2;
+    for (int n = 0; n < 3; n++) {
+      while (at < bytes.length && (Character.isWhitespace(bytes[at]) || bytes[at] == '#')) {
+        if (bytes[at] == '#') {
+          while (at < bytes.length && bytes[at] != '\n') {
+            at++;
+          }
+        }
+        at++;
+      }
+      if (at >= bytes.length || bytes[at] < '0' || bytes[at] > '9') {
+        throw new IllegalArgumentException("Invalid PPM header.");
+      }
+      while (at < bytes.length && bytes[at] >= '0' && bytes[at] <= '9') {
+        header[n] = header[n] * 10 + (bytes[at++] - '0');
+      }
+    }
+    // a single whitespace character separates the header from the pixels
+    at++;
+    int cols = header[0];
+    int rows = header[1];
+    int maxValue = header[2];
+    if (cols < 1 || rows < 1 || maxValue < 1 || maxValue > DeepImage.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid PPM header.");
+    }
+    int size = maxValue < 256 ? 1 : 2;
+    if ((long) rows * cols * 3 * size > bytes.length - at) {
+      throw new IllegalArgumentException("The PPM file is missing pixels.");
+    }
+    int largest = 0;
+    if (size == 1) {
+      int[] data = new int[rows * cols];
+      for (int i = 0, b = at; i < data.length; i++, b += 3) {
+        int r = bytes[b] & 0xFF;
+        int g = bytes[b + 1] & 0xFF;
+        int bl = bytes[b + 2] & 0xFF;
+        largest = Math.max(largest, Math.max(r, Math.max(g, bl)));
+        data[i] = 0xFF000000 | (r << 16) | (g << 8) | bl;
+      }
+      checkLargest(largest, maxValue);
+      return new PackedImage(cols, rows, data, maxValue);
+    }
+    char[][] planes = new char[3][rows * cols];
+    for (int i = 0, b = at; i < rows * cols; i++) {
+      for (int c = 0; c < 3; c++, b += 2) {
+        char v = (char) (((bytes[b] & 0xFF) << 8) | (bytes[b + 1] & 0xFF));
+        largest = Math.max(largest, v);
+        planes[c][i] = v;
+      }
+    }
+    checkLargest(largest, maxValue);
+    return new DeepImage(cols, rows, planes, maxValue);
+  }
+
+  /**
+   * Checks that no value read was above the maximum value.
+   *
+   * @param largest the largest value read
+   * @param maxValue the maximum value
+   * @throws IllegalArgumentException if a value is above the maximum value
+   */
+  private void checkLargest(int largest, int maxValue) throws IllegalArgumentException {
+    if (largest > maxValue) {
+      throw new IllegalArgumentException("Pixel values must be between 0 and the maximum " +
+              "value.");
+    }
+  }
+
+  /**
+   * Helper method to read a file in the application's own format, which maps the file into
+   * memory and copies its pixels out without parsing them.
+   *
+   * @return ImageModel the image, packed if it has 8 bits per channel and deep otherwise
+   * @throws IllegalArgumentException if the file cannot be read or is not in the format
+   */
+  private ImageModel loadNative() throws IllegalArgumentException {
+    try {
+      return NativeImageFile.read(Paths.get(path));
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException("File not found!");
+    }
+  }
+
   private ImageModel loadImage() throws IllegalArgumentException {
     BufferedImage img;
     try {
@@ -110,21 +248,88 @@ public class LoadCmd implements ImageProcessingCommand {
       throw new IllegalArgumentException("File type not supported.");
     }
 
-    // Convert img to ImageModel
+    // Convert img to ImageModel, reading all of its pixels in one pass
+    if (img.getColorModel().getComponentSize(0) > 8) {
+      return loadDeepImage(img);
+    }
+    return new PackedImage(img.getWidth(), img.getHeight(), toPacked(img), 255);
+  }
+
+  /**
+   * Converts the pixels of an image read from a file to packed 0xAARRGGBB values, keeping their
+   * alpha. The layouts ImageIO decodes to are read straight from the image's raster; any other
+   * layout goes through the image's color model.
+   *
+   * @param img the image read from the file
+   * @return the packed pixels, row by row
+   */
+  static int[] toPacked(BufferedImage img) {
     int rows = img.getHeight();
     int cols = img.getWidth();
-    Pixel[][] pixels = new Pixel[rows][cols];
+    int size = rows * cols;
+    DataBuffer buffer = img.getRaster().getDataBuffer();
+    boolean whole = img.getRaster().getParent() == null && buffer.getNumBanks() == 1;
+    int type = img.getType();
+    if (whole && buffer instanceof DataBufferInt && buffer.getSize() == size
+            && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)) {
+      int[] data = ((DataBufferInt) buffer).getData().clone();
+      if (type == BufferedImage.TYPE_INT_RGB) {
+        for (int i = 0; i < size; i++) {
+          data[i] |= 0xFF000000;
+        }
+      }
+      return data;
+    }
+    if (whole && buffer instanceof DataBufferByte) {
+      byte[] bytes = ((DataBufferByte) buffer).getData();
+      int[] data = new int[size];
+      if (type == BufferedImage.TYPE_4BYTE_ABGR && bytes.length == size * 4) {
+        for (int i = 0, b = 0; i < size; i++, b += 4) {
+          data[i] = ((bytes[b] & 0xFF) << 24) | ((bytes[b + 3] & 0xFF) << 16)
+                  | ((bytes[b + 2] & 0xFF) << 8) | (bytes[b + 1] & 0xFF);
+        }
+        return data;
+      }
+      if (type == BufferedImage.TYPE_3BYTE_BGR && bytes.length == size * 3) {
+        for (int i = 0, b = 0; i < size; i++, b += 3) {
+          data[i] = 0xFF000000 | ((bytes[b + 2] & 0xFF) << 16) | ((bytes[b + 1] & 0xFF) << 8)
+                  | (bytes[b] & 0xFF);
+        }
+        return data;
+      }
+    }
+    // getRGB gives opaque pixels an alpha of 255, and keeps the alpha of transparent ones
+    return img.getRGB(0, 0, cols, rows, null, 0, cols);
+  }
 
-    for (int i = 0; i < rows; i++) {
-      for (int j = 0; j < cols; j++) {
-        Color c = new Color(img.getRGB(j, i));
-        int r = c.getRed();
-        int g = c.getGreen();
-        int b = c.getBlue();
-        Pixel pixel = new Pixel(r, g, b, 255);
-        pixels[i][j] = pixel;
+  /**
+   * Helper method to convert an image with more than 8 bits per channel, such as a 16-bit PNG,
+   * reading each channel's samples from the raster in one call. Grey images have their one
+   * channel copied to all three, and alpha is dropped.
+   *
+   * @param img the image read from the file
+   * @return ImageModel the image as a deep image, with the file's maximum value
+   */
+  static ImageModel loadDeepImage(BufferedImage img) {
+    int rows = img.getHeight();
+    int cols = img.getWidth();
+    Raster raster = img.getRaster();
+    int colors = img.getColorModel().getNumColorComponents();
+    int maxValue = (1 << Math.min(16, img.getColorModel().getComponentSize(0))) - 1;
+    char[][] planes = new char[3][];
+    int[] samples = null;
+    for (int c = 0; c < 3; c++) {
+      if (c < colors) {
+        samples = raster.getSamples(0, 0, cols, rows, c, samples);
+        char[] plane = new char[rows * cols];
+        for (int i = 0; i < plane.length; i++) {
+          plane[i] = (char) Math.min(samples[i], maxValue);
+        }
+        planes[c] = plane;
+      } else {
+        planes[c] = planes[0].clone();
       }
     }
-    return new Image(pixels);
+    return new DeepImage(cols, rows, planes, maxValue);
   }
 }
@@ -0,0 +1,322 @@
+package controller.commands;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import model.DeepImage;
+import model.ImageCollectionModel;
+import model.ImageModel;
+import model.ImageTransformationsImpl;
+import model.NativeImageFile;
+import model.PackedImage;
+import model.ScanlineDownscaler;
+
+/**
+ * Class to represent the command to load an image from a given file at a reduced size, so that it
+ * fits within a given width and height, and add it to an ImageCollectionModel. Unlike loading the
+ * image and then downsizing it, the full-size image is never held in memory: PPM files are
+ * shrunk row by row as they are parsed, and other files are decoded at a fraction of their size
+ * before being shrunk the rest of the way. Images which already fit are loaded at their own size.
+ * Images with more than 8 bits per channel keep them, as they do when loaded in full.
+ */
+public class LoadScaledCmd implements ImageProcessingCommand {
+
+  private final String path;
+  private final String name;
+  private final int maxWidth;
+  private final int maxHeight;
+
+  /**
+   * Constructs a LoadScaledCmd object, which requires a pathname to a file, a name for the image,
+   * and the size the image must fit within.
+   *
+   * @param path the pathname to the file to load from
+   * @param name the name to give the image
+   * @param maxWidth the largest width the loaded image may have
+   * @param maxHeight the largest height the loaded image may have
+   * @throws IllegalArgumentException if either name is null or a dimension is not positive
+   */
+  public LoadScaledCmd(String path, String name, int maxWidth, int maxHeight)
+          throws IllegalArgumentException {
+    if (path == null || name == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (maxWidth < 1 || maxHeight < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    this.path = path;
+    this.name = name;
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+  }
+
+  /**
+   * Loads the image at a reduced size and adds it to the ImageCollectionModel using its addImage
+   * method.
+   *
+   * @param model the map of images and their names
+   * @throws IllegalArgumentException if the file cannot be read or its type is not supported
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    // the file may still be being written by an earlier save
+    EncoderPool.await(path);
+    if (path.endsWith(".ppm")) {
+      model.addImage(name, this.loadPPM());
+    } else if (path.endsWith(NativeImageFile.EXTENSION)) {
+      model.addImage(name, this.loadNative());
+    } else {
+      model.addImage(name, this.loadImage());
+    }
+  }
+
+  /**
+   * Streams a PPM file through a downscaler, parsing one row at a time. Both plain (P3) and
+   * binary (P6) files are read; binary values take two bytes each, most significant first, when
+   * the maximum value is above 255.
+   *
+   * @return the downscaled image
+   * @throws IllegalArgumentException if the file cannot be found or is not a valid PPM file
+   */
+  private ImageModel loadPPM() throws IllegalArgumentException {
+    InputStream in;
+    try {
+      in = new BufferedInputStream(new FileInputStream(path), 1 << 16);
+    } catch (FileNotFoundException e) {
+      throw new IllegalArgumentException("File not found!");
+    }
+    try (InputStream ppm = in) {
+      String magic = nextToken(ppm);
+      boolean binary = "P6".equals(magic);
+      if (!binary && !"P3".equals(magic)) {
+        throw new IllegalArgumentException("Only P3 and P6 PPM files are supported.");
+      }
+      int cols = nextInt(ppm);
+      int rows = nextInt(ppm);
+      // reading the maximum value also consumes the one whitespace character after it, which is
+      // all that separates a binary file's header from its pixels
+      int maxValue = nextInt(ppm);
+      if (cols < 1 || rows < 1) {
+        throw new IllegalArgumentException("Dimensions must be greater than 0.");
+      }
+      if (binary && (maxValue < 1 || maxValue > DeepImage.MAX_VALUE)) {
+        throw new IllegalArgumentException("Invalid PPM header.");
+      }
+      int[] size = fit(cols, rows);
+      ScanlineDownscaler scaler = new ScanlineDownscaler(cols, rows, size[0], size[1], maxValue);
+      int[] rgb = new int[cols * 3];
+      byte[] bytes = binary ? new byte[rgb.length * (maxValue < 256 ? 1 : 2)] : null;
+      for (int i = 0; i < rows; i++) {
+        if (binary) {
+          readRow(ppm, bytes, rgb);
+        } else {
+          for (int j = 0; j < rgb.length; j++) {
+            rgb[j] = nextInt(ppm);
+          }
+        }
+        for (int v : rgb) {
+          if (v > maxValue) {
+            throw new IllegalArgumentException("Pixel values must be between 0 and the maximum " +
+                    "value.");
+          }
+        }
+        scaler.addRow(rgb);
+      }
+      return scaler.getImage();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File reading failed. Please enter a new pathname.");
+    }
+  }
+
+  /**
+   * Reads a file in the application's own format, which is read in bulk rather than decoded, and
+   * averages it down to size.
+   *
+   * @return the downscaled image
+   * @throws IllegalArgumentException if the file cannot be read or is not in the format
+   */
+  private ImageModel loadNative() throws IllegalArgumentException {
+    ImageModel img;
+    try {
+      img = NativeImageFile.read(Paths.get(path));
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException("File not found!");
+    }
+    int[] size = fit(img.getCols(), img.getRows());
+    if (size[0] == img.getCols() && size[1] == img.getRows()) {
+      return img;
+    }
+    return new ImageTransformationsImpl(img).resize(size[0], size[1], Resampling.BOX);
+  }
+
+  /**
+   * Decodes an image through ImageIO, skipping pixels as it is decoded so that it comes out at
+   * no more than about twice the size it must fit within, then averages it down the rest of the
+   * way. Skipping pixels alone would alias, so the final reduction is left to an area average.
+   *
+   * @return the downscaled image
+   * @throws IllegalArgumentException if the file cannot be read or its type is not supported
+   */
+  private ImageModel loadImage() throws IllegalArgumentException {
+    BufferedImage img;
+    int[] size;
+    try (ImageInputStream in = ImageIO.createImageInputStream(new File(path))) {
+      if (in == null) {
+        throw new IllegalArgumentException("File reading failed. Please enter a new pathname.");
+      }
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        throw new IllegalArgumentException("File type not supported.");
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        int cols = reader.getWidth(0);
+        int rows = reader.getHeight(0);
+        size = fit(cols, rows);
+        int step = Math.max(1, Math.min(cols / size[0], rows / size[1]) / 2);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+        img = reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File reading failed. Please enter a new pathname.");
+    }
+
+    int rows = img.getHeight();
+    int cols = img.getWidth();
+    // deep images are resampled as deep images, rather than being cut to 8 bits first
+    ImageModel decoded = img.getColorModel().getComponentSize(0) > 8 ? LoadCmd.loadDeepImage(img)
+            : new PackedImage(cols, rows, LoadCmd.toPacked(img), 255);
+    if (size[0] == cols && size[1] == rows) {
+      return decoded;
+    }
+    return new ImageTransformationsImpl(decoded).resize(size[0], size[1], Resampling.BOX);
+  }
+
+  /**
+   * Works out the size of the loaded image: the largest size with the same shape as the original
+   * which fits within the maximum width and height, or the original size if it already fits.
+   *
+   * @param cols the width of the original image
+   * @param rows the height of the original image
+   * @return the width and height of the loaded image
+   */
+  private int[] fit(int cols, int rows) {
+    double scale = Math.min(1.0, Math.min((double) maxWidth / cols, (double) maxHeight / rows));
+    int width = Math.max(1, Math.min(cols, (int) Math.round(cols * scale)));
+    int height = Math.max(1, Math.min(rows, (int) Math.round(rows * scale)));
+    return new int[]{width, height};
+  }
+
+  /**
+   * Reads one row of a binary PPM file.
+   *
+   * @param in the file
+   * @param bytes where to read the row's bytes, one or two per value
+   * @param rgb where to put the row's values
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if the file ends first
+   */
+  private static void readRow(InputStream in, byte[] bytes, int[] rgb) throws IOException {
+    int n = 0;
+    while (n < bytes.length) {
+      int read = in.read(bytes, n, bytes.length - n);
+      if (read < 0) {
+        throw new IllegalArgumentException("The PPM file is missing pixels.");
+      }
+      n += read;
+    }
+    if (bytes.length == rgb.length) {
+      for (int j = 0; j < rgb.length; j++) {
+        rgb[j] = bytes[j] & 0xFF;
+      }
+    } else {
+      for (int j = 0, b = 0; j < rgb.length; j++, b += 2) {
+        rgb[j] = (bytes[b] & 0xFF) << 8 | (bytes[b + 1] & 0xFF);
+      }
+    }
+  }
+
+  /**
+   * Reads the next whitespace-separated token of a PPM file, skipping comments.
+   *
+   * @param in the file
+   * @return the token
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if the file ends first
+   */
+  private static String nextToken(InputStream in) throws IOException {
+    int c = skipSpace(in);
+    StringBuilder token = new StringBuilder();
+    while (c != -1 && !Character.isWhitespace(c)) {
+      token.append((char) c);
+      c = in.read();
+    }
+    return token.toString();
+  }
+
+  /**
+   * Reads the next non-negative integer of a PPM file, skipping comments.
+   *
+   * @param in the file
+   * @return the integer
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if the file ends first or the token is not a number
+   */
+  private static int nextInt(InputStream in) throws IOException {
+    int c = skipSpace(in);
+    int value = 0;
+    int digits = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      if (value < 0) {
+        throw new IllegalArgumentException("Number too large in PPM file.");
+      }
+      digits++;
+      c = in.read();
+    }
+    if (digits == 0 || (c != -1 && !Character.isWhitespace(c))) {
+      throw new IllegalArgumentException("Invalid number in PPM file.");
+    }
+    return value;
+  }
+
+  /**
+   * Skips whitespace and comments (from a '#' to the end of its line).
+   *
+   * @param in the file
+   * @return the first character after them
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if the file ends first
+   */
+  private static int skipSpace(InputStream in) throws IOException {
+    int c = in.read();
+    while (c != -1) {
+      if (c == '#') {
+        while (c != -1 && c != '\n' && c != '\r') {
+          c = in.read();
+        }
+      } else if (!Character.isWhitespace(c)) {
+        return c;
+      } else {
+        c = in.read();
+      }
+    }
+    throw new IllegalArgumentException("Unexpected end of PPM file.");
+  }
+}
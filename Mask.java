@@ -0,0 +1,274 @@
+package model;
+
+/**
+ * A mask selecting part of an image, held as one bit per pixel. A pixel is selected when it is
+ * black in the mask image. Along with the bits, the mask records the bounding box of the selected
+ * pixels, so edits can be limited to that region, and applying the edit only has to visit the
+ * selected pixels. Masks made from packed images are cached on the image, so a mask image used
+ * for several edits is only converted once.
+ */
+public final class Mask {
+
+  private final int cols;
+  private final int rows;
+  private final int wordsPerRow;
+  private final long[] bits;
+  private final int left;
+  private final int top;
+  private final int right;
+  private final int bottom;
+
+  /**
+   * Constructs a mask from its bits, working out its bounding box.
+   *
+   * @param cols the width of the mask
+   * @param rows the height of the mask
+   * @param bits the bits of each row, starting a new word at each row
+   */
+  private Mask(int cols, int rows, long[] bits) {
+    this.cols = cols;
+    this.rows = rows;
+    this.wordsPerRow = (cols + 63) / 64;
+    this.bits = bits;
+    int minRow = rows;
+    int maxRow = -1;
+    int minCol = cols;
+    int maxCol = -1;
+    for (int i = 0; i < rows; i++) {
+      int first = -1;
+      int last = -1;
+      for (int w = 0; w < wordsPerRow; w++) {
+        long word = bits[i * wordsPerRow + w];
+        if (word != 0) {
+          if (first < 0) {
+            first = w * 64 + Long.numberOfTrailingZeros(word);
+          }
+          last = w * 64 + 63 - Long.numberOfLeadingZeros(word);
+        }
+      }
+      if (first >= 0) {
+        minRow = Math.min(minRow, i);
+        maxRow = i;
+        minCol = Math.min(minCol, first);
+        maxCol = Math.max(maxCol, last);
+      }
+    }
+    if (maxRow < 0) {
+      this.left = 0;
+      this.top = 0;
+      this.right = 0;
+      this.bottom = 0;
+    } else {
+      this.left = minCol;
+      this.top = minRow;
+      this.right = maxCol + 1;
+      this.bottom = maxRow + 1;
+    }
+  }
+
+  /**
+   * Returns the mask of a mask image, in which every black pixel is selected.
+   *
+   * @param img the mask image
+   * @return the mask
+   */
+  public static Mask of(ImageModel img) {
+    int cols = img.getCols();
+    int rows = img.getRows();
+    int wordsPerRow = (cols + 63) / 64;
+    long[] bits = new long[rows * wordsPerRow];
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      Mask cached = packed.cachedMask();
+      if (cached != null) {
+        return cached;
+      }
+      int[] pixels = packed.buffer();
+      int offset = packed.offset();
+      int stride = packed.stride();
+      // black means 0 out of 255, as with the Pixel comparison below
+      if (packed.getMaxValue() == 255) {
+        RowBands.forEach(rows, cols, (from, to) -> {
+          for (int i = from; i < to; i++) {
+            for (int j = 0, p = offset + i * stride; j < cols; j++, p++) {
+              if ((pixels[p] & 0xFFFFFF) == 0) {
+                bits[i * wordsPerRow + (j >> 6)] |= 1L << j;
+              }
+            }
+          }
+        });
+      }
+      Mask mask = new Mask(cols, rows, bits);
+      packed.cacheMask(mask);
+      return mask;
+    }
+    Pixel black = new Pixel(0, 0, 0, 255);
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        if (img.getPixel(i, j).equals(black)) {
+          bits[i * wordsPerRow + (j >> 6)] |= 1L << j;
+        }
+      }
+    }
+    return new Mask(cols, rows, bits);
+  }
+
+  /**
+   * Returns the width of the mask.
+   *
+   * @return the number of columns
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Returns the height of the mask.
+   *
+   * @return the number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Checks whether the mask selects no pixels at all.
+   *
+   * @return true if no pixel is selected
+   */
+  public boolean isEmpty() {
+    return right == 0;
+  }
+
+  /**
+   * Returns the first column of the bounding box of the selected pixels.
+   *
+   * @return the leftmost selected column, or 0 if the mask is empty
+   */
+  public int getLeft() {
+    return left;
+  }
+
+  /**
+   * Returns the first row of the bounding box of the selected pixels.
+   *
+   * @return the topmost selected row, or 0 if the mask is empty
+   */
+  public int getTop() {
+    return top;
+  }
+
+  /**
+   * Returns one past the last column of the bounding box of the selected pixels.
+   *
+   * @return the column after the rightmost selected column, or 0 if the mask is empty
+   */
+  public int getRight() {
+    return right;
+  }
+
+  /**
+   * Returns one past the last row of the bounding box of the selected pixels.
+   *
+   * @return the row after the bottommost selected row, or 0 if the mask is empty
+   */
+  public int getBottom() {
+    return bottom;
+  }
+
+  /**
+   * Checks whether a pixel is selected.
+   *
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   * @return true if the pixel is selected
+   */
+  public boolean isSet(int row, int col) {
+    if (row < 0 || col < 0 || row >= rows || col >= cols) {
+      throw new IllegalArgumentException("Out of range.");
+    }
+    return (bits[row * wordsPerRow + (col >> 6)] & (1L << col)) != 0;
+  }
+
+  /**
+   * Returns a mask with the selected area grown by a rectangle: every pixel within the given
+   * distances of a selected pixel becomes selected.
+   *
+   * @param radiusX how far the selection grows to the left and right
+   * @param radiusY how far the selection grows up and down
+   * @return the grown mask
+   * @throws IllegalArgumentException if either distance is negative
+   */
+  public Mask dilate(int radiusX, int radiusY) throws IllegalArgumentException {
+    return morph(radiusX, radiusY, true);
+  }
+
+  /**
+   * Returns a mask with the selected area shrunk by a rectangle: only pixels whose every pixel
+   * within the given distances is selected stay selected. Pixels outside the mask count as
+   * selected, so the selection does not shrink away from the mask's edges.
+   *
+   * @param radiusX how far the selection shrinks from the left and right
+   * @param radiusY how far the selection shrinks from the top and bottom
+   * @return the shrunk mask
+   * @throws IllegalArgumentException if either distance is negative
+   */
+  public Mask erode(int radiusX, int radiusY) throws IllegalArgumentException {
+    return morph(radiusX, radiusY, false);
+  }
+
+  /**
+   * Returns the mask as a mask image: black where the mask selects pixels, and white elsewhere.
+   *
+   * @return the mask image
+   */
+  public ImageModel toImage() {
+    int[] pixels = new int[rows * cols];
+    RowBands.forEach(rows, cols, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        for (int j = 0, p = i * cols; j < cols; j++, p++) {
+          boolean set = (bits[i * wordsPerRow + (j >> 6)] & (1L << j)) != 0;
+          pixels[p] = set ? 0xFF000000 : 0xFFFFFFFF;
+        }
+      }
+    });
+    PackedImage img = new PackedImage(cols, rows, pixels, 255);
+    img.cacheMask(this);
+    return img;
+  }
+
+  /**
+   * Grows or shrinks the selection.
+   *
+   * @param radiusX how far to grow or shrink horizontally
+   * @param radiusY how far to grow or shrink vertically
+   * @param dilate true to grow, false to shrink
+   * @return the new mask
+   * @throws IllegalArgumentException if either distance is negative
+   */
+  private Mask morph(int radiusX, int radiusY, boolean dilate) throws IllegalArgumentException {
+    if (radiusX < 0 || radiusY < 0) {
+      throw new IllegalArgumentException("The radius cannot be negative.");
+    }
+    return new Mask(cols, rows, Morphology.filter(bits, cols, rows, radiusX, radiusY, dilate));
+  }
+
+  /**
+   * Returns the bits of the mask for walking its selected pixels: row i's bits start at word
+   * i * wordsPerRow(), and bit j % 64 of word j / 64 is column j. The array must not be modified.
+   *
+   * @return the bits
+   */
+  long[] bits() {
+    return bits;
+  }
+
+  /**
+   * Returns the number of words holding each row's bits.
+   *
+   * @return the words per row
+   */
+  int wordsPerRow() {
+    return wordsPerRow;
+  }
+}
@@ -1,8 +1,12 @@
 package controller.commands;
 
+import model.ImageCollection;
 import model.ImageCollectionModel;
 import model.ImageModel;
-import model.Pixel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+import model.Mask;
+import model.SoftMask;
 
 /**
  * Command class which represents the ability to partially manipulate images.
@@ -13,6 +17,12 @@ public class MaskedCmd implements ImageProcessingCommand {
   private final String original;
   private final String newName;
   private final String maskImage;
+  private final boolean soft;
+  // the region the edit is limited to, or a width of 0 for the whole image
+  private final int regionLeft;
+  private final int regionTop;
+  private final int regionWidth;
+  private final int regionHeight;
 
   /**
    * Constructor for a masked command object. Takes an ImageProcessingCommand, as well
@@ -22,41 +32,127 @@ public class MaskedCmd implements ImageProcessingCommand {
    * @param newName the new, partially edited, image
    */
   public MaskedCmd(ImageProcessingCommand cmd, String original, String newName, String maskImage) {
+    this(cmd, original, newName, maskImage, false);
+  }
+
+  /**
+   * Constructor for a masked command object which can use a feathered mask. With a soft mask,
+   * each pixel becomes a blend of the original and edited pixels, weighted by how dark the mask
+   * is there, instead of only black pixels taking the edit.
+   * @param cmd the command to execute (partially)
+   * @param original the original image
+   * @param newName the new, partially edited, image
+   * @param maskImage the mask image
+   * @param soft true to blend by the mask's intensity, false to only edit under its black pixels
+   */
+  public MaskedCmd(ImageProcessingCommand cmd, String original, String newName, String maskImage,
+                   boolean soft) {
     this.cmd = cmd;
     this.original = original;
     this.newName = newName;
     this.maskImage = maskImage;
+    this.soft = soft;
+    this.regionLeft = 0;
+    this.regionTop = 0;
+    this.regionWidth = 0;
+    this.regionHeight = 0;
   }
 
+  /**
+   * Constructor for a masked command object which is also limited to a rectangular region of the
+   * image. Only pixels both under the mask and inside the region are edited.
+   * @param cmd the command to execute (partially)
+   * @param original the original image
+   * @param newName the new, partially edited, image
+   * @param maskImage the mask image
+   * @param soft true to blend by the mask's intensity, false to only edit under its black pixels
+   * @param left the first column of the region
+   * @param top the first row of the region
+   * @param width the width of the region
+   * @param height the height of the region
+   * @throws IllegalArgumentException if the region is empty
+   */
+  public MaskedCmd(ImageProcessingCommand cmd, String original, String newName, String maskImage,
+                   boolean soft, int left, int top, int width, int height)
+          throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    this.cmd = cmd;
+    this.original = original;
+    this.newName = newName;
+    this.maskImage = maskImage;
+    this.soft = soft;
+    this.regionLeft = left;
+    this.regionTop = top;
+    this.regionWidth = width;
+    this.regionHeight = height;
+  }
+
+  /**
+   * Edits the part of the original image selected by the mask. When the inner command only looks
+   * at pixels near each pixel it edits, it is run on just the bounding box of the mask (plus the
+   * distance it looks), so a small mask costs a small edit; otherwise it is run on the whole
+   * region, as if it were the whole image, just as RegionCmd runs it (with no region, that is the
+   * whole image). Either way, the edit is then blended into the result in one pass over the mask's
+   * bounding box. With a region, the bounding box is first cut down to the region. The inner
+   * command must edit the original image into the image named newName.
+   *
+   * @param model the model to execute the command on
+   * @throws IllegalArgumentException if the inner command does not edit in place, the mask is
+   *         not the same size as the image, or the inner command fails
+   */
   @Override
   public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    if (!cmd.editsInPlace()) {
+      throw new IllegalArgumentException("Only edits made in place can be masked.");
+    }
 
-    // Retrieve the original image
+    // Retrieve the original image and the mask (converted once, and cached on the mask image)
     ImageModel originalImage = model.getImage(original);
-
-    // Execute the command which fully edits the image
-    cmd.execute(model);
-
-    // Retrieve the fully edited image
-    ImageModel editedImage = model.getImage(newName);
-
-    // Create the "mask-image" from the original
-    ImageModel mask = model.getImage(maskImage);
-
-    if (mask.getCols() != editedImage.getCols() || mask.getRows() != editedImage.getRows()) {
+    ImageModel maskModel = model.getImage(maskImage);
+    if (maskModel.getCols() != originalImage.getCols()
+            || maskModel.getRows() != originalImage.getRows()) {
       throw new IllegalArgumentException("Image must be the same size as its mask counterpart.");
     }
+    Mask mask = soft ? null : Mask.of(maskModel);
+    SoftMask softMask = soft ? SoftMask.of(maskModel) : null;
+    // the transformer applies the mask only inside the region, if there is one
+    ImageTransformations transformer = regionWidth == 0
+            ? new ImageTransformationsImpl(originalImage)
+            : new ImageTransformationsImpl(originalImage, regionLeft, regionTop, regionWidth,
+            regionHeight);
+    int regionRight = regionWidth == 0 ? originalImage.getCols() : regionLeft + regionWidth;
+    int regionBottom = regionWidth == 0 ? originalImage.getRows() : regionTop + regionHeight;
+    int left = Math.max(regionLeft, soft ? softMask.getLeft() : mask.getLeft());
+    int top = Math.max(regionTop, soft ? softMask.getTop() : mask.getTop());
+    int right = Math.min(regionRight, soft ? softMask.getRight() : mask.getRight());
+    int bottom = Math.min(regionBottom, soft ? softMask.getBottom() : mask.getBottom());
+    if (left >= right || top >= bottom) {
+      model.addImage(newName, originalImage);
+      return;
+    }
 
-    for (int i = 0; i < mask.getRows(); i++) {
-      for (int j = 0; j < mask.getCols(); j++) {
-        // if the pixel in the mask image is NOT black
-        if (!mask.getPixel(i,j).equals(new Pixel(0,0,0, 255))) {
-          // reset the pixel in the edited image to the pixel in the original
-          editedImage.setPixel(i, j, originalImage.getPixel(i, j));
-        }
-      }
+    int halo = cmd.getHalo();
+    if (halo < 0) {
+      // Edit the whole region, which the command sees as the whole image
+      left = regionLeft;
+      top = regionTop;
+      right = regionRight;
+      bottom = regionBottom;
+    } else {
+      // Edit only the mask's bounding box, widened by how far the command looks
+      left = Math.max(0, left - halo);
+      top = Math.max(0, top - halo);
+      right = Math.min(originalImage.getCols(), right + halo);
+      bottom = Math.min(originalImage.getRows(), bottom + halo);
     }
-    // overwrite the fully edited image with the partially edited version
-    model.addImage(newName, editedImage);
+    ImageCollectionModel region = new ImageCollection();
+    region.addImage(original, new ImageTransformationsImpl(originalImage)
+            .crop(left, top, right - left, bottom - top));
+    cmd.execute(region);
+    ImageModel edited = region.getImage(newName);
+    model.addImage(newName, soft ? transformer.applyMask(edited, softMask, left, top)
+            : transformer.applyMask(edited, mask, left, top));
   }
 }
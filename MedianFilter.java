@@ -0,0 +1,213 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Replaces every pixel with the median of the pixels within a radius of it, channel by channel,
+ * in constant time per pixel whatever the radius (Perreault and Hebert's sliding histograms).
+ * Every column keeps a histogram of its values over the window's rows, updated by one value in
+ * and one out as the window moves down; along a row, the window's histogram is the sum of its
+ * columns', updated by one column in and one out. Each histogram is split into 16 coarse bins of
+ * 16 fine bins: the coarse bins locate the median's bin, and only that bin's fine counts are
+ * brought up to date, so a step costs a few dozen additions rather than 256. The image is split
+ * into strips of columns, filtered in parallel. Near the edges, the window only covers the pixels
+ * inside the image, and an even count takes the lower median.
+ */
+final class MedianFilter {
+
+  // 16 coarse bins, each of 16 values
+  private static final int COARSE = 16;
+  private static final int FINE = 256;
+  // the most columns filtered at once
+  private static final int STRIP = 128;
+
+  private MedianFilter() {
+    // static helpers only
+  }
+
+  /**
+   * Filters packed pixels, keeping each pixel's alpha.
+   *
+   * @param src the array holding the packed 0xAARRGGBB pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @param radius how far the window reaches from each pixel
+   * @return the filtered pixels, row by row in a new array
+   */
+  static int[] filter(int[] src, int offset, int stride, int cols, int rows, int radius) {
+    int[] dst = new int[cols * rows];
+    for (int y = 0; y < rows; y++) {
+      for (int x = 0, o = y * cols, s = offset + y * stride; x < cols; x++, o++, s++) {
+        dst[o] = src[s] & 0xFF000000;
+      }
+    }
+    // the bands are strips of columns here, each running down the whole image
+    RowBands.forEach(cols, rows * (2 * radius + 1), (from, to) -> {
+      // narrow strips keep the columns' histograms in cache
+      for (int start = from; start < to; start += STRIP) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+          filterStrip(src, offset, stride, dst, cols, rows, radius, start,
+                  Math.min(to, start + STRIP), shift);
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Filters one channel of a strip of columns.
+   *
+   * @param src the array holding the packed pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param dst the filtered pixels, to which the channel's values are added
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @param radius how far the window reaches from each pixel
+   * @param from the first column of the strip
+   * @param to one past the last column of the strip
+   * @param shift the position of the channel in each pixel
+   */
+  private static void filterStrip(int[] src, int offset, int stride, int[] dst, int cols,
+                                  int rows, int radius, int from, int to, int shift) {
+    // the columns whose histograms the strip's windows use
+    int lo = Math.max(0, from - radius);
+    int hi = Math.min(cols, to + radius);
+    int[] columnFine = new int[(hi - lo) * FINE];
+    int[] columnCoarse = new int[(hi - lo) * COARSE];
+    int[] coarse = new int[COARSE];
+    int[] fine = new int[FINE];
+    // the columns each coarse bin's fine counts are currently summed over
+    int[] fineLeft = new int[COARSE];
+    int[] fineRight = new int[COARSE];
+
+    for (int i = 0; i < Math.min(rows, radius); i++) {
+      addRow(src, offset + i * stride, lo, hi, shift, columnFine, columnCoarse, 1);
+    }
+    for (int y = 0; y < rows; y++) {
+      // slide the columns' windows down a row
+      if (y + radius < rows) {
+        addRow(src, offset + (y + radius) * stride, lo, hi, shift, columnFine, columnCoarse, 1);
+      }
+      if (y - radius - 1 >= 0) {
+        addRow(src, offset + (y - radius - 1) * stride, lo, hi, shift, columnFine, columnCoarse,
+                -1);
+      }
+      int height = Math.min(rows - 1, y + radius) - Math.max(0, y - radius) + 1;
+
+      // start the row's window at the strip's first column; every fine count is now stale
+      Arrays.fill(coarse, 0);
+      Arrays.fill(fineRight, -1);
+      int left = Math.max(0, from - radius);
+      int right = Math.min(cols - 1, from + radius);
+      for (int c = left; c <= right; c++) {
+        addCoarse(coarse, columnCoarse, c - lo, 1);
+      }
+      for (int x = from; x < to; x++) {
+        if (x > from) {
+          // slide the window right a column
+          boolean grow = x + radius < cols;
+          boolean shrink = x - radius - 1 >= 0;
+          if (grow && shrink) {
+            slideCoarse(coarse, columnCoarse, right + 1 - lo, left - lo);
+          } else if (grow) {
+            addCoarse(coarse, columnCoarse, right + 1 - lo, 1);
+          } else if (shrink) {
+            addCoarse(coarse, columnCoarse, left - lo, -1);
+          }
+          right += grow ? 1 : 0;
+          left += shrink ? 1 : 0;
+        }
+
+        // find the coarse bin holding the median, then the fine bin within it
+        int rank = (height * (right - left + 1) - 1) / 2;
+        int bin = 0;
+        while (rank >= coarse[bin]) {
+          rank -= coarse[bin];
+          bin++;
+        }
+        updateFine(fine, columnFine, bin, fineLeft, fineRight, left - lo, right - lo);
+        int value = bin * COARSE;
+        while (rank >= fine[value]) {
+          rank -= fine[value];
+          value++;
+        }
+        dst[y * cols + x] |= value << shift;
+      }
+    }
+  }
+
+  /**
+   * Brings one coarse bin's fine counts up to date with the window's columns, by sliding them if
+   * they overlap the columns they were last summed over, or summing them afresh otherwise.
+   */
+  private static void updateFine(int[] fine, int[] columnFine, int bin, int[] fineLeft,
+                                 int[] fineRight, int left, int right) {
+    int first = bin * COARSE;
+    if (fineRight[bin] < left) {
+      Arrays.fill(fine, first, first + COARSE, 0);
+      for (int c = left; c <= right; c++) {
+        addFine(fine, columnFine, c, first, 1);
+      }
+    } else {
+      int out = fineLeft[bin];
+      int in = fineRight[bin] + 1;
+      // the window only moves right, so columns leave and enter in step until it reaches the edge
+      for (; out < left && in <= right; out++, in++) {
+        for (int i = first, a = in * FINE + first, b = out * FINE + first; i < first + COARSE;
+             i++, a++, b++) {
+          fine[i] += columnFine[a] - columnFine[b];
+        }
+      }
+      for (; out < left; out++) {
+        addFine(fine, columnFine, out, first, -1);
+      }
+      for (; in <= right; in++) {
+        addFine(fine, columnFine, in, first, 1);
+      }
+    }
+    fineLeft[bin] = left;
+    fineRight[bin] = right;
+  }
+
+  /**
+   * Adds (or takes away) one column's fine counts for one coarse bin.
+   */
+  private static void addFine(int[] fine, int[] columnFine, int column, int first, int sign) {
+    for (int i = first, c = column * FINE + first; i < first + COARSE; i++, c++) {
+      fine[i] += sign * columnFine[c];
+    }
+  }
+
+  /**
+   * Adds one column's coarse counts and takes away another's.
+   */
+  private static void slideCoarse(int[] coarse, int[] columnCoarse, int in, int out) {
+    for (int i = 0, a = in * COARSE, b = out * COARSE; i < COARSE; i++, a++, b++) {
+      coarse[i] += columnCoarse[a] - columnCoarse[b];
+    }
+  }
+
+  /**
+   * Adds (or takes away) one column's coarse counts.
+   */
+  private static void addCoarse(int[] coarse, int[] columnCoarse, int column, int sign) {
+    for (int i = 0, c = column * COARSE; i < COARSE; i++, c++) {
+      coarse[i] += sign * columnCoarse[c];
+    }
+  }
+
+  /**
+   * Adds (or takes away) a row's values to the histograms of the strip's columns.
+   */
+  private static void addRow(int[] src, int start, int lo, int hi, int shift,
+                             int[] columnFine, int[] columnCoarse, int sign) {
+    for (int x = lo, p = start + lo, c = 0; x < hi; x++, p++, c++) {
+      int v = (src[p] >> shift) & 0xFF;
+      columnFine[c * FINE + v] += sign;
+      columnCoarse[c * COARSE + (v >> 4)] += sign;
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package controller.commands;
+
+/**
+ * Enum representing the morphological operations which can be applied to an image or a mask.
+ * ERODE = take the smallest value around each pixel; on a mask, shrink the selected area
+ * DILATE = take the largest value around each pixel; on a mask, grow the selected area
+ * OPEN = erode, then dilate; removes small bright specks (or small selected islands)
+ * CLOSE = dilate, then erode; fills small dark gaps (or small holes in the selection)
+ */
+public enum MorphOperation {
+  ERODE, DILATE, OPEN, CLOSE
+}
@@ -0,0 +1,245 @@
+package model;
+
+/**
+ * Erodes and dilates images and masks with rectangular structuring elements, using van Herk and
+ * Gil-Werman's running minimum and maximum. The window is separable, so each image is processed
+ * along its rows and then along its columns. Along each line, the values are split into blocks as
+ * long as the window, and running minimums (or maximums) are taken forwards and backwards within
+ * each block; every window spans the end of one block and the start of the next, so its result is
+ * one comparison of the two running values. That makes three comparisons per pixel whatever the
+ * window's size. Near the edges, the window only covers the pixels inside the image.
+ */
+final class Morphology {
+
+  // the most columns processed at once along the columns, so the running values stay in cache
+  private static final int STRIP = 64;
+
+  private Morphology() {
+    // static helpers only
+  }
+
+  /**
+   * Erodes (takes the minimum of every channel over the window) or dilates (takes the maximum)
+   * packed pixels, keeping each pixel's alpha.
+   *
+   * @param src the array holding the packed 0xAARRGGBB pixels
+   * @param offset where the first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the width of the image
+   * @param rows the height of the image
+   * @param radiusX how far the window reaches left and right of each pixel
+   * @param radiusY how far the window reaches above and below each pixel
+   * @param dilate true to take the maximum, false to take the minimum
+   * @return the new pixels, row by row in a new array
+   */
+  static int[] filter(int[] src, int offset, int stride, int cols, int rows, int radiusX,
+                      int radiusY, boolean dilate) {
+    int identity = dilate ? 0 : 0xFFFFFF;
+    int[] across = new int[cols * rows];
+    int kx = 2 * radiusX + 1;
+    RowBands.forEach(rows, cols * 3, (from, to) -> {
+      int length = cols + 2 * radiusX;
+      int[] forward = new int[length];
+      int[] backward = new int[length];
+      for (int y = from; y < to; y++) {
+        int row = y * cols;
+        int in = offset + y * stride;
+        for (int u = 0; u < length; u++) {
+          int x = u - radiusX;
+          int v = x >= 0 && x < cols ? src[in + x] & 0xFFFFFF : identity;
+          forward[u] = u % kx == 0 ? v : combine(forward[u - 1], v, dilate);
+        }
+        for (int u = length - 1; u >= 0; u--) {
+          int x = u - radiusX;
+          int v = x >= 0 && x < cols ? src[in + x] & 0xFFFFFF : identity;
+          backward[u] = u % kx == kx - 1 || u == length - 1 ? v
+                  : combine(backward[u + 1], v, dilate);
+        }
+        for (int x = 0; x < cols; x++) {
+          across[row + x] = combine(backward[x], forward[x + kx - 1], dilate);
+        }
+      }
+    });
+
+    int[] dst = new int[cols * rows];
+    int ky = 2 * radiusY + 1;
+    // the bands are strips of columns here, each running down the whole image
+    RowBands.forEach(cols, rows * 3, (from, to) -> {
+      int length = rows + 2 * radiusY;
+      int[] forward = new int[length * STRIP];
+      int[] backward = new int[length * STRIP];
+      for (int start = from; start < to; start += STRIP) {
+        int width = Math.min(STRIP, to - start);
+        for (int u = 0; u < length; u++) {
+          int y = u - radiusY;
+          boolean inside = y >= 0 && y < rows;
+          for (int j = 0, o = u * STRIP; j < width; j++, o++) {
+            int v = inside ? across[y * cols + start + j] : identity;
+            forward[o] = u % ky == 0 ? v : combine(forward[o - STRIP], v, dilate);
+          }
+        }
+        for (int u = length - 1; u >= 0; u--) {
+          int y = u - radiusY;
+          boolean inside = y >= 0 && y < rows;
+          boolean last = u % ky == ky - 1 || u == length - 1;
+          for (int j = 0, o = u * STRIP; j < width; j++, o++) {
+            int v = inside ? across[y * cols + start + j] : identity;
+            backward[o] = last ? v : combine(backward[o + STRIP], v, dilate);
+          }
+        }
+        for (int y = 0; y < rows; y++) {
+          int s = offset + y * stride + start;
+          for (int j = 0, o = y * STRIP, p = y * cols + start; j < width; j++, o++, p++, s++) {
+            dst[p] = (src[s] & 0xFF000000)
+                    | combine(backward[o], forward[o + (ky - 1) * STRIP], dilate);
+          }
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Dilates (grows) or erodes (shrinks) the selected pixels of a mask's bits. Along the rows, 64
+   * pixels are handled at once by shifting whole words: a run of selected bits is doubled in
+   * length with each shift, so a window of any width takes a handful of shifts. Along the
+   * columns, the running values are whole words, one comparison covering 64 pixels. Erosion is
+   * dilation of the unselected pixels, so pixels outside the mask count as selected when eroding.
+   *
+   * @param bits the bits of the mask, each row starting a new word
+   * @param cols the width of the mask
+   * @param rows the height of the mask
+   * @param radiusX how far the window reaches left and right of each pixel
+   * @param radiusY how far the window reaches above and below each pixel
+   * @param dilate true to grow the selection, false to shrink it
+   * @return the new bits, in a new array
+   */
+  static long[] filter(long[] bits, int cols, int rows, int radiusX, int radiusY,
+                       boolean dilate) {
+    int words = (cols + 63) / 64;
+    // the bits of the last word of each row which are inside the mask
+    long edge = cols % 64 == 0 ? -1L : (1L << cols) - 1;
+    long[] across = new long[bits.length];
+    RowBands.forEach(rows, words * 64, (from, to) -> {
+      long[] ahead = new long[words];
+      long[] behind = new long[words];
+      long[] shifted = new long[words];
+      for (int y = from; y < to; y++) {
+        int first = y * words;
+        // dilate the unselected pixels to erode the selected ones
+        for (int w = 0; w < words; w++) {
+          ahead[w] = dilate ? bits[first + w] : ~bits[first + w];
+        }
+        ahead[words - 1] &= edge;
+        System.arraycopy(ahead, 0, behind, 0, words);
+        // the window is the run of bits up to radiusX after each bit, and the run before it
+        spread(ahead, shifted, radiusX + 1, -1);
+        spread(behind, shifted, radiusX + 1, 1);
+        for (int w = 0; w < words; w++) {
+          long v = ahead[w] | behind[w];
+          across[first + w] = dilate ? v : ~v;
+        }
+        across[first + words - 1] &= edge;
+      }
+    });
+
+    long[] result = new long[bits.length];
+    long identity = dilate ? 0L : -1L;
+    int ky = 2 * radiusY + 1;
+    int length = rows + 2 * radiusY;
+    RowBands.forEach(words, rows * 64, (from, to) -> {
+      long[] forward = new long[length];
+      long[] backward = new long[length];
+      for (int w = from; w < to; w++) {
+        for (int u = 0; u < length; u++) {
+          int y = u - radiusY;
+          long v = y >= 0 && y < rows ? across[y * words + w] : identity;
+          forward[u] = u % ky == 0 ? v : dilate ? forward[u - 1] | v : forward[u - 1] & v;
+        }
+        for (int u = length - 1; u >= 0; u--) {
+          int y = u - radiusY;
+          long v = y >= 0 && y < rows ? across[y * words + w] : identity;
+          backward[u] = u % ky == ky - 1 || u == length - 1 ? v
+                  : dilate ? backward[u + 1] | v : backward[u + 1] & v;
+        }
+        for (int y = 0; y < rows; y++) {
+          long a = backward[y];
+          long b = forward[y + ky - 1];
+          result[y * words + w] = (dilate ? a | b : a & b) & (w == words - 1 ? edge : -1L);
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Takes the minimum or maximum of each channel of two pixels, without their alpha.
+   */
+  private static int combine(int a, int b, boolean dilate) {
+    int r;
+    int g;
+    int bl;
+    if (dilate) {
+      r = Math.max(a & 0xFF0000, b & 0xFF0000);
+      g = Math.max(a & 0xFF00, b & 0xFF00);
+      bl = Math.max(a & 0xFF, b & 0xFF);
+    } else {
+      r = Math.min(a & 0xFF0000, b & 0xFF0000);
+      g = Math.min(a & 0xFF00, b & 0xFF00);
+      bl = Math.min(a & 0xFF, b & 0xFF);
+    }
+    return r | g | bl;
+  }
+
+  /**
+   * Makes every bit of a row the OR of a run of bits starting at it. Each shift doubles the length
+   * of the run, until it is as long as asked.
+   *
+   * @param row the bits of the row, replaced by the ORs
+   * @param shifted a scratch row of the same length
+   * @param length how many bits each run covers
+   * @param direction -1 for runs towards higher columns, 1 for runs towards lower columns
+   */
+  private static void spread(long[] row, long[] shifted, int length, int direction) {
+    int span = 1;
+    while (span < length) {
+      int step = Math.min(span, length - span);
+      shift(row, shifted, direction * step);
+      for (int w = 0; w < row.length; w++) {
+        row[w] |= shifted[w];
+      }
+      span += step;
+    }
+  }
+
+  /**
+   * Shifts a row of bits along by a number of columns, filling with unselected bits: a positive
+   * distance moves each bit to a higher column, a negative one to a lower column.
+   *
+   * @param row the bits of the row
+   * @param dst where to put the shifted bits
+   * @param distance how many columns to shift by
+   */
+  private static void shift(long[] row, long[] dst, int distance) {
+    int words = row.length;
+    int step = Math.abs(distance) >> 6;
+    int bits = Math.abs(distance) & 63;
+    for (int w = 0; w < words; w++) {
+      long v;
+      if (distance >= 0) {
+        // column c of dst is column c - distance of row
+        int s = w - step;
+        long high = s >= 0 && s < words ? row[s] : 0L;
+        long low = s - 1 >= 0 && s - 1 < words ? row[s - 1] : 0L;
+        v = bits == 0 ? high : (high << bits) | (low >>> (64 - bits));
+      } else {
+        // column c of dst is column c + |distance| of row
+        int s = w + step;
+        long low = s >= 0 && s < words ? row[s] : 0L;
+        long high = s + 1 < words ? row[s + 1] : 0L;
+        v = bits == 0 ? low : (low >>> bits) | (high << (64 - bits));
+      }
+      dst[w] = v;
+    }
+  }
+}
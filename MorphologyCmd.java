@@ -0,0 +1,113 @@
+package controller.commands;
+
+import model.ImageCollectionModel;
+import model.ImageModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+import model.Mask;
+
+/**
+ * Represents the command to erode, dilate, open or close an image with a rectangle. The command
+ * works on either the image's colors or, for mask images, the area the mask selects.
+ */
+public class MorphologyCmd implements ImageProcessingCommand {
+
+  private final String orig;
+  private final String newName;
+  private final MorphOperation operation;
+  private final int radiusX;
+  private final int radiusY;
+  private final boolean mask;
+
+  /**
+   * Constructor for the command to erode, dilate, open or close an image. The rectangle reaches
+   * the given distances to either side of, and above and below, each pixel.
+   *
+   * @param orig      the name of the original image
+   * @param newName   the name of the new image
+   * @param operation the operation to apply
+   * @param radiusX   how far the rectangle reaches to the left and right
+   * @param radiusY   how far the rectangle reaches up and down
+   * @param mask      true to treat the image as a mask and change the area it selects, false to
+   *                  change its colors
+   * @throws IllegalArgumentException if any parameter is null or either distance is negative
+   */
+  public MorphologyCmd(String orig, String newName, MorphOperation operation, int radiusX,
+                       int radiusY, boolean mask) throws IllegalArgumentException {
+    if (orig == null || newName == null || operation == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (radiusX < 0 || radiusY < 0) {
+      throw new IllegalArgumentException("The radius cannot be negative.");
+    }
+    this.orig = orig;
+    this.newName = newName;
+    this.operation = operation;
+    this.radiusX = radiusX;
+    this.radiusY = radiusY;
+    this.mask = mask;
+  }
+
+  /**
+   * Applies the operation and adds the new image to the model. For a mask, the new image is
+   * black where the new mask selects pixels and white elsewhere.
+   *
+   * @param model the model to execute the command on
+   * @throws IllegalArgumentException if the image is not in the model
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageModel image = model.getImage(orig);
+    if (mask) {
+      Mask selection = Mask.of(image);
+      switch (operation) {
+        case ERODE:
+          selection = selection.erode(radiusX, radiusY);
+          break;
+        case DILATE:
+          selection = selection.dilate(radiusX, radiusY);
+          break;
+        case OPEN:
+          selection = selection.erode(radiusX, radiusY).dilate(radiusX, radiusY);
+          break;
+        case CLOSE:
+          selection = selection.dilate(radiusX, radiusY).erode(radiusX, radiusY);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown operation.");
+      }
+      model.addImage(newName, selection.toImage());
+      return;
+    }
+    ImageTransformations transformer = new ImageTransformationsImpl(image);
+    switch (operation) {
+      case ERODE:
+        model.addImage(newName, transformer.erode(radiusX, radiusY));
+        break;
+      case DILATE:
+        model.addImage(newName, transformer.dilate(radiusX, radiusY));
+        break;
+      case OPEN:
+        transformer.erode(radiusX, radiusY);
+        model.addImage(newName, transformer.dilate(radiusX, radiusY));
+        break;
+      case CLOSE:
+        transformer.dilate(radiusX, radiusY);
+        model.addImage(newName, transformer.erode(radiusX, radiusY));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown operation.");
+    }
+  }
+
+  /**
+   * The operation looks as far as the rectangle reaches, twice over for opening and closing.
+   *
+   * @return how far the operation looks from each pixel
+   */
+  @Override
+  public int getHalo() {
+    int passes = operation == MorphOperation.OPEN || operation == MorphOperation.CLOSE ? 2 : 1;
+    return Math.max(radiusX, radiusY) * passes;
+  }
+}
@@ -0,0 +1,344 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads and writes images in the application's own binary format, meant for intermediate images
+ * passed between steps of a pipeline. The pixels are stored exactly as images hold them in
+ * memory, so a file is read by mapping it into memory and copying the pixels out in bulk, with
+ * nothing to parse or decode, and written by copying them straight into a mapped file.
+ *
+ * <p>A file starts with a 64-byte header, all of it little-endian:</p>
+ * <ul>
+ *   <li>bytes 0-3: the magic number "IPIF", and bytes 4-7: the version, 1</li>
+ *   <li>bytes 8-15: the width and height</li>
+ *   <li>bytes 16-23: the number of channels (3, or 4 with alpha) and the bits per channel
+ *   (8 or 16)</li>
+ *   <li>bytes 24-31: the layout (0 for packed 0xAARRGGBB ints, 1 for one plane of 16-bit values
+ *   per channel) and the maximum value of each channel</li>
+ *   <li>bytes 32-39: the rows in each tile and the number of tiles, both 0 if untiled</li>
+ *   <li>bytes 40-47: where the tile index is, and bytes 48-55: where the pixels start</li>
+ *   <li>bytes 56-59: how the tiles are compressed, 0 if they are not</li>
+ * </ul>
+ * <p>The pixels follow at a 64-byte boundary, row by row; in the planar layout the red plane comes
+ * first, then green, then blue. A tiled file splits the image into bands of rows, each stored
+ * like a whole image of its own, and its index lists where each tile starts and how many bytes it
+ * takes, so that tiles can be read independently. Compressed files are always tiled, and each
+ * tile is compressed on its own (see TileCodec), so tiles are compressed and decompressed in
+ * parallel.</p>
+ */
+public final class NativeImageFile {
+
+  /**
+   * The extension of files in this format.
+   */
+  public static final String EXTENSION = ".ipi";
+
+  private static final int MAGIC = 'I' | 'P' << 8 | 'I' << 16 | 'F' << 24;
+  private static final int VERSION = 1;
+  private static final int HEADER = 64;
+  private static final int PACKED = 0;
+  private static final int PLANAR = 1;
+  // each entry of the tile index is where a tile starts and how many bytes it takes
+  private static final int ENTRY = 16;
+  // how tiles are compressed: not at all, with TileCodec's packed or planar coding
+  private static final int RAW = 0;
+  private static final int QOI = 1;
+  private static final int DELTA = 2;
+  // the rows in each tile of a compressed file, enough tiles to decompress in parallel
+  private static final int TILE_ROWS = 64;
+
+  private NativeImageFile() {
+    // static helpers only
+  }
+
+  /**
+   * Reads an image from a file in this format. Images with 8 bits per channel are read as packed
+   * images, and deeper ones as deep images. Uncompressed pixels are copied out in bulk, and
+   * compressed tiles are decompressed in parallel.
+   *
+   * @param path the file to read
+   * @return the image
+   * @throws IllegalArgumentException if the file cannot be read or is not in this format
+   */
+  public static ImageModel read(Path path) throws IllegalArgumentException {
+    ByteBuffer file;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // the mapping stays valid once the channel is closed
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException | UnsupportedOperationException e) {
+      throw new IllegalArgumentException("File reading failed. Please enter a new pathname.");
+    }
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    if (file.limit() < HEADER || file.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not an image file of this application.");
+    }
+    if (file.getInt(4) != VERSION) {
+      throw new IllegalArgumentException("Unsupported version of the image file format.");
+    }
+    int cols = file.getInt(8);
+    int rows = file.getInt(12);
+    int channels = file.getInt(16);
+    int depth = file.getInt(20);
+    int layout = file.getInt(24);
+    int maxValue = file.getInt(28);
+    int tileRows = file.getInt(32);
+    int tiles = file.getInt(36);
+    long index = file.getLong(40);
+    long start = file.getLong(48);
+    int compression = file.getInt(56);
+    if (cols < 1 || rows < 1 || (long) cols * rows > Integer.MAX_VALUE - 8
+            || (channels != 3 && channels != 4) || depth != (layout == PACKED ? 8 : 16)
+            || (layout != PACKED && layout != PLANAR) || tileRows < 0 || tiles < 0
+            || (compression != RAW && compression != (layout == PACKED ? QOI : DELTA))
+            || (compression != RAW && tiles == 0)) {
+      throw new IllegalArgumentException("Invalid image file header.");
+    }
+    int bytes = layout == PACKED ? 4 : 6;
+    long[][] entries;
+    if (tiles == 0) {
+      tileRows = rows;
+      entries = new long[][]{{start, (long) rows * cols * bytes}};
+    } else {
+      if (tileRows < 1 || tiles != (rows + tileRows - 1) / tileRows || index < HEADER
+              || index + (long) tiles * ENTRY > file.limit()) {
+        throw new IllegalArgumentException("Invalid image file header.");
+      }
+      entries = new long[tiles][];
+      for (int t = 0; t < tiles; t++) {
+        int at = (int) index + t * ENTRY;
+        entries[t] = new long[]{file.getLong(at), file.getLong(at + 8)};
+      }
+    }
+    for (int t = 0; t < entries.length; t++) {
+      long size = (long) Math.min(tileRows, rows - t * tileRows) * cols * bytes;
+      if (compression != RAW) {
+        size = entries[t][1];
+      }
+      if (entries[t][0] < HEADER || entries[t][1] != size || size < 0
+              || entries[t][0] + size > file.limit()) {
+        throw new IllegalArgumentException("The image file is missing pixels.");
+      }
+    }
+
+    int height = tileRows;
+    if (layout == PACKED) {
+      if (maxValue < 0 || maxValue > 255) {
+        throw new IllegalArgumentException("Invalid image file header.");
+      }
+      int[] data = new int[rows * cols];
+      RowBands.forEach(entries.length, height * cols, (from, to) -> {
+        for (int t = from; t < to; t++) {
+          int first = t * height * cols;
+          int count = Math.min(height, rows - t * height) * cols;
+          if (compression == RAW) {
+            tile(file, entries[t][0]).asIntBuffer().get(data, first, count);
+          } else {
+            byte[] in = compressed(file, entries[t]);
+            TileCodec.decode(in, in.length, data, first, count);
+          }
+        }
+      });
+      return new PackedImage(cols, rows, data, maxValue);
+    }
+    if (maxValue < 0 || maxValue > DeepImage.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid image file header.");
+    }
+    char[][] planes = new char[3][rows * cols];
+    RowBands.forEach(entries.length, height * cols * 3, (from, to) -> {
+      for (int t = from; t < to; t++) {
+        int first = t * height * cols;
+        int count = Math.min(height, rows - t * height) * cols;
+        if (compression != RAW) {
+          byte[] in = compressed(file, entries[t]);
+          TileCodec.decode(in, in.length, planes, first, cols, count / cols);
+          continue;
+        }
+        ByteBuffer tile = tile(file, entries[t][0]);
+        for (int c = 0; c < 3; c++) {
+          tile.position(c * count * 2);
+          tile.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer()
+                  .get(planes[c], first, count);
+        }
+      }
+    });
+    return new DeepImage(cols, rows, planes, maxValue);
+  }
+
+  /**
+   * Writes an image to a file in this format, untiled. Images with 8 bits per channel are
+   * written as packed pixels, keeping their alpha, and deeper ones as planes of 16-bit values.
+   *
+   * @param img the image to write
+   * @param path the file to write to, replaced if it exists
+   * @throws IllegalArgumentException if the file cannot be written, or the image has more than
+   *         16 bits per channel
+   */
+  public static void write(ImageModel img, Path path) throws IllegalArgumentException {
+    write(img, path, 0, false);
+  }
+
+  /**
+   * Writes an image to a file in this format, optionally compressed. Compressed files are split
+   * into tiles which are compressed in parallel.
+   *
+   * @param img the image to write
+   * @param path the file to write to, replaced if it exists
+   * @param compress true to compress the pixels, false to write them as they are
+   * @throws IllegalArgumentException if the file cannot be written, or the image has more than
+   *         16 bits per channel
+   */
+  public static void write(ImageModel img, Path path, boolean compress)
+          throws IllegalArgumentException {
+    write(img, path, compress ? TILE_ROWS : 0, compress);
+  }
+
+  /**
+   * Writes an image to a file in this format, split into tiles of a number of rows.
+   *
+   * @param img the image to write
+   * @param path the file to write to, replaced if it exists
+   * @param tileRows the rows in each tile, or 0 to write the image untiled
+   * @param compress true to compress each tile, which needs the image to be split into tiles
+   * @throws IllegalArgumentException if the file cannot be written, or the image has more than
+   *         16 bits per channel
+   */
+  static void write(ImageModel img, Path path, int tileRows, boolean compress)
+          throws IllegalArgumentException {
+    int cols = img.getCols();
+    int rows = img.getRows();
+    boolean packed = PackedImage.canPack(img);
+    if (!packed && !(img instanceof DeepImage)
+            && img.getPixel(0, 0).getMaxValue() > DeepImage.MAX_VALUE) {
+      throw new IllegalArgumentException("Images hold at most 16 bits per channel.");
+    }
+    int height = tileRows < 1 || (tileRows >= rows && !compress) ? rows : tileRows;
+    int tiles = height == rows && !compress ? 0 : (rows + height - 1) / height;
+    int bytes = packed ? 4 : 6;
+    PackedImage image = packed ? PackedImage.of(img) : null;
+    DeepImage deep = packed ? null : DeepImage.of(img);
+    // compressed tiles are compressed first, as where each one goes depends on the sizes before it
+    byte[][] compressed = new byte[tiles][];
+    if (compress) {
+      RowBands.forEach(tiles, height * cols * bytes / 4, (from, to) -> {
+        for (int t = from; t < to; t++) {
+          int top = t * height;
+          int count = Math.min(height, rows - top);
+          byte[] out;
+          int size;
+          if (packed) {
+            out = new byte[TileCodec.maxPackedSize(count * cols)];
+            size = TileCodec.encode(image.buffer(), image.offset() + top * image.stride(),
+                    image.stride(), cols, count, out);
+          } else {
+            out = new byte[TileCodec.maxPlanarSize(count * cols)];
+            size = TileCodec.encode(deep.planes(), top * cols, cols, count, out);
+          }
+          compressed[t] = Arrays.copyOf(out, size);
+        }
+      });
+    }
+    // every tile starts at a 64-byte boundary, after the header and the index
+    long[][] entries = new long[Math.max(1, tiles)][];
+    long end = align(HEADER + (long) tiles * ENTRY);
+    for (int t = 0; t < entries.length; t++) {
+      long size = compress ? compressed[t].length
+              : (long) Math.min(height, rows - t * height) * cols * bytes;
+      entries[t] = new long[]{end, size};
+      end = align(end + size);
+    }
+    if (end > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The image is too large for this format.");
+    }
+
+    MappedByteBuffer file;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      file = channel.map(FileChannel.MapMode.READ_WRITE, 0, end);
+    } catch (IOException | UnsupportedOperationException e) {
+      throw new IllegalArgumentException("File writing failed.");
+    }
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    file.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, cols).putInt(12, rows);
+    file.putInt(16, packed && image.hasAlpha() ? 4 : 3).putInt(20, packed ? 8 : 16);
+    file.putInt(24, packed ? PACKED : PLANAR);
+    file.putInt(28, packed ? image.getMaxValue() : deep.getMaxValue());
+    file.putInt(32, tiles == 0 ? 0 : height).putInt(36, tiles);
+    file.putLong(40, tiles == 0 ? 0 : HEADER).putLong(48, entries[0][0]);
+    file.putInt(56, !compress ? RAW : packed ? QOI : DELTA);
+    for (int t = 0; t < tiles; t++) {
+      file.putLong(HEADER + t * ENTRY, entries[t][0]).putLong(HEADER + t * ENTRY + 8,
+              entries[t][1]);
+    }
+
+    RowBands.forEach(entries.length, height * cols * bytes / 4, (from, to) -> {
+      for (int t = from; t < to; t++) {
+        int top = t * height;
+        int count = Math.min(height, rows - top);
+        ByteBuffer tile = tile(file, entries[t][0]);
+        if (compress) {
+          tile.put(compressed[t]);
+        } else if (packed) {
+          int[] pixels = image.buffer();
+          IntBuffer out = tile.asIntBuffer();
+          for (int i = top; i < top + count; i++) {
+            out.put(pixels, image.offset() + i * image.stride(), cols);
+          }
+        } else {
+          char[][] planes = deep.planes();
+          for (int c = 0; c < 3; c++) {
+            tile.position(c * count * cols * 2);
+            tile.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer()
+                    .put(planes[c], top * cols, count * cols);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns a little-endian buffer over a file's bytes from a position onwards, which can be
+   * read or written without disturbing other threads using the same file.
+   *
+   * @param file the mapped file
+   * @param start where the buffer starts
+   * @return the buffer
+   */
+  private static ByteBuffer tile(ByteBuffer file, long start) {
+    ByteBuffer tile = file.duplicate();
+    tile.position((int) start);
+    return tile.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Copies a compressed tile out of a file.
+   *
+   * @param file the mapped file
+   * @param entry where the tile starts and how many bytes it takes
+   * @return the compressed tile
+   */
+  private static byte[] compressed(ByteBuffer file, long[] entry) {
+    byte[] in = new byte[(int) entry[1]];
+    tile(file, entry[0]).get(in);
+    return in;
+  }
+
+  /**
+   * Rounds a position in a file up to the next 64-byte boundary.
+   *
+   * @param position the position
+   * @return the rounded position
+   */
+  private static long align(long position) {
+    return (position + 63) & ~63L;
+  }
+}
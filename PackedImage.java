@@ -0,0 +1,537 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Class representing an image whose pixels are packed into a single array of ints, one
+ * 0xAARRGGBB value per pixel, stored row by row. Compared to a 2D array of Pixel objects this
+ * uses a fraction of the memory and lets transformations work directly on rows of primitives.
+ * Copies share the pixel array until one of them is written to (copy-on-write), so copying a
+ * large image is cheap until the copy is actually edited. Data derived from the pixels, such as
+ * the histogram, or the mask the image selects when used as one, is cached alongside them and
+ * shared by the copies too.
+ * An image can also be a view of a rectangle of another image's pixels: cropping makes a view,
+ * which reads the parent's array in place (starting at an offset, with rows a stride apart)
+ * rather than copying the rectangle. Like a copy, a view only takes pixels of its own once it is
+ * written to, or once it is handed to code which needs its pixels in an array of their own.
+ * Each channel holds at most 8 bits, so the maximum value must be 255 or less. The top byte of
+ * each pixel is its alpha, which is 255 (opaque) unless the image was loaded with transparency;
+ * transformations keep each pixel's alpha as it is, or resample it along with the colors.
+ */
+public class PackedImage implements ImageModel {
+
+  private static final int OPAQUE = 0xFF000000;
+
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  private int[] data;
+  // where the image's first pixel is in data, and how far apart its rows are
+  private int offset;
+  private int stride;
+  // volatile, since copies taken on one thread can be written to on another; once set it is only
+  // ever cleared by the image's owner, when it takes pixels of its own
+  private volatile boolean shared;
+  private Derived derived;
+
+  /**
+   * Constructs a black image of the given size.
+   *
+   * @param width the number of columns in the image
+   * @param height the number of rows in the image
+   * @param maxValue the maximum value of each channel
+   * @throws IllegalArgumentException if the dimensions are not positive or the maximum value
+   *         does not fit in 8 bits
+   */
+  public PackedImage(int width, int height, int maxValue) throws IllegalArgumentException {
+    this(width, height, newBlack(width, height), maxValue);
+  }
+
+  /**
+   * Constructs an image around an existing array of packed 0xAARRGGBB pixels, stored row by row.
+   * The array is used directly, not copied.
+   *
+   * @param width the number of columns in the image
+   * @param height the number of rows in the image
+   * @param data the packed pixels
+   * @param maxValue the maximum value of each channel
+   * @throws IllegalArgumentException if the array does not match the dimensions or the maximum
+   *         value does not fit in 8 bits
+   */
+  public PackedImage(int width, int height, int[] data, int maxValue)
+          throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    if (data == null || data.length != width * height) {
+      throw new IllegalArgumentException("Pixel data does not match the image dimensions.");
+    }
+    if (maxValue < 0 || maxValue > 255) {
+      throw new IllegalArgumentException("Packed images hold at most 8 bits per channel.");
+    }
+    this.width = width;
+    this.height = height;
+    this.data = data;
+    this.offset = 0;
+    this.stride = width;
+    this.maxValue = maxValue;
+    this.shared = false;
+    this.derived = new Derived();
+  }
+
+  /**
+   * Returns an image as a packed image. Packed images are returned as they are, and any other
+   * image is converted.
+   *
+   * @param img the image to convert
+   * @return the image as a PackedImage
+   * @throws IllegalArgumentException if the image's channels do not fit in 8 bits
+   */
+  public static PackedImage of(ImageModel img) throws IllegalArgumentException {
+    if (img instanceof PackedImage) {
+      return (PackedImage) img;
+    }
+    int rows = img.getRows();
+    int cols = img.getCols();
+    int[] data = new int[rows * cols];
+    int maxValue = img.getPixel(0, 0).getMaxValue();
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        data[i * cols + j] = pack(img.getPixel(i, j));
+      }
+    }
+    return new PackedImage(cols, rows, data, maxValue);
+  }
+
+  /**
+   * Checks whether an image can be held as a packed image.
+   *
+   * @param img the image to check
+   * @return true if the image's channels fit in 8 bits
+   */
+  public static boolean canPack(ImageModel img) {
+    return img instanceof PackedImage || img.getPixel(0, 0).getMaxValue() <= 255;
+  }
+
+  @Override
+  public int getRows() {
+    return this.height;
+  }
+
+  @Override
+  public int getCols() {
+    return this.width;
+  }
+
+  /**
+   * Gets the maximum allowed value of each channel.
+   *
+   * @return int the max value
+   */
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Returns a copy of this image. The copy shares this image's pixels until either is written to.
+   *
+   * @return ImageModel the copy
+   */
+  @Override
+  public ImageModel getCopy() {
+    PackedImage copy = view(0, 0, width, height);
+    copy.derived = this.derived;
+    return copy;
+  }
+
+  /**
+   * Returns a view of a rectangle of this image, which shares this image's pixels until either
+   * is written to. No pixels are copied.
+   *
+   * @param left the first column of the rectangle
+   * @param top the first row of the rectangle
+   * @param cols the width of the rectangle
+   * @param rows the height of the rectangle
+   * @return the view
+   * @throws IllegalArgumentException if the rectangle is empty or not inside this image
+   */
+  PackedImage view(int left, int top, int cols, int rows) throws IllegalArgumentException {
+    if (cols < 1 || rows < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    if (left < 0 || top < 0 || left + cols > width || top + rows > height) {
+      throw new IllegalArgumentException("The region must be inside the image.");
+    }
+    if (!shared) {
+      // an image which is already shared is left unwritten, so any number of threads can copy it
+      this.shared = true;
+    }
+    PackedImage view = new PackedImage(this, cols, rows);
+    view.data = this.data;
+    view.offset = this.offset + top * stride + left;
+    view.stride = this.stride;
+    view.shared = true;
+    return view;
+  }
+
+  /**
+   * Constructs an empty image to be made into a view of another image's pixels.
+   *
+   * @param parent the image being viewed
+   * @param width the number of columns in the view
+   * @param height the number of rows in the view
+   */
+  private PackedImage(PackedImage parent, int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.maxValue = parent.maxValue;
+    this.derived = new Derived();
+  }
+
+  @Override
+  public Pixel getPixel(int row, int col) throws IllegalArgumentException {
+    checkBounds(row, col);
+    int p = data[offset + row * stride + col];
+    return new Pixel((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, maxValue);
+  }
+
+  @Override
+  public void setPixel(int row, int col, Pixel p) throws IllegalArgumentException {
+    if (p == null) {
+      throw new IllegalArgumentException("Invalid parameters");
+    }
+    checkBounds(row, col);
+    int r = Math.min(p.getRed(), maxValue);
+    int g = Math.min(p.getGreen(), maxValue);
+    int b = Math.min(p.getBlue(), maxValue);
+    int[] pixels = writablePixels();
+    int i = row * width + col;
+    pixels[i] = (pixels[i] & OPAQUE) | (r << 16) | (g << 8) | b;
+  }
+
+  /**
+   * Returns the packed pixels for reading. The array must not be written to, as it may be shared
+   * with copies of this image. A view's pixels are first copied into an array of their own, once;
+   * code which can read rows a stride apart should use buffer() instead.
+   *
+   * @return the packed 0xAARRGGBB pixels, row by row
+   */
+  int[] pixels() {
+    if (isView()) {
+      data = compact();
+      offset = 0;
+      stride = width;
+      shared = false;
+      // the pixels are the same, but now belong to this image alone
+      derived = derived.copy();
+    }
+    return data;
+  }
+
+  /**
+   * Returns the array holding this image's pixels for reading, without copying a view's pixels.
+   * Pixel (row, col) is at offset() + row * stride() + col. The array must not be written to.
+   *
+   * @return the array holding the packed 0xAARRGGBB pixels
+   */
+  int[] buffer() {
+    return data;
+  }
+
+  /**
+   * Returns where this image's first pixel is in buffer().
+   *
+   * @return the index of the top left pixel
+   */
+  int offset() {
+    return offset;
+  }
+
+  /**
+   * Returns how far apart this image's rows are in buffer().
+   *
+   * @return the distance between the starts of consecutive rows
+   */
+  int stride() {
+    return stride;
+  }
+
+  /**
+   * Checks whether this image is a view of part of a larger array of pixels.
+   *
+   * @return true if the pixels are not the whole of their array, row by row
+   */
+  private boolean isView() {
+    return offset != 0 || stride != width || data.length != width * height;
+  }
+
+  /**
+   * Copies this image's pixels into an array of their own.
+   *
+   * @return the pixels, row by row
+   */
+  private int[] compact() {
+    if (!isView()) {
+      return data.clone();
+    }
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < height; i++) {
+      System.arraycopy(data, offset + i * stride, pixels, i * width, width);
+    }
+    return pixels;
+  }
+
+  /**
+   * Returns the packed pixels for writing, first taking a private copy of them if they are shared
+   * with another image.
+   *
+   * @return the packed 0xAARRGGBB pixels, row by row
+   */
+  int[] writablePixels() {
+    if (shared) {
+      data = compact();
+      offset = 0;
+      stride = width;
+      shared = false;
+      derived = new Derived();
+    } else {
+      // unshared pixels have derived data of their own, so it can be cleared in place
+      derived.clear();
+    }
+    return data;
+  }
+
+  /**
+   * Returns an array the caller will completely overwrite with new pixels. Unlike
+   * writablePixels(), shared pixels are not copied first, since every value is about to be
+   * replaced. Callers that read the old pixels while writing must fetch them with pixels()
+   * beforehand.
+   *
+   * @return an array of width * height ints owned by this image
+   */
+  int[] pixelsForOverwrite() {
+    if (shared) {
+      data = new int[width * height];
+      offset = 0;
+      stride = width;
+      shared = false;
+      derived = new Derived();
+    } else {
+      derived.clear();
+    }
+    return data;
+  }
+
+  /**
+   * Replaces the packed pixels with a new array, for edits which read the old pixels while
+   * writing every new one and so cannot write in place.
+   *
+   * @param pixels the new 0xAARRGGBB pixels, row by row, which now belong to this image
+   */
+  void replacePixels(int[] pixels) {
+    if (pixels.length != width * height) {
+      throw new IllegalArgumentException("Pixel data does not match the image dimensions.");
+    }
+    data = pixels;
+    offset = 0;
+    stride = width;
+    if (shared) {
+      shared = false;
+      derived = new Derived();
+    } else {
+      derived.clear();
+    }
+  }
+
+  /**
+   * Checks whether any of this image's pixels are not fully opaque. The answer is worked out once
+   * and kept until the pixels are written to.
+   *
+   * @return true if some pixel's alpha is below 255
+   */
+  boolean hasAlpha() {
+    Boolean alpha = derived.alpha;
+    if (alpha == null) {
+      alpha = false;
+      for (int i = 0; i < height && !alpha; i++) {
+        for (int j = 0, p = offset + i * stride; j < width; j++, p++) {
+          if ((data[p] & OPAQUE) != OPAQUE) {
+            alpha = true;
+            break;
+          }
+        }
+      }
+      derived.alpha = alpha;
+    }
+    return alpha;
+  }
+
+  /**
+   * Returns the histogram of this image if it has already been worked out, either by counting the
+   * pixels or by updating the histogram of the image this one was made from. The arrays must not
+   * be modified.
+   *
+   * @return the histogram, or null if it is not known
+   */
+  int[][] cachedHistogram() {
+    return derived.histogram;
+  }
+
+  /**
+   * Records the histogram of this image's current pixels. It is forgotten as soon as the pixels
+   * are written to.
+   *
+   * @param histogram the histogram, which must not be modified afterwards
+   */
+  void cacheHistogram(int[][] histogram) {
+    derived.histogram = histogram;
+  }
+
+  /**
+   * Returns the mask of this image if it has already been worked out.
+   *
+   * @return the mask, or null if it is not known
+   */
+  Mask cachedMask() {
+    return derived.mask;
+  }
+
+  /**
+   * Records the mask of this image's current pixels. It is forgotten as soon as the pixels are
+   * written to.
+   *
+   * @param mask the mask
+   */
+  void cacheMask(Mask mask) {
+    derived.mask = mask;
+  }
+
+  /**
+   * Returns the soft mask of this image if it has already been worked out.
+   *
+   * @return the soft mask, or null if it is not known
+   */
+  SoftMask cachedSoftMask() {
+    return derived.softMask;
+  }
+
+  /**
+   * Records the soft mask of this image's current pixels. It is forgotten as soon as the pixels
+   * are written to.
+   *
+   * @param mask the soft mask
+   */
+  void cacheSoftMask(SoftMask mask) {
+    derived.softMask = mask;
+  }
+
+  /**
+   * Data computed from the pixels, kept for as long as the pixels are not written to. Shared
+   * between copies which share the same pixels.
+   */
+  private static class Derived {
+    private volatile int[][] histogram;
+    private volatile Mask mask;
+    private volatile SoftMask softMask;
+    private volatile Boolean alpha;
+
+    /**
+     * Copies what has been derived so far, for pixels which stop being shared.
+     *
+     * @return the copy
+     */
+    Derived copy() {
+      Derived copy = new Derived();
+      copy.histogram = histogram;
+      copy.mask = mask;
+      copy.softMask = softMask;
+      copy.alpha = alpha;
+      return copy;
+    }
+
+    /**
+     * Forgets everything derived from the pixels.
+     */
+    void clear() {
+      histogram = null;
+      mask = null;
+      softMask = null;
+      alpha = null;
+    }
+  }
+
+  /**
+   * Packs a pixel's values into an opaque 0xAARRGGBB int.
+   *
+   * @param p the pixel to pack
+   * @return the packed value
+   */
+  static int pack(Pixel p) {
+    return OPAQUE | (p.getRed() << 16) | (p.getGreen() << 8) | p.getBlue();
+  }
+
+  /**
+   * Throws an exception if a row and column are outside of this image.
+   *
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   */
+  private void checkBounds(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || row >= height || col >= width) {
+      throw new IllegalArgumentException("Out of range.");
+    }
+  }
+
+  /**
+   * Creates a new array of opaque black pixels.
+   *
+   * @param width the number of columns
+   * @param height the number of rows
+   * @return the pixels
+   */
+  private static int[] newBlack(int width, int height) {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    int[] data = new int[width * height];
+    Arrays.fill(data, OPAQUE);
+    return data;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof PackedImage)) {
+      return false;
+    }
+    PackedImage other = (PackedImage) obj;
+    if (this.width != other.width || this.height != other.height
+            || this.maxValue != other.maxValue) {
+      return false;
+    }
+    for (int i = 0; i < height; i++) {
+      int a = this.offset + i * this.stride;
+      int b = other.offset + i * other.stride;
+      for (int j = 0; j < width; j++) {
+        if (this.data[a + j] != other.data[b + j]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = Objects.hash(width, height, maxValue);
+    for (int i = 0; i < height; i++) {
+      for (int j = 0, p = offset + i * stride; j < width; j++, p++) {
+        hash = 31 * hash + data[p];
+      }
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,92 @@
+package controller.commands;
+
+import model.ImageCollection;
+import model.ImageCollectionModel;
+import model.ImageModel;
+import model.ImageTransformationsImpl;
+
+/**
+ * Command class which represents the ability to run a command on only a rectangular region of an
+ * image. The command is run on a copy of the region (plus the neighbors it reads around it), so
+ * only the region is read and written, however large the image is.
+ */
+public class RegionCmd implements ImageProcessingCommand {
+
+  private final ImageProcessingCommand cmd;
+  private final String original;
+  private final String newName;
+  private final int left;
+  private final int top;
+  private final int width;
+  private final int height;
+
+  /**
+   * Constructor for a region command object. Takes an ImageProcessingCommand, the name of the
+   * image it edits, the name it gives the edited image, and the region to limit it to.
+   * @param cmd the command to execute on the region
+   * @param original the original image
+   * @param newName the new image
+   * @param left the first column of the region
+   * @param top the first row of the region
+   * @param width the width of the region
+   * @param height the height of the region
+   * @throws IllegalArgumentException if either name or the command is null, or the region is
+   *         empty
+   */
+  public RegionCmd(ImageProcessingCommand cmd, String original, String newName, int left,
+                   int top, int width, int height) throws IllegalArgumentException {
+    if (cmd == null || original == null || newName == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    this.cmd = cmd;
+    this.original = original;
+    this.newName = newName;
+    this.left = left;
+    this.top = top;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Runs the command on the region. The region, widened by how far the command looks, is copied
+   * into a scratch model and edited there, and the region (without the margin) is pasted into a
+   * copy of the original image. Commands which can look at any pixel are given just the region,
+   * as if it were the whole image. Commands which do not edit in place, such as rotating or
+   * downsizing, give the new image made from the region alone, whatever the region's shape. The
+   * inner command must edit the original image into the image named newName.
+   *
+   * @param model the model to execute the command on
+   * @throws IllegalArgumentException if the region is not inside the image, or the inner command
+   *         fails
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageModel image = model.getImage(original);
+    if (left < 0 || top < 0 || left + width > image.getCols()
+            || top + height > image.getRows()) {
+      throw new IllegalArgumentException("The region must be inside the image.");
+    }
+
+    // Edit the region, widened by how far the command looks, in a scratch model
+    int halo = Math.max(0, cmd.getHalo());
+    int cropLeft = Math.max(0, left - halo);
+    int cropTop = Math.max(0, top - halo);
+    int cropWidth = Math.min(image.getCols(), left + width + halo) - cropLeft;
+    int cropHeight = Math.min(image.getRows(), top + height + halo) - cropTop;
+    ImageCollectionModel region = new ImageCollection();
+    region.addImage(original, new ImageTransformationsImpl(image).crop(cropLeft, cropTop,
+            cropWidth, cropHeight));
+    cmd.execute(region);
+    ImageModel edited = region.getImage(newName);
+
+    if (!cmd.editsInPlace()) {
+      model.addImage(newName, edited);
+      return;
+    }
+    model.addImage(newName, new ImageTransformationsImpl(image, left, top, width, height)
+            .paste(edited, cropLeft, cropTop));
+  }
+}
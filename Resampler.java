@@ -0,0 +1,414 @@
+package model;
+
+import controller.commands.Resampling;
+
+/**
+ * Resizes images with a separable kernel. An image is resized in two passes, first along its rows
+ * and then along its columns, and each pass works from a table of weights computed once for every
+ * output column (or row) rather than once per pixel. When shrinking, the kernel is stretched to
+ * cover every source pixel, so large reductions average their pixels instead of aliasing. The
+ * weights are fixed-point integers, and each pass runs over bands of rows in parallel.
+ */
+final class Resampler {
+
+  // weights are fractions of 1 << PRECISION
+  private static final int PRECISION = 14;
+  private static final int HALF = 1 << (PRECISION - 1);
+
+  private Resampler() {
+    // static helpers only
+  }
+
+  /**
+   * Resizes a packed image. All four channels, alpha included, are resampled. If any pixel is
+   * transparent, the colors are resampled premultiplied by alpha, so that the colors of
+   * transparent pixels, which cannot be seen, do not bleed into the pixels around them.
+   *
+   * @param src the image to resize
+   * @param width the new width
+   * @param height the new height
+   * @param kernel the kernel to resample with
+   * @return the resized image
+   */
+  static PackedImage resize(PackedImage src, int width, int height, Resampling kernel) {
+    int cols = src.getCols();
+    int rows = src.getRows();
+    int max = src.getMaxValue();
+    if (width == cols && height == rows) {
+      return (PackedImage) src.getCopy();
+    }
+    boolean alpha = src.hasAlpha();
+    int[] pixels = alpha ? premultiply(src.pixels()) : src.pixels();
+    if (width != cols) {
+      pixels = resizeRows(pixels, cols, rows, width, weights(cols, width, kernel), max);
+    }
+    if (height != rows) {
+      pixels = resizeColumns(pixels, width, rows, height, weights(rows, height, kernel), max);
+    }
+    if (alpha) {
+      unpremultiply(pixels, max);
+    }
+    return new PackedImage(width, height, pixels, max);
+  }
+
+  /**
+   * Halves the width and height of a packed image, each new pixel being the rounded average of a
+   * 2x2 block of the old ones. This is the same as a box reduction by a factor of 2, but works
+   * straight along pairs of rows and averages all four channels at once with masked integer
+   * arithmetic. A trailing odd row or column is dropped, and a dimension of 1 is kept as it is.
+   * As when resizing, the colors of transparent images are averaged premultiplied by alpha.
+   *
+   * @param src the image to halve
+   * @return the halved image
+   */
+  static PackedImage halve(PackedImage src) {
+    int cols = src.getCols();
+    int rows = src.getRows();
+    int width = Math.max(1, cols / 2);
+    int height = Math.max(1, rows / 2);
+    boolean alpha = src.hasAlpha();
+    int[] in = alpha ? premultiply(src.pixels()) : src.pixels();
+    int[] out = new int[width * height];
+    RowBands.forEach(height, width * 4, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        int top = 2 * y * cols;
+        int bottom = Math.min(2 * y + 1, rows - 1) * cols;
+        int o = y * width;
+        for (int x = 0; x < width; x++) {
+          int left = 2 * x;
+          int right = Math.min(left + 1, cols - 1);
+          int p0 = in[top + left];
+          int p1 = in[top + right];
+          int p2 = in[bottom + left];
+          int p3 = in[bottom + right];
+          // red and blue (and alpha and green) sit 16 bits apart, so four of each add up without
+          // carrying into each other
+          int rb = (p0 & 0xFF00FF) + (p1 & 0xFF00FF) + (p2 & 0xFF00FF) + (p3 & 0xFF00FF)
+                  + 0x20002;
+          int ag = ((p0 >>> 8) & 0xFF00FF) + ((p1 >>> 8) & 0xFF00FF) + ((p2 >>> 8) & 0xFF00FF)
+                  + ((p3 >>> 8) & 0xFF00FF) + 0x20002;
+          out[o + x] = (((ag >> 2) & 0xFF00FF) << 8) | ((rb >> 2) & 0xFF00FF);
+        }
+      }
+    });
+    if (alpha) {
+      unpremultiply(out, src.getMaxValue());
+    }
+    return new PackedImage(width, height, out, src.getMaxValue());
+  }
+
+  /**
+   * Multiplies the colors of packed pixels by their alpha.
+   *
+   * @param pixels the pixels, which are left as they are
+   * @return the premultiplied pixels, in a new array
+   */
+  private static int[] premultiply(int[] pixels) {
+    int[] out = new int[pixels.length];
+    RowBands.forEach(pixels.length, 1, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int p = pixels[i];
+        int a = p >>> 24;
+        if (a == 255) {
+          out[i] = p;
+        } else {
+          int r = (((p >> 16) & 0xFF) * a + 127) / 255;
+          int g = (((p >> 8) & 0xFF) * a + 127) / 255;
+          int b = ((p & 0xFF) * a + 127) / 255;
+          out[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+      }
+    });
+    return out;
+  }
+
+  /**
+   * Divides the colors of premultiplied pixels by their alpha, in place. Pixels with no alpha at
+   * all become transparent black.
+   *
+   * @param pixels the premultiplied pixels
+   * @param max the maximum value of each channel
+   */
+  private static void unpremultiply(int[] pixels, int max) {
+    RowBands.forEach(pixels.length, 1, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int p = pixels[i];
+        int a = p >>> 24;
+        if (a == 0) {
+          pixels[i] = 0;
+        } else if (a < 255) {
+          int r = Math.min(max, (((p >> 16) & 0xFF) * 255 + a / 2) / a);
+          int g = Math.min(max, (((p >> 8) & 0xFF) * 255 + a / 2) / a);
+          int b = Math.min(max, ((p & 0xFF) * 255 + a / 2) / a);
+          pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+      }
+    });
+  }
+
+  /**
+   * Resizes an image held as one array per channel, as used for images whose channels do not fit
+   * in 8 bits.
+   *
+   * @param planes the values of each channel, row by row
+   * @param cols the current width
+   * @param rows the current height
+   * @param width the new width
+   * @param height the new height
+   * @param max the maximum value of each channel
+   * @param kernel the kernel to resample with
+   * @return the resized values of each channel
+   */
+  static int[][] resize(int[][] planes, int cols, int rows, int width, int height, int max,
+                        Resampling kernel) {
+    Weights across = width != cols ? weights(cols, width, kernel) : null;
+    Weights down = height != rows ? weights(rows, height, kernel) : null;
+    int[][] resized = new int[planes.length][];
+    for (int c = 0; c < planes.length; c++) {
+      int[] values = planes[c];
+      if (across != null) {
+        values = resizePlaneRows(values, cols, rows, width, across, max);
+      }
+      if (down != null) {
+        values = resizePlaneColumns(values, width, rows, height, down, max);
+      }
+      resized[c] = values == planes[c] ? values.clone() : values;
+    }
+    return resized;
+  }
+
+  /**
+   * Resamples every row of a packed image to a new width.
+   */
+  private static int[] resizeRows(int[] src, int cols, int rows, int width, Weights w, int max) {
+    int[] dst = new int[width * rows];
+    RowBands.forEach(rows, cols, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        int in = y * cols;
+        int out = y * width;
+        for (int x = 0; x < width; x++) {
+          int first = in + w.start[x];
+          int k = x * w.taps;
+          int a = HALF;
+          int r = HALF;
+          int g = HALF;
+          int b = HALF;
+          for (int i = 0, n = w.count[x]; i < n; i++) {
+            int p = src[first + i];
+            int c = w.coeffs[k + i];
+            a += (p >>> 24) * c;
+            r += ((p >> 16) & 0xFF) * c;
+            g += ((p >> 8) & 0xFF) * c;
+            b += (p & 0xFF) * c;
+          }
+          dst[out + x] = pack(a, r, g, b, max);
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Resamples every column of a packed image to a new height.
+   */
+  private static int[] resizeColumns(int[] src, int cols, int rows, int height, Weights w,
+                                     int max) {
+    int[] dst = new int[cols * height];
+    RowBands.forEach(height, cols, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        int first = w.start[y] * cols;
+        int k = y * w.taps;
+        int n = w.count[y];
+        int out = y * cols;
+        for (int x = 0; x < cols; x++) {
+          int a = HALF;
+          int r = HALF;
+          int g = HALF;
+          int b = HALF;
+          for (int i = 0, in = first + x; i < n; i++, in += cols) {
+            int p = src[in];
+            int c = w.coeffs[k + i];
+            a += (p >>> 24) * c;
+            r += ((p >> 16) & 0xFF) * c;
+            g += ((p >> 8) & 0xFF) * c;
+            b += (p & 0xFF) * c;
+          }
+          dst[out + x] = pack(a, r, g, b, max);
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Resamples every row of one channel to a new width.
+   */
+  private static int[] resizePlaneRows(int[] src, int cols, int rows, int width, Weights w,
+                                       int max) {
+    int[] dst = new int[width * rows];
+    RowBands.forEach(rows, cols, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        int in = y * cols;
+        int out = y * width;
+        for (int x = 0; x < width; x++) {
+          int first = in + w.start[x];
+          int k = x * w.taps;
+          long sum = HALF;
+          for (int i = 0, n = w.count[x]; i < n; i++) {
+            sum += (long) src[first + i] * w.coeffs[k + i];
+          }
+          dst[out + x] = clamp(sum >> PRECISION, max);
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Resamples every column of one channel to a new height.
+   */
+  private static int[] resizePlaneColumns(int[] src, int cols, int rows, int height, Weights w,
+                                          int max) {
+    int[] dst = new int[cols * height];
+    RowBands.forEach(height, cols, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        int first = w.start[y] * cols;
+        int k = y * w.taps;
+        int n = w.count[y];
+        int out = y * cols;
+        for (int x = 0; x < cols; x++) {
+          long sum = HALF;
+          for (int i = 0, in = first + x; i < n; i++, in += cols) {
+            sum += (long) src[in] * w.coeffs[k + i];
+          }
+          dst[out + x] = clamp(sum >> PRECISION, max);
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * Packs fixed-point channel sums into a pixel, clamping each channel to its range, since
+   * kernels with negative lobes can overshoot.
+   */
+  private static int pack(int a, int r, int g, int b, int max) {
+    return clamp(a >> PRECISION, 255) << 24 | clamp(r >> PRECISION, max) << 16
+            | clamp(g >> PRECISION, max) << 8 | clamp(b >> PRECISION, max);
+  }
+
+  /**
+   * Clamps a value to the range of a channel.
+   */
+  private static int clamp(long v, int max) {
+    return (int) Math.max(0, Math.min(v, max));
+  }
+
+  /**
+   * Works out which source pixels contribute to each output pixel along one axis, and by how
+   * much. Output pixel i is centered on source coordinate (i + 0.5) * scale; the kernel is
+   * stretched by the scale when shrinking, and the weights of each output pixel are normalized
+   * to add up to exactly 1.
+   *
+   * @param in the number of source pixels along the axis
+   * @param out the number of output pixels along the axis
+   * @param kernel the kernel
+   * @return the weights
+   */
+  private static Weights weights(int in, int out, Resampling kernel) {
+    double scale = (double) in / out;
+    double stretch = Math.max(scale, 1.0);
+    double support = support(kernel) * stretch;
+    int taps = (int) Math.ceil(support) * 2 + 1;
+    Weights w = new Weights(out, taps);
+    double[] raw = new double[taps];
+    for (int i = 0; i < out; i++) {
+      double center = (i + 0.5) * scale;
+      int first = Math.max(0, (int) (center - support + 0.5));
+      int last = Math.min(in, (int) (center + support + 0.5));
+      int n = Math.min(last - first, taps);
+      double total = 0;
+      for (int j = 0; j < n; j++) {
+        raw[j] = evaluate(kernel, (first + j + 0.5 - center) / stretch);
+        total += raw[j];
+      }
+      if (n <= 0 || total == 0) {
+        // too small a kernel to reach any pixel's center: take the nearest one
+        first = Math.min(in - 1, (int) center);
+        n = 1;
+        raw[0] = 1;
+        total = 1;
+      }
+      // round the running sum, so the rounding errors never add up
+      int k = i * taps;
+      double sum = 0;
+      int given = 0;
+      for (int j = 0; j < n; j++) {
+        sum += raw[j] / total;
+        int next = (int) Math.round(sum * (1 << PRECISION));
+        w.coeffs[k + j] = next - given;
+        given = next;
+      }
+      w.start[i] = first;
+      w.count[i] = n;
+    }
+    return w;
+  }
+
+  /**
+   * Returns how far a kernel reaches from its center, in source pixels, before it is stretched.
+   */
+  private static double support(Resampling kernel) {
+    switch (kernel) {
+      case BOX:
+        return 0.5;
+      case BILINEAR:
+        return 1.0;
+      case LANCZOS3:
+        return 3.0;
+      default:
+        throw new IllegalArgumentException("Unknown resampling kernel.");
+    }
+  }
+
+  /**
+   * Evaluates a kernel at a distance from its center.
+   */
+  private static double evaluate(Resampling kernel, double x) {
+    switch (kernel) {
+      case BOX:
+        return x > -0.5 && x <= 0.5 ? 1.0 : 0.0;
+      case BILINEAR:
+        return Math.max(0.0, 1.0 - Math.abs(x));
+      case LANCZOS3:
+        if (x == 0) {
+          return 1.0;
+        }
+        if (x <= -3.0 || x >= 3.0) {
+          return 0.0;
+        }
+        double px = Math.PI * x;
+        return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+      default:
+        throw new IllegalArgumentException("Unknown resampling kernel.");
+    }
+  }
+
+  /**
+   * The weights of every output pixel along one axis. Output pixel i takes count[i] source
+   * pixels starting at start[i], weighted by coeffs[i * taps] onwards.
+   */
+  private static final class Weights {
+    private final int[] start;
+    private final int[] count;
+    private final int[] coeffs;
+    private final int taps;
+
+    Weights(int out, int taps) {
+      this.start = new int[out];
+      this.count = new int[out];
+      this.coeffs = new int[out * taps];
+      this.taps = taps;
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package controller.commands;
+
+/**
+ * Enum representing the kernels an image can be resized with.
+ * BOX = the average of the pixels each new pixel covers (area averaging); best for reductions
+ * BILINEAR = a linear blend of the nearest pixels; smooth, but softer than Lanczos
+ * LANCZOS3 = a windowed sinc over 3 pixels each side; the sharpest, at some cost in speed
+ */
+public enum Resampling {
+  BOX, BILINEAR, LANCZOS3
+}
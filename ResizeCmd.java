@@ -0,0 +1,67 @@
+package controller.commands;
+
+import model.ImageCollectionModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+
+/**
+ * Class to represent the command to resize an image, making it larger or smaller, and add it to
+ * the ImageCollectionModel.
+ */
+public class ResizeCmd implements ImageProcessingCommand {
+
+  private final String newName;
+  private final String orig;
+  private final int newWidth;
+  private final int newHeight;
+  private final Resampling kernel;
+
+  /**
+   * Constructs a ResizeCmd object, which requires a name of the original image, a name for the
+   * resized image, the new dimensions, and the kernel to resample the image with.
+   *
+   * @param orig the name of the image to resize
+   * @param newName the name of the resized image
+   * @param newWidth the new width of the image
+   * @param newHeight the new height of the image
+   * @param kernel the resampling kernel
+   * @throws IllegalArgumentException if any parameter is null or a dimension is not positive
+   */
+  public ResizeCmd(String orig, String newName, int newWidth, int newHeight, Resampling kernel)
+          throws IllegalArgumentException {
+    if (orig == null || newName == null || kernel == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (newWidth < 1 || newHeight < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    this.orig = orig;
+    this.newName = newName;
+    this.newWidth = newWidth;
+    this.newHeight = newHeight;
+    this.kernel = kernel;
+  }
+
+  /**
+   * Resizes an Image in an ImageCollection and adds it under its new name using
+   * ImageCollectionModel's addImage().
+   *
+   * @param model the ImageCollectionModel to execute the command on
+   * @throws IllegalArgumentException if the model runs into an error at any point
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
+    model.addImage(newName, transformer.resize(newWidth, newHeight, kernel));
+  }
+
+  /**
+   * Resizing makes a new image out of the pixels rather than editing them in place.
+   *
+   * @return false
+   */
+  @Override
+  public boolean editsInPlace() {
+    return false;
+  }
+}
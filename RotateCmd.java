@@ -0,0 +1,59 @@
+package controller.commands;
+
+import model.ImageCollectionModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+
+/**
+ * Class to represent the command to rotate an image clockwise by a multiple of 90 degrees and add
+ * it to the ImageCollectionModel.
+ */
+public class RotateCmd implements ImageProcessingCommand {
+
+  private final String newName;
+  private final String orig;
+  private final int degrees;
+
+  /**
+   * Constructs a Rotate object.
+   * @param orig the name of the image to rotate
+   * @param newName the name of the new rotated image
+   * @param degrees how far to rotate the image clockwise, negative to rotate it counterclockwise
+   * @throws IllegalArgumentException if either name is null, or the angle is not a multiple of
+   *         90 degrees
+   */
+  public RotateCmd(String orig, String newName, int degrees) throws IllegalArgumentException {
+    if (orig == null || newName == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (degrees % 90 != 0) {
+      throw new IllegalArgumentException("Images can only be rotated by multiples of 90 degrees.");
+    }
+    this.newName = newName;
+    this.orig = orig;
+    this.degrees = degrees;
+  }
+
+  /**
+   * Method to execute the command to rotate an Image in an ImageCollection and add it
+   * under its new name.
+   *
+   * @param model the model to execute the command on
+   * @throws IllegalArgumentException if the model throws an exception at any point in execution.
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
+    model.addImage(newName, transformer.rotate(degrees));
+  }
+
+  /**
+   * A rotation makes a new image out of the pixels rather than editing them in place.
+   *
+   * @return false
+   */
+  @Override
+  public boolean editsInPlace() {
+    return false;
+  }
+}
@@ -0,0 +1,110 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Splits the rows of an image into horizontal bands and processes the bands in parallel on the
+ * common fork/join pool. Small images are processed as a single band on the calling thread, since
+ * splitting them costs more than it saves.
+ */
+final class RowBands {
+
+  // below this many pixels per band, the overhead of another task outweighs the work
+  private static final int MIN_PIXELS_PER_BAND = 1 << 16;
+
+  private RowBands() {
+    // static helpers only
+  }
+
+  /**
+   * Work done on one band of rows.
+   */
+  interface Band {
+
+    /**
+     * Processes a band of rows.
+     * @param from the first row of the band
+     * @param to one past the last row of the band
+     */
+    void run(int from, int to);
+  }
+
+  /**
+   * Work done on one band of rows which produces a result.
+   *
+   * @param <T> the type of the result
+   */
+  interface BandResult<T> {
+
+    /**
+     * Processes a band of rows.
+     * @param from the first row of the band
+     * @param to one past the last row of the band
+     * @return the band's result
+     */
+    T run(int from, int to);
+  }
+
+  /**
+   * Runs a task on every band of rows, in parallel, returning once all bands are done.
+   *
+   * @param rows the number of rows
+   * @param cols the number of pixels in each row
+   * @param band the work to do on each band
+   */
+  static void forEach(int rows, int cols, Band band) {
+    int bands = count(rows, cols);
+    if (bands == 1) {
+      band.run(0, rows);
+      return;
+    }
+    IntStream.range(0, bands).parallel().forEach(i -> band.run(start(i, bands, rows),
+            start(i + 1, bands, rows)));
+  }
+
+  /**
+   * Runs a task on every band of rows, in parallel, and collects each band's result.
+   *
+   * @param rows the number of rows
+   * @param cols the number of pixels in each row
+   * @param band the work to do on each band
+   * @param <T> the type of each band's result
+   * @return the results, in band order
+   */
+  static <T> List<T> map(int rows, int cols, BandResult<T> band) {
+    int bands = count(rows, cols);
+    return IntStream.range(0, bands).parallel()
+            .mapToObj(i -> band.run(start(i, bands, rows), start(i + 1, bands, rows)))
+            .collect(Collectors.toList());
+  }
+
+  /**
+   * Works out how many bands to split an image into: enough to keep every worker busy, but none
+   * so small that it isn't worth a task.
+   *
+   * @param rows the number of rows
+   * @param cols the number of pixels in each row
+   * @return the number of bands
+   */
+  private static int count(int rows, int cols) {
+    long pixels = (long) rows * cols;
+    int workers = ForkJoinPool.getCommonPoolParallelism();
+    long bands = Math.min(pixels / MIN_PIXELS_PER_BAND, workers * 4L);
+    return (int) Math.max(1, Math.min(bands, rows));
+  }
+
+  /**
+   * Works out the first row of a band, spreading any leftover rows evenly.
+   *
+   * @param band the band
+   * @param bands the total number of bands
+   * @param rows the number of rows
+   * @return the band's first row
+   */
+  private static int start(int band, int bands, int rows) {
+    return (int) ((long) band * rows / bands);
+  }
+}
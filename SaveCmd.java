@@ -4,13 +4,14 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.PrintWriter;
-import javax.imageio.ImageIO;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import model.ImageCollectionModel;
 import model.ImageModel;
 import model.ImageTransformations;
 import model.ImageTransformationsImpl;
+import model.NativeImageFile;
 
 /**
  * Class to represent the command to save an image to a given file.
@@ -19,6 +20,15 @@ public class SaveCmd implements ImageProcessingCommand {
 
   private final String path;
   private final String name;
+  private final boolean compress;
+  private final int quality;
+  private final int level;
+  private final boolean background;
+
+  /**
+   * Passed as a quality or compression level to use the format's default.
+   */
+  public static final int DEFAULT = -1;
 
   /**
    * Constructs a Save object, which requires the pathname to file to save to, and the name of the
@@ -28,12 +38,39 @@ public class SaveCmd implements ImageProcessingCommand {
    * @param name the name of the image to save
    */
   public SaveCmd(String path, String name) {
+    this(path, name, false, DEFAULT, DEFAULT, false);
+  }
+
+  /**
+   * Constructs a Save object with settings for the file's format, which can also save in the
+   * background: the image is taken as it is now, and encoded while later commands run.
+   *
+   * @param path the pathname to file to save to
+   * @param name the name of the image to save
+   * @param compress true to compress an image saved in the application's own format
+   * @param quality the quality of a JPEG file from 0 (smallest) to 100 (best), or DEFAULT
+   * @param level how hard to compress a PNG file from 0 (fastest) to 9 (smallest), or DEFAULT
+   * @param background true to return before the file is written, leaving the outcome to be
+   *                   collected from EncoderPool.finished()
+   * @throws IllegalArgumentException if a name is null, or the quality or level is out of range
+   */
+  public SaveCmd(String path, String name, boolean compress, int quality, int level,
+                 boolean background) throws IllegalArgumentException {
     if (path == null || name == null) {
       throw new IllegalArgumentException("Parameters cannot be null.");
     }
+    if (quality != DEFAULT && (quality < 0 || quality > 100)) {
+      throw new IllegalArgumentException("Quality must be between 0 and 100.");
+    }
+    if (level != DEFAULT && (level < 0 || level > 9)) {
+      throw new IllegalArgumentException("Compression level must be between 0 and 9.");
+    }
     this.path = path;
     this.name = name;
-    new File(path);
+    this.compress = compress;
+    this.quality = quality;
+    this.level = level;
+    this.background = background;
   }
 
   /**
@@ -47,11 +84,23 @@ public class SaveCmd implements ImageProcessingCommand {
     ImageModel img = model.getImage(name);
     if (path.endsWith(".ppm")) {
       saveToPPM(img);
+    } else if (path.endsWith(NativeImageFile.EXTENSION)) {
+      saveToNative(img);
     } else {
       saveImage(img);
     }
   }
 
+  /**
+   * Checks whether executing this command only queues the image to be written. PPM files and the
+   * application's own files are always written straight away.
+   *
+   * @return true if the file is written in the background
+   */
+  public boolean isQueued() {
+    return background && !path.endsWith(".ppm") && !path.endsWith(NativeImageFile.EXTENSION);
+  }
+
   /**
    * Saves an ImageModel object to a PPM file. Writes it to the file in the specific PPM format.
    * Utilizes ImageModel and Pixel's micro-methods to output the entire image in the correct format.
@@ -88,7 +137,24 @@ public class SaveCmd implements ImageProcessingCommand {
   }
 
   /**
-   * Saves an ImageModel object to a file using the BufferedImage class.
+   * Saves an ImageModel object to a file in the application's own format, copying its pixels
+   * into the file as they are held in memory, or compressing them if asked to.
+   *
+   * @param img the image to save
+   * @throws IllegalArgumentException if the file cannot be written
+   */
+  private void saveToNative(ImageModel img) throws IllegalArgumentException {
+    try {
+      NativeImageFile.write(img, Paths.get(path), compress);
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException("Invalid file name.");
+    }
+  }
+
+  /**
+   * Saves an ImageModel object to a file using the BufferedImage class. The image is converted
+   * straight away, and encoded on the encoder pool, waiting for it unless saving in the
+   * background.
    *
    * @param img the image to save
    * @throws IllegalArgumentException if the file writing fails.
@@ -96,18 +162,36 @@ public class SaveCmd implements ImageProcessingCommand {
    */
   private void saveImage(ImageModel img) throws IllegalArgumentException {
     File f = new File(path);
-    ImageTransformations transformer = new ImageTransformationsImpl(img);
-    BufferedImage image = transformer.toBufferedImg();
+    String format;
     try {
-      ImageIO.write(image, getFileExtension(f), f);
+      format = getFileExtension(f);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid file name.");
+    }
+    if (!EncoderPool.canWrite(format)) {
+      throw new IllegalArgumentException("File type not supported.");
+    }
+    boolean jpeg = format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg");
+    if (quality != DEFAULT && !jpeg) {
+      throw new IllegalArgumentException("Quality only applies to JPEG files.");
+    }
+    if (level != DEFAULT && !format.equalsIgnoreCase("png")) {
+      throw new IllegalArgumentException("Compression level only applies to PNG files.");
     }
-    catch (IOException e) {
+    File directory = f.getAbsoluteFile().getParentFile();
+    if (directory == null || !directory.isDirectory()) {
       throw new IllegalArgumentException("File writing failed.");
     }
-    catch (IllegalArgumentException e) {
-      throw new IllegalArgumentException("Invalid file name.");
+    // ImageIO takes a quality from 0 to 1, and PNG compresses harder the lower it is
+    float setting = -1;
+    if (quality != DEFAULT) {
+      setting = quality / 100f;
+    } else if (level != DEFAULT) {
+      setting = Math.max(0, 1 - (level + 0.5f) / 9);
     }
-
+    ImageTransformations transformer = new ImageTransformationsImpl(img);
+    BufferedImage image = transformer.toBufferedImg();
+    EncoderPool.write(image, f, format, setting, !background);
   }
 
   /**
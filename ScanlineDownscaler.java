@@ -0,0 +1,132 @@
+package model;
+
+/**
+ * Shrinks an image one source row at a time, as the rows are decoded, so the full-size image never
+ * has to be held in memory. Each source pixel belongs to exactly one new pixel, and each new pixel
+ * is the average of the block of source pixels it covers. Only the new image and one row of
+ * running sums are kept, so memory use is proportional to the size of the new image rather than
+ * the original. The new image is a PackedImage for 8-bit sources and a DeepImage for sources of up
+ * to 16 bits.
+ */
+public final class ScanlineDownscaler {
+
+  private final int cols;
+  private final int rows;
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  private final int[] columnOf;
+  private final int[] cellWidth;
+  private final long[] sums;
+  private final int[] packed;
+  private final char[][] planes;
+  private final Pixel[][] pixels;
+  private int row;
+  private int cellRows;
+
+  /**
+   * Constructs a downscaler for an image of the given size.
+   *
+   * @param cols the width of the source image
+   * @param rows the height of the source image
+   * @param width the width of the new image, at most the source width
+   * @param height the height of the new image, at most the source height
+   * @param maxValue the maximum value of each channel
+   * @throws IllegalArgumentException if the sizes are not positive or the new image is larger
+   *         than the source
+   */
+  public ScanlineDownscaler(int cols, int rows, int width, int height, int maxValue)
+          throws IllegalArgumentException {
+    if (cols < 1 || rows < 1 || width < 1 || height < 1) {
+      throw new IllegalArgumentException("Dimensions must be greater than 0.");
+    }
+    if (width > cols || height > rows) {
+      throw new IllegalArgumentException("Width and height must be less than original " +
+              "width and height to downsize.");
+    }
+    this.cols = cols;
+    this.rows = rows;
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.columnOf = new int[cols];
+    this.cellWidth = new int[width];
+    for (int x = 0; x < cols; x++) {
+      columnOf[x] = (int) ((long) x * width / cols);
+      cellWidth[columnOf[x]]++;
+    }
+    this.sums = new long[width * 3];
+    this.packed = maxValue <= 255 ? new int[width * height] : null;
+    this.planes = maxValue > 255 && maxValue <= DeepImage.MAX_VALUE
+            ? new char[3][width * height] : null;
+    this.pixels = maxValue > DeepImage.MAX_VALUE ? new Pixel[height][width] : null;
+  }
+
+  /**
+   * Adds the next row of the source image.
+   *
+   * @param rgb the row's red, green and blue values, pixel by pixel (3 values per pixel)
+   * @throws IllegalArgumentException if every row has already been added
+   */
+  public void addRow(int[] rgb) throws IllegalArgumentException {
+    if (row == rows) {
+      throw new IllegalArgumentException("The image has no more rows.");
+    }
+    for (int x = 0, i = 0; x < cols; x++, i += 3) {
+      int o = columnOf[x] * 3;
+      sums[o] += rgb[i];
+      sums[o + 1] += rgb[i + 1];
+      sums[o + 2] += rgb[i + 2];
+    }
+    int y = (int) ((long) row * height / rows);
+    row++;
+    cellRows++;
+    if (row == rows || (int) ((long) row * height / rows) != y) {
+      emit(y);
+    }
+  }
+
+  /**
+   * Returns the new image, once every row of the source has been added.
+   *
+   * @return the downscaled image
+   * @throws IllegalArgumentException if rows are still missing
+   */
+  public ImageModel getImage() throws IllegalArgumentException {
+    if (row < rows) {
+      throw new IllegalArgumentException("The image is missing rows.");
+    }
+    if (packed != null) {
+      return new PackedImage(width, height, packed, maxValue);
+    }
+    return planes != null ? new DeepImage(width, height, planes, maxValue) : new Image(pixels);
+  }
+
+  /**
+   * Averages the running sums into a row of the new image, and clears them for the next one.
+   *
+   * @param y the row of the new image
+   */
+  private void emit(int y) {
+    for (int x = 0; x < width; x++) {
+      long n = (long) cellWidth[x] * cellRows;
+      int o = x * 3;
+      int r = (int) ((sums[o] + n / 2) / n);
+      int g = (int) ((sums[o + 1] + n / 2) / n);
+      int b = (int) ((sums[o + 2] + n / 2) / n);
+      if (packed != null) {
+        packed[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+      } else if (planes != null) {
+        planes[0][y * width + x] = (char) r;
+        planes[1][y * width + x] = (char) g;
+        planes[2][y * width + x] = (char) b;
+      } else {
+        pixels[y][x] = new Pixel(r, g, b, maxValue);
+      }
+      sums[o] = 0;
+      sums[o + 1] = 0;
+      sums[o + 2] = 0;
+    }
+    cellRows = 0;
+  }
+}
@@ -14,7 +14,7 @@ import controller.Features;
  */
 public class SimpleGUIView extends JFrame implements GUIView {
 
-  private final JLabel imageLabel;
+  private final TiledImageViewer imageViewer;
   private JButton fileOpenButton;
   private JButton fileSaveButton;
   private JButton[] editingButtons;
@@ -25,9 +25,9 @@ public class SimpleGUIView extends JFrame implements GUIView {
   private JRadioButton[] greyscaleButtons;
   private ButtonGroup radioButtonGroup;
   private JSlider brightnessSlider;
-  private int previousSliderValue;
   private final ImageHistogram histogram;
   private JButton resetButton;
+  private JProgressBar progressBar;
 
   /**
    * A default constructor that sets up the frames and information of our GUI.
@@ -41,7 +41,7 @@ public class SimpleGUIView extends JFrame implements GUIView {
     JPanel mainPanel = new JPanel();
     mainPanel.setLayout(new BorderLayout(0, 0));
     this.add(mainPanel);
-    this.imageLabel = new JLabel();
+    this.imageViewer = new TiledImageViewer();
     this.histogram = new ImageHistogram(500, 350);
     JPanel imageInfo = new JPanel();
     imageInfo.add(buildImageViewerPanel());
@@ -63,7 +63,7 @@ public class SimpleGUIView extends JFrame implements GUIView {
     fileOpenButton.addActionListener(e -> {
       final JFileChooser chooser = new JFileChooser(".");
       FileNameExtensionFilter filter = new FileNameExtensionFilter("Image Files",
-              "jpg", "jpeg", "png", "bmp", "ppm");
+              "jpg", "jpeg", "png", "bmp", "ppm", "ipi");
       chooser.setFileFilter(filter);
       int retValue = chooser.showOpenDialog(this);
       if (retValue == JFileChooser.APPROVE_OPTION) {
@@ -80,7 +80,7 @@ public class SimpleGUIView extends JFrame implements GUIView {
     fileSaveButton.addActionListener(e -> {
       final JFileChooser fileChooser = new JFileChooser(".");
       FileNameExtensionFilter filter = new FileNameExtensionFilter("Image Files",
-              "jpg", "jpeg", "png", "bmp", "ppm");
+              "jpg", "jpeg", "png", "bmp", "ppm", "ipi");
       fileChooser.setFileFilter(filter);
       int value = fileChooser.showOpenDialog(this);
       if (value == JFileChooser.APPROVE_OPTION) {
@@ -103,14 +103,9 @@ public class SimpleGUIView extends JFrame implements GUIView {
       button.addActionListener(e -> f.runCommand(e.getActionCommand()));
     }
 
-    // add a change listener for the brightness slider. Finds the difference between the previous
-    // slider value and the new value and changes the image brightness by that amount.
-    brightnessSlider.addChangeListener(e -> {
-      int updatedValue = brightnessSlider.getValue();
-      int increment = updatedValue - previousSliderValue;
-      f.toggleBrightness(increment);
-      previousSliderValue = updatedValue;
-    });
+    // add a change listener for the brightness slider. The slider's value is the absolute
+    // brightness level; the controller coalesces rapid changes while dragging.
+    brightnessSlider.addChangeListener(e -> f.setBrightness(brightnessSlider.getValue()));
 
     downsize.addActionListener(e -> {
       int width = Integer.parseInt(widthField.getText());
@@ -123,20 +118,38 @@ public class SimpleGUIView extends JFrame implements GUIView {
   }
 
   @Override
-  public void displayImage(BufferedImage img, int[][] histValues) {
+  public void displayImage(BufferedImage img, int[][] histValues, int maxFrequency) {
     if (img != null) {
-      this.imageLabel.setIcon(new ImageIcon(img));
-      this.histogram.update(histValues);
+      this.imageViewer.setImage(img);
+      this.histogram.update(histValues, maxFrequency);
     }
   }
 
+  @Override
+  public void displayPreview(BufferedImage preview, int fullWidth, int fullHeight,
+                             int[][] histValues, int maxFrequency) {
+    if (preview != null) {
+      this.imageViewer.setPreview(preview, fullWidth, fullHeight);
+      this.histogram.update(histValues, maxFrequency);
+    }
+  }
+
+  @Override
+  public void displayHistogram(int[][] histValues, int maxFrequency) {
+    this.histogram.update(histValues, maxFrequency);
+  }
+
   @Override
   public void resetSelections() {
-    this.previousSliderValue = 0;
     this.brightnessSlider.setValue(0);
     this.radioButtonGroup.clearSelection();
   }
 
+  @Override
+  public void setBusy(boolean busy) {
+    this.progressBar.setVisible(busy);
+  }
+
   @Override
   public void renderMessage(String message) {
     JOptionPane.showMessageDialog(this, message, "Error",
@@ -164,7 +177,7 @@ public class SimpleGUIView extends JFrame implements GUIView {
   }
 
   /**
-   * Builds the save button in its own panel.
+   * Builds the save button and the progress indicator in their own panel.
    * @return the save panel
    */
   private JPanel buildSaveButton() {
@@ -174,6 +187,14 @@ public class SimpleGUIView extends JFrame implements GUIView {
     fileSaveButton.setActionCommand("Save file");
     fileSaveButton.setSize(new Dimension(20, 5));
     fileSavePanel.add(fileSaveButton);
+
+    // shown while the controller is processing in the background
+    progressBar = new JProgressBar();
+    progressBar.setIndeterminate(true);
+    progressBar.setString("Processing...");
+    progressBar.setStringPainted(true);
+    progressBar.setVisible(false);
+    fileSavePanel.add(progressBar);
     return fileSavePanel;
   }
 
@@ -193,7 +214,7 @@ public class SimpleGUIView extends JFrame implements GUIView {
     buttons.setLayout(new BoxLayout(buttons, BoxLayout.PAGE_AXIS));
     buttons.setBorder(BorderFactory.createEmptyBorder(20, 0, 0, 0));
     String[] buttonNames = new String[]{"Blur", "Sharpen", "Sepia", "Flip-Vertical",
-        "Flip-Horizontal"};
+        "Flip-Horizontal", "Auto-Contrast", "Equalize"};
     editingButtons = new JButton[buttonNames.length];
 
     for (int i = 0; i < buttonNames.length; i++) {
@@ -259,7 +280,6 @@ public class SimpleGUIView extends JFrame implements GUIView {
     JLabel sliderLabel = new JLabel("             Brightness");
     brightnessPanel.add(brightnessSlider);
     brightnessPanel.add(sliderLabel);
-    previousSliderValue = 0;
     editingPanel.add(brightnessPanel);
 
     // Build the reset button
@@ -281,13 +301,24 @@ public class SimpleGUIView extends JFrame implements GUIView {
     JPanel top = new JPanel();
     top.add(new JLabel("Your Image")).setFont(new Font(Font.SANS_SERIF, Font.BOLD,
             16));
+
+    // zoom controls; the image can also be zoomed with control + mouse wheel
+    JButton zoomIn = new JButton("+");
+    zoomIn.addActionListener(e -> imageViewer.zoomBy(2));
+    JButton zoomOut = new JButton("-");
+    zoomOut.addActionListener(e -> imageViewer.zoomBy(0.5));
+    JButton fit = new JButton("Fit");
+    fit.addActionListener(e -> imageViewer.zoomToFit());
+    top.add(zoomOut);
+    top.add(zoomIn);
+    top.add(fit);
+
     JPanel imageViewPanel = new JPanel();
     imageViewPanel.setPreferredSize(new Dimension(600, 430));
     imageViewPanel.add(top);
 
-    // image view
-    imageLabel.setHorizontalAlignment(JLabel.CENTER);
-    JScrollPane imageScroll = new JScrollPane(imageLabel);
+    // image view, which only draws the visible part of the image
+    JScrollPane imageScroll = new JScrollPane(imageViewer);
     imageScroll.setPreferredSize(new Dimension(600, 390));
 
     imageViewPanel.add(imageScroll);
@@ -0,0 +1,208 @@
+package model;
+
+/**
+ * A feathered mask, giving every pixel a weight from 0 to 255 for how much of an edit it takes.
+ * The weight comes from the mask image's intensity: black pixels take all of the edit, white
+ * pixels none of it, and greys a blend of the edited and original pixels in proportion. Like a
+ * Mask, it records the bounding box of the pixels it affects (those with a weight above 0), and
+ * masks made from packed images are cached on the image.
+ */
+public final class SoftMask {
+
+  private final int cols;
+  private final int rows;
+  private final byte[] weights;
+  private final int left;
+  private final int top;
+  private final int right;
+  private final int bottom;
+
+  /**
+   * Constructs a soft mask from its weights, working out its bounding box.
+   *
+   * @param cols the width of the mask
+   * @param rows the height of the mask
+   * @param weights the weight of each pixel, row by row, as unsigned bytes
+   */
+  private SoftMask(int cols, int rows, byte[] weights) {
+    this.cols = cols;
+    this.rows = rows;
+    this.weights = weights;
+    int minRow = rows;
+    int maxRow = -1;
+    int minCol = cols;
+    int maxCol = -1;
+    for (int i = 0; i < rows; i++) {
+      int first = -1;
+      int last = -1;
+      for (int j = 0, p = i * cols; j < cols; j++, p++) {
+        if (weights[p] != 0) {
+          if (first < 0) {
+            first = j;
+          }
+          last = j;
+        }
+      }
+      if (first >= 0) {
+        minRow = Math.min(minRow, i);
+        maxRow = i;
+        minCol = Math.min(minCol, first);
+        maxCol = Math.max(maxCol, last);
+      }
+    }
+    if (maxRow < 0) {
+      this.left = 0;
+      this.top = 0;
+      this.right = 0;
+      this.bottom = 0;
+    } else {
+      this.left = minCol;
+      this.top = minRow;
+      this.right = maxCol + 1;
+      this.bottom = maxRow + 1;
+    }
+  }
+
+  /**
+   * Returns the soft mask of a mask image, weighting each pixel by how dark it is.
+   *
+   * @param img the mask image
+   * @return the soft mask
+   */
+  public static SoftMask of(ImageModel img) {
+    int cols = img.getCols();
+    int rows = img.getRows();
+    byte[] weights = new byte[rows * cols];
+    if (img instanceof PackedImage) {
+      PackedImage packed = (PackedImage) img;
+      SoftMask cached = packed.cachedSoftMask();
+      if (cached != null) {
+        return cached;
+      }
+      int[] pixels = packed.buffer();
+      int offset = packed.offset();
+      int stride = packed.stride();
+      int max = packed.getMaxValue();
+      RowBands.forEach(rows, cols, (from, to) -> {
+        for (int y = from; y < to; y++) {
+          for (int x = 0, p = offset + y * stride, o = y * cols; x < cols; x++, p++, o++) {
+            int v = pixels[p];
+            int intensity = (((v >> 16) & 0xFF) + ((v >> 8) & 0xFF) + (v & 0xFF)) / 3;
+            weights[o] = (byte) weight(intensity, max);
+          }
+        }
+      });
+      SoftMask mask = new SoftMask(cols, rows, weights);
+      packed.cacheSoftMask(mask);
+      return mask;
+    }
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        Pixel p = img.getPixel(i, j);
+        weights[i * cols + j] = (byte) weight(p.getIntensity(), p.getMaxValue());
+      }
+    }
+    return new SoftMask(cols, rows, weights);
+  }
+
+  /**
+   * Works out the weight of a mask pixel from its intensity.
+   *
+   * @param intensity the intensity of the pixel
+   * @param max the maximum value of the mask image
+   * @return the weight, from 0 (white) to 255 (black)
+   */
+  private static int weight(int intensity, int max) {
+    if (max == 0) {
+      return 255;
+    }
+    return 255 - (Math.min(intensity, max) * 255 + max / 2) / max;
+  }
+
+  /**
+   * Returns the width of the mask.
+   *
+   * @return the number of columns
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Returns the height of the mask.
+   *
+   * @return the number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Checks whether the mask leaves every pixel as it is.
+   *
+   * @return true if every weight is 0
+   */
+  public boolean isEmpty() {
+    return right == 0;
+  }
+
+  /**
+   * Returns the first column of the bounding box of the affected pixels.
+   *
+   * @return the leftmost affected column, or 0 if the mask is empty
+   */
+  public int getLeft() {
+    return left;
+  }
+
+  /**
+   * Returns the first row of the bounding box of the affected pixels.
+   *
+   * @return the topmost affected row, or 0 if the mask is empty
+   */
+  public int getTop() {
+    return top;
+  }
+
+  /**
+   * Returns one past the last column of the bounding box of the affected pixels.
+   *
+   * @return the column after the rightmost affected column, or 0 if the mask is empty
+   */
+  public int getRight() {
+    return right;
+  }
+
+  /**
+   * Returns one past the last row of the bounding box of the affected pixels.
+   *
+   * @return the row after the bottommost affected row, or 0 if the mask is empty
+   */
+  public int getBottom() {
+    return bottom;
+  }
+
+  /**
+   * Returns the weight of a pixel.
+   *
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   * @return the weight, from 0 (keep the original) to 255 (take the edit)
+   */
+  public int getWeight(int row, int col) {
+    if (row < 0 || col < 0 || row >= rows || col >= cols) {
+      throw new IllegalArgumentException("Out of range.");
+    }
+    return weights[row * cols + col] & 0xFF;
+  }
+
+  /**
+   * Returns the weights of the mask, row by row, as unsigned bytes. The array must not be
+   * modified.
+   *
+   * @return the weights
+   */
+  byte[] weights() {
+    return weights;
+  }
+}
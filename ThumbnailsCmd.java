@@ -0,0 +1,57 @@
+package controller.commands;
+
+import java.util.List;
+
+import model.ImageCollectionModel;
+import model.ImageModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+
+/**
+ * Class to represent the command to create thumbnails of an image at 1/2, 1/4, 1/8 and so on of
+ * its size, and add them to the ImageCollectionModel. Each thumbnail is named after the fraction
+ * of the original size it is: a prefix of "thumb" gives "thumb-2", "thumb-4", "thumb-8", etc.
+ */
+public class ThumbnailsCmd implements ImageProcessingCommand {
+
+  private final String orig;
+  private final String prefix;
+  private final int levels;
+
+  /**
+   * Constructs a ThumbnailsCmd object, which requires a name of the original image, a prefix for
+   * the names of the thumbnails, and the number of thumbnails to create.
+   *
+   * @param orig the name of the image to create thumbnails of
+   * @param prefix the prefix of the thumbnails' names
+   * @param levels the number of thumbnails, each half the size of the one before
+   * @throws IllegalArgumentException if either name is null or the number is not positive
+   */
+  public ThumbnailsCmd(String orig, String prefix, int levels) throws IllegalArgumentException {
+    if (orig == null || prefix == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    if (levels < 1) {
+      throw new IllegalArgumentException("There must be at least one thumbnail.");
+    }
+    this.orig = orig;
+    this.prefix = prefix;
+    this.levels = levels;
+  }
+
+  /**
+   * Creates the thumbnails of an Image in an ImageCollection and adds each one under its name
+   * using ImageCollectionModel's addImage().
+   *
+   * @param model the ImageCollectionModel to execute the command on
+   * @throws IllegalArgumentException if the model runs into an error at any point
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
+    List<ImageModel> thumbnails = transformer.thumbnails(levels);
+    for (int i = 0; i < thumbnails.size(); i++) {
+      model.addImage(prefix + "-" + (2 << i), thumbnails.get(i));
+    }
+  }
+}
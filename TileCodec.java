@@ -0,0 +1,274 @@
+package model;
+
+/**
+ * Compresses and decompresses tiles of the application's own image format without loss. Each
+ * tile is coded on its own, so tiles can be coded in parallel and read independently.
+ *
+ * <p>Packed pixels use the QOI scheme: each pixel is coded as a run of the previous pixel, a
+ * reference to one of the last 64 distinct pixels seen, a small difference from the previous
+ * pixel, or, failing those, its values in full. That takes one pass and a few branches per pixel,
+ * and typically shrinks photographs to between a quarter and a half of their size.</p>
+ *
+ * <p>Planes of 16-bit values are coded as the difference of each value from the one to its left
+ * (or above it, at the start of a row), folded so that small differences either way are small
+ * numbers, then written seven bits to a byte. Smooth images mostly take one or two bytes per
+ * value, and the worst case is three.</p>
+ */
+final class TileCodec {
+
+  private static final int QOI_INDEX = 0x00;
+  private static final int QOI_DIFF = 0x40;
+  private static final int QOI_LUMA = 0x80;
+  private static final int QOI_RUN = 0xC0;
+  private static final int QOI_RGB = 0xFE;
+  private static final int QOI_RGBA = 0xFF;
+  // the longest run one byte can hold; 63 and 64 would collide with QOI_RGB and QOI_RGBA
+  private static final int QOI_MAX_RUN = 62;
+  private static final int OPAQUE_BLACK = 0xFF000000;
+
+  private TileCodec() {
+    // static helpers only
+  }
+
+  /**
+   * Returns the most bytes a tile of packed pixels can take once compressed.
+   *
+   * @param pixels the number of pixels in the tile
+   * @return the size of the largest possible compressed tile
+   */
+  static int maxPackedSize(int pixels) {
+    // a pixel coded in full takes a tag byte and four values
+    return pixels * 5;
+  }
+
+  /**
+   * Returns the most bytes a tile of planes of 16-bit values can take once compressed.
+   *
+   * @param values the number of values in each of the three planes
+   * @return the size of the largest possible compressed tile
+   */
+  static int maxPlanarSize(int values) {
+    return values * 3 * 3;
+  }
+
+  /**
+   * Compresses a tile of packed pixels.
+   *
+   * @param src the array holding the packed 0xAARRGGBB pixels
+   * @param offset where the tile's first pixel is in the array
+   * @param stride how far apart the rows are in the array
+   * @param cols the width of the tile
+   * @param rows the height of the tile
+   * @param out where to write the compressed tile, at least maxPackedSize bytes long
+   * @return the number of bytes written
+   */
+  static int encode(int[] src, int offset, int stride, int cols, int rows, byte[] out) {
+    int[] index = new int[64];
+    int prev = OPAQUE_BLACK;
+    int run = 0;
+    int o = 0;
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0, s = offset + i * stride; j < cols; j++, s++) {
+        int px = src[s];
+        if (px == prev) {
+          if (++run == QOI_MAX_RUN) {
+            out[o++] = (byte) (QOI_RUN | (run - 1));
+            run = 0;
+          }
+          continue;
+        }
+        if (run > 0) {
+          out[o++] = (byte) (QOI_RUN | (run - 1));
+          run = 0;
+        }
+        int h = hash(px);
+        if (index[h] == px) {
+          out[o++] = (byte) (QOI_INDEX | h);
+        } else {
+          index[h] = px;
+          if ((px ^ prev) >>> 24 != 0) {
+            out[o++] = (byte) QOI_RGBA;
+            out[o++] = (byte) (px >> 16);
+            out[o++] = (byte) (px >> 8);
+            out[o++] = (byte) px;
+            out[o++] = (byte) (px >>> 24);
+          } else {
+            // the differences wrap around, as the values do when decoded
+            int dr = (byte) ((px >> 16) - (prev >> 16));
+            int dg = (byte) ((px >> 8) - (prev >> 8));
+            int db = (byte) (px - prev);
+            int drg = dr - dg;
+            int dbg = db - dg;
+            // a value is in range when adding the bias leaves no bits above the field's width
+            if (((dr + 2) | (dg + 2) | (db + 2)) >>> 2 == 0) {
+              out[o++] = (byte) (QOI_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+            } else if (((dg + 32) >>> 6 | (drg + 8) >>> 4 | (dbg + 8) >>> 4) == 0) {
+              out[o++] = (byte) (QOI_LUMA | (dg + 32));
+              out[o++] = (byte) ((drg + 8) << 4 | (dbg + 8));
+            } else {
+              out[o++] = (byte) QOI_RGB;
+              out[o++] = (byte) (px >> 16);
+              out[o++] = (byte) (px >> 8);
+              out[o++] = (byte) px;
+            }
+          }
+        }
+        prev = px;
+      }
+    }
+    if (run > 0) {
+      out[o++] = (byte) (QOI_RUN | (run - 1));
+    }
+    return o;
+  }
+
+  /**
+   * Decompresses a tile of packed pixels.
+   *
+   * @param in the compressed tile
+   * @param length the number of bytes in the compressed tile
+   * @param dst where to write the pixels
+   * @param first where the tile's first pixel goes in dst
+   * @param count the number of pixels in the tile
+   * @throws IllegalArgumentException if the compressed tile is corrupt
+   */
+  static void decode(byte[] in, int length, int[] dst, int first, int count)
+          throws IllegalArgumentException {
+    int[] index = new int[64];
+    int px = OPAQUE_BLACK;
+    int end = first + count;
+    int i = 0;
+    int p = first;
+    try {
+      while (p < end) {
+        if (i >= length) {
+          throw new IllegalArgumentException("The image file is corrupt.");
+        }
+        int b = in[i++] & 0xFF;
+        if (b == QOI_RGB) {
+          px = (px & OPAQUE_BLACK) | (in[i] & 0xFF) << 16 | (in[i + 1] & 0xFF) << 8
+                  | (in[i + 2] & 0xFF);
+          i += 3;
+        } else if (b == QOI_RGBA) {
+          px = (in[i + 3] & 0xFF) << 24 | (in[i] & 0xFF) << 16 | (in[i + 1] & 0xFF) << 8
+                  | (in[i + 2] & 0xFF);
+          i += 4;
+        } else if (b < QOI_DIFF) {
+          px = index[b];
+          dst[p++] = px;
+          continue;
+        } else if (b < QOI_LUMA) {
+          px = add(px, ((b >> 4) & 3) - 2, ((b >> 2) & 3) - 2, (b & 3) - 2);
+        } else if (b < QOI_RUN) {
+          int dg = (b & 0x3F) - 32;
+          int next = in[i++] & 0xFF;
+          px = add(px, dg + (next >> 4) - 8, dg, dg + (next & 0xF) - 8);
+        } else {
+          int run = (b & 0x3F) + 1;
+          if (p + run > end) {
+            throw new IllegalArgumentException("The image file is corrupt.");
+          }
+          for (int n = 0; n < run; n++) {
+            dst[p++] = px;
+          }
+          continue;
+        }
+        index[hash(px)] = px;
+        dst[p++] = px;
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("The image file is corrupt.");
+    }
+  }
+
+  /**
+   * Compresses a tile of planes of 16-bit values: each plane in turn, row by row.
+   *
+   * @param planes the red, green and blue planes of the whole image
+   * @param first where the tile's first value is in each plane
+   * @param cols the width of the tile and the image
+   * @param rows the height of the tile
+   * @param out where to write the compressed tile, at least maxPlanarSize bytes long
+   * @return the number of bytes written
+   */
+  static int encode(char[][] planes, int first, int cols, int rows, byte[] out) {
+    int o = 0;
+    for (char[] plane : planes) {
+      for (int i = 0; i < rows; i++) {
+        int start = first + i * cols;
+        int prev = i == 0 ? 0 : plane[start - cols];
+        for (int s = start; s < start + cols; s++) {
+          int v = plane[s];
+          int d = v - prev;
+          // fold the difference so that 0, -1, 1, -2, ... become 0, 1, 2, 3, ...
+          int z = (d << 1) ^ (d >> 31);
+          while (z >= 0x80) {
+            out[o++] = (byte) (z | 0x80);
+            z >>>= 7;
+          }
+          out[o++] = (byte) z;
+          prev = v;
+        }
+      }
+    }
+    return o;
+  }
+
+  /**
+   * Decompresses a tile of planes of 16-bit values.
+   *
+   * @param in the compressed tile
+   * @param length the number of bytes in the compressed tile
+   * @param planes the red, green and blue planes to write to
+   * @param first where the tile's first value goes in each plane
+   * @param cols the width of the tile and the image
+   * @param rows the height of the tile
+   * @throws IllegalArgumentException if the compressed tile is corrupt
+   */
+  static void decode(byte[] in, int length, char[][] planes, int first, int cols, int rows)
+          throws IllegalArgumentException {
+    int i = 0;
+    try {
+      for (char[] plane : planes) {
+        for (int r = 0; r < rows; r++) {
+          int start = first + r * cols;
+          int prev = r == 0 ? 0 : plane[start - cols];
+          for (int s = start; s < start + cols; s++) {
+            int z = 0;
+            int shift = 0;
+            int b;
+            do {
+              b = in[i++];
+              z |= (b & 0x7F) << shift;
+              shift += 7;
+            } while (b < 0 && shift < 21);
+            prev += (z >>> 1) ^ -(z & 1);
+            plane[s] = (char) prev;
+          }
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("The image file is corrupt.");
+    }
+    if (i > length) {
+      throw new IllegalArgumentException("The image file is corrupt.");
+    }
+  }
+
+  /**
+   * Adds differences to the red, green and blue of a pixel, wrapping each around within its
+   * byte, and keeping its alpha.
+   */
+  private static int add(int px, int dr, int dg, int db) {
+    return (px & OPAQUE_BLACK) | ((px >> 16) + dr & 0xFF) << 16 | ((px >> 8) + dg & 0xFF) << 8
+            | (px + db & 0xFF);
+  }
+
+  /**
+   * Works out which of the 64 slots of the index a pixel goes in.
+   */
+  private static int hash(int px) {
+    return ((px >> 16 & 0xFF) * 3 + (px >> 8 & 0xFF) * 5 + (px & 0xFF) * 7
+            + (px >>> 24) * 11) & 63;
+  }
+}
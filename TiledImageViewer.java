@@ -0,0 +1,503 @@
+package view;
+
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * A component which displays an image of any size at any zoom level. Rather than painting the
+ * whole image, it keeps a mipmap pyramid of the image (each level half the size of the one
+ * before) and only paints the tiles that are visible, from the level closest to the current zoom.
+ * Tiles are cut from their level the first time they are painted and cached, so zooming and
+ * panning cost the same no matter how large the image is. The pyramid is built on a background
+ * thread the first time a level other than the image itself is needed; until the level needed is
+ * ready, the coarsest level built so far is drawn in its place.
+ * Meant to be placed in a JScrollPane: scroll or drag to pan, and hold control while using the
+ * mouse wheel to zoom around the cursor.
+ */
+public class TiledImageViewer extends JComponent implements Scrollable {
+
+  private static final int TILE_SIZE = 256;
+  private static final int MAX_CACHED_TILES = 256;
+  private static final double MIN_ZOOM = 1.0 / 64;
+  private static final double MAX_ZOOM = 32;
+  private static final double ZOOM_STEP = 1.25;
+
+  // the levels built so far, only touched on the event dispatch thread
+  private final List<BufferedImage> levels;
+  private final Map<Long, BufferedImage> tiles;
+  private final ExecutorService builder;
+  // every image displayed gets a new generation, so levels of an old image can be dropped
+  private final AtomicLong generation;
+  private boolean building;
+  private double sourceScale;
+  private int fullWidth;
+  private int fullHeight;
+  private double zoom;
+
+  /**
+   * Constructs an empty viewer.
+   */
+  public TiledImageViewer() {
+    this.levels = new ArrayList<>();
+    // least recently painted tiles are dropped first once the cache is full
+    this.tiles = new LinkedHashMap<Long, BufferedImage>(MAX_CACHED_TILES, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+        return size() > MAX_CACHED_TILES;
+      }
+    };
+    this.builder = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "mipmap-builder");
+      t.setDaemon(true);
+      return t;
+    });
+    this.generation = new AtomicLong();
+    this.zoom = 1;
+    this.sourceScale = 1;
+    this.setOpaque(false);
+    addPanAndZoom();
+  }
+
+  /**
+   * Displays a full-resolution image. If it is the same size as the image already displayed (as
+   * after an edit), the zoom and scroll position are kept; otherwise the image is zoomed to fit.
+   *
+   * @param img the image to display
+   */
+  public void setImage(BufferedImage img) {
+    setSource(img, img.getWidth(), img.getHeight());
+  }
+
+  /**
+   * Displays a reduced-resolution stand-in for an image of a larger size, stretched to that size.
+   *
+   * @param preview the reduced-resolution image
+   * @param width the width of the image the preview stands in for
+   * @param height the height of the image the preview stands in for
+   */
+  public void setPreview(BufferedImage preview, int width, int height) {
+    setSource(preview, width, height);
+  }
+
+  /**
+   * Zooms in or out by a factor, keeping the center of the visible area in place.
+   *
+   * @param factor the amount to multiply the zoom by
+   */
+  public void zoomBy(double factor) {
+    Rectangle visible = getVisibleRect();
+    zoomAround(factor, new Point((int) visible.getCenterX(), (int) visible.getCenterY()));
+  }
+
+  /**
+   * Zooms so that the whole image fits in the visible area, without enlarging small images.
+   */
+  public void zoomToFit() {
+    if (fullWidth == 0) {
+      return;
+    }
+    Dimension area = getParent() instanceof JViewport
+            ? getParent().getSize() : getSize();
+    if (area.width <= 0 || area.height <= 0) {
+      zoom = 1;
+    } else {
+      zoom = Math.min(1, Math.min((double) area.width / fullWidth,
+              (double) area.height / fullHeight));
+    }
+    revalidate();
+    repaint();
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    return new Dimension((int) Math.ceil(fullWidth * zoom), (int) Math.ceil(fullHeight * zoom));
+  }
+
+  @Override
+  public Dimension getPreferredScrollableViewportSize() {
+    return getPreferredSize();
+  }
+
+  @Override
+  public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+    return TILE_SIZE / 8;
+  }
+
+  @Override
+  public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+    return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportWidth() {
+    // stretch to the viewport when the image is smaller than it, so the image can be centered
+    return getParent() instanceof JViewport
+            && getParent().getWidth() > getPreferredSize().width;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportHeight() {
+    return getParent() instanceof JViewport
+            && getParent().getHeight() > getPreferredSize().height;
+  }
+
+  /**
+   * Paints the visible tiles of the pyramid level closest to the current zoom. If that level is
+   * still being built, the coarsest level built so far is drawn instead, straight from the level
+   * and without smoothing, so it costs no more than the area being painted.
+   *
+   * @param g the <code>Graphics</code> object to paint with
+   */
+  @Override
+  protected void paintComponent(Graphics g) {
+    super.paintComponent(g);
+    if (levels.isEmpty()) {
+      return;
+    }
+    Graphics2D g2 = (Graphics2D) g;
+    // the number of screen pixels one source pixel covers; pick the smallest level that is
+    // still at least as detailed as the screen, so a level is never shrunk by more than half
+    double sourceZoom = zoom * sourceScale;
+    int wanted = 0;
+    while (sourceZoom * (1 << (wanted + 1)) <= 1 && wanted < 30) {
+      wanted++;
+    }
+    if (wanted >= levels.size() && !isComplete()) {
+      buildLevels();
+    }
+    // tiny images run out of levels before the zoom does
+    int level = Math.min(wanted, levels.size() - 1);
+    BufferedImage img = levels.get(level);
+    double scale = sourceZoom * (1 << level);
+    int offsetX = Math.max(0, (getWidth() - getPreferredSize().width) / 2);
+    int offsetY = Math.max(0, (getHeight() - getPreferredSize().height) / 2);
+    if (level < wanted && !isComplete()) {
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+              RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+      g2.drawImage(img, offsetX, offsetY, (int) Math.round(img.getWidth() * scale),
+              (int) Math.round(img.getHeight() * scale), null);
+      return;
+    }
+    if (scale != 1) {
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+              scale < 1 ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                      : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    }
+
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    }
+    int firstCol = Math.max(0, (int) ((clip.x - offsetX) / scale) / TILE_SIZE);
+    int firstRow = Math.max(0, (int) ((clip.y - offsetY) / scale) / TILE_SIZE);
+    int lastCol = Math.min((img.getWidth() - 1) / TILE_SIZE,
+            (int) ((clip.x + clip.width - offsetX) / scale) / TILE_SIZE);
+    int lastRow = Math.min((img.getHeight() - 1) / TILE_SIZE,
+            (int) ((clip.y + clip.height - offsetY) / scale) / TILE_SIZE);
+
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int col = firstCol; col <= lastCol; col++) {
+        BufferedImage tile = tile(level, img, col, row);
+        // round tile edges the same way on both sides so neighbouring tiles never leave gaps
+        int x1 = offsetX + (int) Math.round(col * TILE_SIZE * scale);
+        int y1 = offsetY + (int) Math.round(row * TILE_SIZE * scale);
+        int x2 = offsetX + (int) Math.round((col * TILE_SIZE + tile.getWidth()) * scale);
+        int y2 = offsetY + (int) Math.round((row * TILE_SIZE + tile.getHeight()) * scale);
+        g2.drawImage(tile, x1, y1, x2 - x1, y2 - y1, null);
+      }
+    }
+  }
+
+  /**
+   * Replaces the image being displayed, throwing away its pyramid and cached tiles.
+   *
+   * @param source the image to display
+   * @param width the width the image is displayed as at a zoom of 1
+   * @param height the height the image is displayed as at a zoom of 1
+   */
+  private void setSource(BufferedImage source, int width, int height) {
+    boolean sameSize = width == fullWidth && height == fullHeight;
+    generation.incrementAndGet();
+    building = false;
+    levels.clear();
+    tiles.clear();
+    levels.add(source);
+    sourceScale = (double) width / source.getWidth();
+    fullWidth = width;
+    fullHeight = height;
+    if (sameSize) {
+      repaint();
+    } else {
+      zoomToFit();
+    }
+  }
+
+  /**
+   * Checks whether every level of the pyramid has been built. Levels stop once the image is a
+   * single pixel.
+   *
+   * @return true if the last level is a single pixel
+   */
+  private boolean isComplete() {
+    BufferedImage last = levels.get(levels.size() - 1);
+    return last.getWidth() == 1 && last.getHeight() == 1;
+  }
+
+  /**
+   * Starts building the rest of the pyramid on the background thread, unless it is already being
+   * built. Each level is handed to the event dispatch thread as soon as it is done, and the
+   * component repainted; the levels of an image which has since been replaced are dropped.
+   */
+  private void buildLevels() {
+    if (building) {
+      return;
+    }
+    building = true;
+    long current = generation.get();
+    BufferedImage last = levels.get(levels.size() - 1);
+    builder.submit(() -> {
+      BufferedImage img = last;
+      while ((img.getWidth() > 1 || img.getHeight() > 1) && generation.get() == current) {
+        img = halve(img);
+        BufferedImage level = img;
+        SwingUtilities.invokeLater(() -> {
+          if (generation.get() == current) {
+            levels.add(level);
+            repaint();
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Gets a tile of a pyramid level, copying it out of the level into an image the screen can
+   * draw quickly the first time it is needed.
+   *
+   * @param level the level of the tile
+   * @param img the image at that level
+   * @param col the tile's column
+   * @param row the tile's row
+   * @return the tile
+   */
+  private BufferedImage tile(int level, BufferedImage img, int col, int row) {
+    long key = ((long) level << 48) | ((long) row << 24) | col;
+    BufferedImage tile = tiles.get(key);
+    if (tile == null) {
+      int x = col * TILE_SIZE;
+      int y = row * TILE_SIZE;
+      int w = Math.min(TILE_SIZE, img.getWidth() - x);
+      int h = Math.min(TILE_SIZE, img.getHeight() - y);
+      // tiles of levels with alpha keep it, so transparent areas are not drawn black
+      boolean alpha = img.getColorModel().hasAlpha();
+      tile = getGraphicsConfiguration() != null
+              ? getGraphicsConfiguration().createCompatibleImage(w, h, img.getTransparency())
+              : new BufferedImage(w, h,
+              alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+      Graphics tg = tile.getGraphics();
+      tg.drawImage(img, 0, 0, w, h, x, y, x + w, y + h, null);
+      tg.dispose();
+      tiles.put(key, tile);
+    }
+    return tile;
+  }
+
+  /**
+   * Halves the size of an image by averaging each 2x2 block of pixels. Odd rows and columns at
+   * the edge are averaged with themselves. Images with alpha keep it, and their colors are
+   * weighted by it, so transparent pixels do not darken the ones around them.
+   *
+   * @param img the image to halve
+   * @return the halved image
+   */
+  private static BufferedImage halve(BufferedImage img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    int halfW = (w + 1) / 2;
+    int halfH = (h + 1) / 2;
+    boolean alpha = img.getColorModel().hasAlpha();
+    BufferedImage half = new BufferedImage(halfW, halfH,
+            alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    int[] src = pixels(img);
+    int[] out = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+    for (int y = 0; y < halfH; y++) {
+      int top = 2 * y * w;
+      int bottom = Math.min(2 * y + 1, h - 1) * w;
+      for (int x = 0, o = y * halfW; x < halfW; x++, o++) {
+        int x0 = 2 * x;
+        int x1 = Math.min(x0 + 1, w - 1);
+        out[o] = alpha
+                ? averageArgb(src[top + x0], src[top + x1], src[bottom + x0], src[bottom + x1])
+                : average(src[top + x0], src[top + x1], src[bottom + x0], src[bottom + x1]);
+      }
+    }
+    return half;
+  }
+
+  /**
+   * Gets all the pixels of an image as packed 0xAARRGGBB values, row by row. Images which
+   * already store packed ints in one array of their own are read in place, without copying;
+   * others are converted in one call.
+   *
+   * @param img the image to read
+   * @return the pixels, which must not be written to
+   */
+  private static int[] pixels(BufferedImage img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    if ((img.getType() == BufferedImage.TYPE_INT_RGB
+            || img.getType() == BufferedImage.TYPE_INT_ARGB)
+            && img.getRaster().getParent() == null
+            && img.getRaster().getDataBuffer().getSize() == w * h) {
+      return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+    return img.getRGB(0, 0, w, h, null, 0, w);
+  }
+
+  /**
+   * Averages four packed RGB values, channel by channel.
+   *
+   * @return the packed average
+   */
+  private static int average(int a, int b, int c, int d) {
+    int r = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF)
+            + ((d >> 16) & 0xFF) + 2) >> 2;
+    int g = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF)
+            + ((d >> 8) & 0xFF) + 2) >> 2;
+    int bl = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+    return (r << 16) | (g << 8) | bl;
+  }
+
+  /**
+   * Averages four packed ARGB values. The alphas are averaged, and the colors are averaged
+   * weighted by their alphas.
+   *
+   * @return the packed average
+   */
+  private static int averageArgb(int a, int b, int c, int d) {
+    int aa = a >>> 24;
+    int ba = b >>> 24;
+    int ca = c >>> 24;
+    int da = d >>> 24;
+    int total = aa + ba + ca + da;
+    if (total == 0) {
+      return 0;
+    }
+    int r = (((a >> 16) & 0xFF) * aa + ((b >> 16) & 0xFF) * ba + ((c >> 16) & 0xFF) * ca
+            + ((d >> 16) & 0xFF) * da + total / 2) / total;
+    int g = (((a >> 8) & 0xFF) * aa + ((b >> 8) & 0xFF) * ba + ((c >> 8) & 0xFF) * ca
+            + ((d >> 8) & 0xFF) * da + total / 2) / total;
+    int bl = ((a & 0xFF) * aa + (b & 0xFF) * ba + (c & 0xFF) * ca + (d & 0xFF) * da
+            + total / 2) / total;
+    return ((total + 2) >> 2) << 24 | (r << 16) | (g << 8) | bl;
+  }
+
+  /**
+   * Zooms by a factor while keeping a point of the component under the same spot on screen.
+   *
+   * @param factor the amount to multiply the zoom by
+   * @param anchor the point to keep in place, in component coordinates
+   */
+  private void zoomAround(double factor, Point anchor) {
+    if (fullWidth == 0) {
+      return;
+    }
+    double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+    double ratio = newZoom / zoom;
+    Rectangle visible = getVisibleRect();
+    zoom = newZoom;
+    revalidate();
+    if (getParent() instanceof JViewport) {
+      JViewport viewport = (JViewport) getParent();
+      // the anchor's offset inside the viewport stays the same
+      int x = (int) Math.round(anchor.x * ratio - (anchor.x - visible.x));
+      int y = (int) Math.round(anchor.y * ratio - (anchor.y - visible.y));
+      viewport.validate();
+      scrollTo(viewport, x, y);
+    }
+    repaint();
+  }
+
+  /**
+   * Scrolls the viewport to a position, kept within the component's bounds.
+   *
+   * @param viewport the viewport this component is in
+   * @param x the x position of the top-left corner of the visible area
+   * @param y the y position of the top-left corner of the visible area
+   */
+  private void scrollTo(JViewport viewport, int x, int y) {
+    Dimension extent = viewport.getExtentSize();
+    Dimension size = getPreferredSize();
+    x = Math.max(0, Math.min(x, size.width - extent.width));
+    y = Math.max(0, Math.min(y, size.height - extent.height));
+    viewport.setViewPosition(new Point(x, y));
+  }
+
+  /**
+   * Adds the mouse listeners for dragging to pan and control-scrolling to zoom.
+   */
+  private void addPanAndZoom() {
+    MouseAdapter mouse = new MouseAdapter() {
+      private Point dragStart;
+
+      @Override
+      public void mousePressed(MouseEvent e) {
+        dragStart = e.getLocationOnScreen();
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        if (dragStart == null || !(getParent() instanceof JViewport)) {
+          return;
+        }
+        Point now = e.getLocationOnScreen();
+        JViewport viewport = (JViewport) getParent();
+        Point position = viewport.getViewPosition();
+        scrollTo(viewport, position.x - (now.x - dragStart.x),
+                position.y - (now.y - dragStart.y));
+        dragStart = now;
+      }
+
+      @Override
+      public void mouseWheelMoved(MouseWheelEvent e) {
+        if (e.isControlDown()) {
+          zoomAround(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+        } else {
+          // let the scroll pane scroll as usual
+          Container scrollPane = SwingUtilities.getAncestorOfClass(JScrollPane.class,
+                  TiledImageViewer.this);
+          if (scrollPane != null) {
+            scrollPane.dispatchEvent(
+                    SwingUtilities.convertMouseEvent(TiledImageViewer.this, e, scrollPane));
+          }
+        }
+      }
+    };
+    addMouseListener(mouse);
+    addMouseMotionListener(mouse);
+    addMouseWheelListener(mouse);
+  }
+}
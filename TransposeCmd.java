@@ -0,0 +1,52 @@
+package controller.commands;
+
+import model.ImageCollectionModel;
+import model.ImageTransformations;
+import model.ImageTransformationsImpl;
+
+/**
+ * Class to represent the command to transpose an image, swapping its rows and columns, and add it
+ * to the ImageCollectionModel.
+ */
+public class TransposeCmd implements ImageProcessingCommand {
+
+  private final String newName;
+  private final String orig;
+
+  /**
+   * Constructs a Transpose object.
+   * @param orig the name of the image to transpose
+   * @param newName the name of the new transposed image
+   * @throws IllegalArgumentException if either name is null
+   */
+  public TransposeCmd(String orig, String newName) throws IllegalArgumentException {
+    if (orig == null || newName == null) {
+      throw new IllegalArgumentException("Parameters cannot be null.");
+    }
+    this.newName = newName;
+    this.orig = orig;
+  }
+
+  /**
+   * Method to execute the command to transpose an Image in an ImageCollection and add it
+   * under its new name.
+   *
+   * @param model the model to execute the command on
+   * @throws IllegalArgumentException if the model throws an exception at any point in execution.
+   */
+  @Override
+  public void execute(ImageCollectionModel model) throws IllegalArgumentException {
+    ImageTransformations transformer = new ImageTransformationsImpl(model.getImage(orig));
+    model.addImage(newName, transformer.transpose());
+  }
+
+  /**
+   * A transpose makes a new image out of the pixels rather than editing them in place.
+   *
+   * @return false
+   */
+  @Override
+  public boolean editsInPlace() {
+    return false;
+  }
+}